@@ -1,10 +1,25 @@
+/**
+ * Client entry point: draws the preview outlines the server sends, so previews cost neither particles nor
+ * server time.
+ */
 package jason.voxelcleaner;
 
+import jason.voxelcleaner.client.PreviewRenderer;
+import jason.voxelcleaner.network.PreviewPayload;
 import net.fabricmc.api.ClientModInitializer;
+import net.fabricmc.fabric.api.client.event.lifecycle.v1.ClientTickEvents;
+import net.fabricmc.fabric.api.client.networking.v1.ClientPlayConnectionEvents;
+import net.fabricmc.fabric.api.client.networking.v1.ClientPlayNetworking;
+import net.fabricmc.fabric.api.client.rendering.v1.world.WorldRenderEvents;
 
 public class VoxelCleanerClient implements ClientModInitializer {
 	@Override
 	public void onInitializeClient() {
-		// This entrypoint is suitable for setting up client-specific logic, such as rendering.
+		// Registering the receiver also tells the server this client can draw previews itself
+		ClientPlayNetworking.registerGlobalReceiver(PreviewPayload.ID, (payload, context) -> PreviewRenderer.show(payload));
+
+		ClientTickEvents.END_CLIENT_TICK.register(client -> PreviewRenderer.tick());
+		WorldRenderEvents.BEFORE_DEBUG_RENDER.register(PreviewRenderer::render);
+		ClientPlayConnectionEvents.DISCONNECT.register((handler, client) -> PreviewRenderer.clear());
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,107 @@
+/**
+ * Line geometry of a preview, computed once per received preview: the 12 edges of a box, or for shapes a voxel
+ * wireframe made of the cross-section contours wherever the cross-section changes plus the vertical edges at its
+ * corners. Segments along a row are merged, so even a 64³ sphere stays at a few thousand lines. Coordinates are
+ * relative to the preview's origin, where floats stay exact; the renderer adds the origin in double precision.
+ */
+
+package jason.voxelcleaner.client;
+
+import jason.voxelcleaner.core.ShapeRaster;
+
+import it.unimi.dsi.fastutil.floats.FloatArrayList;
+
+import java.util.Arrays;
+
+final class OutlineGeometry {
+
+    /** Segments as {@code x0, y0, z0, x1, y1, z1} relative to the origin. */
+    private final FloatArrayList lines = new FloatArrayList();
+
+    private OutlineGeometry() {}
+
+    /** Edges of the box covering {@code width x height x depth} blocks from the origin. */
+    static float[] box(int width, int height, int depth) {
+        OutlineGeometry g = new OutlineGeometry();
+        for (int a = 0; a <= 1; a++) {
+            for (int b = 0; b <= 1; b++) {
+                g.line(0, a * height, b * depth, width, a * height, b * depth);
+                g.line(a * width, 0, b * depth, a * width, height, b * depth);
+                g.line(a * width, b * height, 0, a * width, b * height, depth);
+            }
+        }
+        return g.lines.toFloatArray();
+    }
+
+    /** Wireframe of a solid raster placed at the origin. */
+    static float[] shape(ShapeRaster solid) {
+        int w = solid.width(), h = solid.height(), d = solid.depth();
+        boolean[][] layers = new boolean[h][w * d];
+        solid.forEachSpan((y, z, x0, x1) -> Arrays.fill(layers[y], z * w + x0, z * w + x1 + 1, true));
+
+        OutlineGeometry g = new OutlineGeometry();
+        int from = 0;
+        for (int y = 1; y <= h; y++) {
+            if (y < h && Arrays.equals(layers[y], layers[from])) continue;
+
+            // layers from..y-1 share one cross-section
+            g.contour(layers[from], w, d, from);
+            g.contour(layers[from], w, d, y);
+            g.verticals(layers[from], w, d, from, y);
+            from = y;
+        }
+        return g.lines.toFloatArray();
+    }
+
+    private void contour(boolean[] cells, int w, int d, int y) {
+        // edges along x between rows j - 1 and j
+        for (int j = 0; j <= d; j++) {
+            int start = -1;
+            for (int i = 0; i <= w; i++) {
+                boolean edge = i < w && in(cells, w, d, i, j - 1) != in(cells, w, d, i, j);
+                if (edge && start < 0) start = i;
+                if (!edge && start >= 0) {
+                    line(start, y, j, i, y, j);
+                    start = -1;
+                }
+            }
+        }
+        // edges along z between columns i - 1 and i
+        for (int i = 0; i <= w; i++) {
+            int start = -1;
+            for (int j = 0; j <= d; j++) {
+                boolean edge = j < d && in(cells, w, d, i - 1, j) != in(cells, w, d, i, j);
+                if (edge && start < 0) start = j;
+                if (!edge && start >= 0) {
+                    line(i, y, start, i, y, j);
+                    start = -1;
+                }
+            }
+        }
+    }
+
+    /** Vertical edges from {@code y0} to {@code y1} at every corner of the cross-section's contour. */
+    private void verticals(boolean[] cells, int w, int d, int y0, int y1) {
+        for (int j = 0; j <= d; j++) {
+            for (int i = 0; i <= w; i++) {
+                boolean a = in(cells, w, d, i - 1, j - 1), b = in(cells, w, d, i, j - 1);
+                boolean c = in(cells, w, d, i - 1, j), e = in(cells, w, d, i, j);
+                int n = (a ? 1 : 0) + (b ? 1 : 0) + (c ? 1 : 0) + (e ? 1 : 0);
+                if (n == 1 || n == 3 || n == 2 && a == e) line(i, y0, j, i, y1, j);
+            }
+        }
+    }
+
+    private static boolean in(boolean[] cells, int w, int d, int i, int j) {
+        return i >= 0 && i < w && j >= 0 && j < d && cells[j * w + i];
+    }
+
+    private void line(int x0, int y0, int z0, int x1, int y1, int z1) {
+        lines.add(x0);
+        lines.add(y0);
+        lines.add(z0);
+        lines.add(x1);
+        lines.add(y1);
+        lines.add(z1);
+    }
+}
@@ -0,0 +1,74 @@
+/**
+ * Draws the preview outline the server sent as a {@link PreviewPayload}. The line geometry is built once when
+ * the payload arrives and then only re-emitted each frame until the preview expires.
+ */
+
+package jason.voxelcleaner.client;
+
+import jason.voxelcleaner.core.ShapeRaster;
+import jason.voxelcleaner.network.PreviewPayload;
+
+import net.fabricmc.fabric.api.client.rendering.v1.world.WorldRenderContext;
+
+import net.minecraft.client.render.RenderLayers;
+import net.minecraft.client.render.VertexConsumer;
+import net.minecraft.client.util.math.MatrixStack;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.Vec3d;
+
+public final class PreviewRenderer {
+
+    private static final int COLOR = 0xFF66E0FF;
+
+    /** Segments of the active preview relative to {@link #origin}, or null; only touched on the render thread. */
+    private static float[] lines;
+    private static BlockPos origin;
+    private static int ticksLeft;
+
+    private PreviewRenderer() {}
+
+    public static void show(PreviewPayload p) {
+        lines = switch (p.kind()) {
+            case BOX -> OutlineGeometry.box(p.width(), p.height(), p.depth());
+            case SPHERE -> OutlineGeometry.shape(ShapeRaster.sphere(p.width() / 2, false));
+            case CYLINDER -> OutlineGeometry.shape(ShapeRaster.cylinder(p.width() / 2, p.height(), false));
+            case PYRAMID -> OutlineGeometry.shape(ShapeRaster.pyramid(p.width(), p.height(), false));
+        };
+        origin = p.origin();
+        ticksLeft = p.ticks();
+    }
+
+    public static void clear() {
+        lines = null;
+    }
+
+    public static void tick() {
+        if (lines != null && --ticksLeft <= 0) lines = null;
+    }
+
+    public static void render(WorldRenderContext context) {
+        float[] l = lines;
+        BlockPos o = origin;
+        if (l == null) return;
+
+        // the offset is taken in double, so only the small camera-relative result becomes a float
+        Vec3d cam = context.worldState().cameraRenderState.pos;
+        MatrixStack matrices = context.matrices();
+        matrices.push();
+        matrices.translate(o.getX() - cam.x, o.getY() - cam.y, o.getZ() - cam.z);
+        MatrixStack.Entry entry = matrices.peek();
+
+        VertexConsumer buffer = context.consumers().getBuffer(RenderLayers.lines());
+        for (int i = 0; i < l.length; i += 6) {
+            float dx = l[i + 3] - l[i], dy = l[i + 4] - l[i + 1], dz = l[i + 5] - l[i + 2];
+            float len = (float) Math.sqrt(dx * dx + dy * dy + dz * dz);
+            dx /= len;
+            dy /= len;
+            dz /= len;
+
+            buffer.vertex(entry, l[i], l[i + 1], l[i + 2]).color(COLOR).normal(entry, dx, dy, dz).lineWidth(2.0f);
+            buffer.vertex(entry, l[i + 3], l[i + 4], l[i + 5]).color(COLOR).normal(entry, dx, dy, dz).lineWidth(2.0f);
+        }
+        matrices.pop();
+    }
+}
@@ -4,20 +4,60 @@
 package jason.voxelcleaner;
 
 import jason.voxelcleaner.command.VoxelCommands;
+import jason.voxelcleaner.config.VoxelConfig;
+import jason.voxelcleaner.core.EditJobService;
+import jason.voxelcleaner.core.GhostPreview;
 import jason.voxelcleaner.core.PreviewService;
+import jason.voxelcleaner.core.ProtectedRegions;
+import jason.voxelcleaner.core.ProtectionRules;
+import jason.voxelcleaner.history.HistoryService;
+import jason.voxelcleaner.network.PreviewPayload;
 import net.fabricmc.api.ModInitializer;
 import net.fabricmc.fabric.api.command.v2.CommandRegistrationCallback;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerLifecycleEvents;
 import net.fabricmc.fabric.api.event.lifecycle.v1.ServerTickEvents;
+import net.fabricmc.fabric.api.networking.v1.PayloadTypeRegistry;
+import net.fabricmc.fabric.api.networking.v1.ServerPlayConnectionEvents;
 
 public class VoxelCleaner implements ModInitializer {
 	@Override
 	public void onInitialize() {
+		// Limits and budgets from config/voxelcleaner/config.json; /vc reload reads it again
+		VoxelConfig.load();
+
 		CommandRegistrationCallback.EVENT.register((dispatcher, registryAccess, environment) -> {
 			VoxelCommands.register(dispatcher, registryAccess);
 		});
 
+		// Preview outlines for clients with the mod; must be known on both sides
+		PayloadTypeRegistry.playS2C().register(PreviewPayload.ID, PreviewPayload.CODEC);
+
 		// Refresh particle previews so they stay visible longer
 		ServerTickEvents.END_SERVER_TICK.register(PreviewService::tick);
+
+		// Put the real blocks back once a ghost preview expires
+		ServerTickEvents.END_SERVER_TICK.register(GhostPreview::tick);
+
+		// Advance running edit jobs within the per-tick budget
+		ServerTickEvents.END_SERVER_TICK.register(EditJobService::tick);
+
+		// Drop a player's history from memory when they leave; persisted stacks are reloaded on demand
+		ServerPlayConnectionEvents.DISCONNECT.register((handler, server) -> HistoryService.release(handler.getPlayer().getUuid()));
+		ServerPlayConnectionEvents.DISCONNECT.register((handler, server) -> GhostPreview.discard(handler.getPlayer().getUuid()));
+		ServerLifecycleEvents.SERVER_STARTING.register(server -> HistoryService.clearSpill());
+		ServerLifecycleEvents.SERVER_STARTING.register(ProtectedRegions::load);
+
+		// Protection table depends on block tags, which are (re)bound whenever data packs load
+		ServerLifecycleEvents.SERVER_STARTING.register(server -> ProtectionRules.compile());
+		ServerLifecycleEvents.END_DATA_PACK_RELOAD.register((server, resources, success) -> {
+			if (success) ProtectionRules.compile();
+		});
+
+		ServerLifecycleEvents.SERVER_STOPPING.register(server -> {
+			EditJobService.cancelAll();
+			// History is written off-thread; make sure the last writes land before the JVM exits
+			HistoryService.flushPending();
+		});
 	}
 }
 
@@ -6,23 +6,40 @@ package jason.voxelcleaner.command;
 import com.mojang.brigadier.Command;
 import com.mojang.brigadier.CommandDispatcher;
 import com.mojang.brigadier.arguments.IntegerArgumentType;
+import com.mojang.brigadier.arguments.StringArgumentType;
+import com.mojang.brigadier.builder.ArgumentBuilder;
+import com.mojang.brigadier.builder.LiteralArgumentBuilder;
 
 import jason.voxelcleaner.config.VoxelConfig;
+import jason.voxelcleaner.core.EditJob;
+import jason.voxelcleaner.core.EditJobService;
+import jason.voxelcleaner.core.GhostPreview;
 import jason.voxelcleaner.core.VoxelOperations;
 import jason.voxelcleaner.core.PreviewService;
+import jason.voxelcleaner.core.ProtectedRegions;
+import jason.voxelcleaner.core.ProtectionRules;
 import jason.voxelcleaner.history.HistoryService;
+import jason.voxelcleaner.history.HistoryService.ConflictMode;
+import jason.voxelcleaner.history.HistoryService.StepResult;
+import jason.voxelcleaner.model.VoxelModels.DryRun;
 import jason.voxelcleaner.model.VoxelModels.Result;
 import jason.voxelcleaner.util.CommandUtil;
 
 import net.minecraft.block.Block;
 import net.minecraft.block.Blocks;
 import net.minecraft.command.CommandRegistryAccess;
+import net.minecraft.command.argument.BlockPosArgumentType;
 import net.minecraft.command.argument.BlockStateArgumentType;
+import net.minecraft.command.argument.EntityArgumentType;
 import net.minecraft.server.command.CommandManager;
 import net.minecraft.server.command.ServerCommandSource;
 import net.minecraft.server.network.ServerPlayerEntity;
 import net.minecraft.text.Text;
+import net.minecraft.util.math.BlockBox;
 
+import java.util.Locale;
+import java.util.UUID;
+import java.util.function.Consumer;
 import java.util.function.UnaryOperator;
 
 import static net.minecraft.server.command.CommandManager.argument;
@@ -31,8 +48,13 @@ import static net.minecraft.server.command.CommandManager.literal;
 public final class VoxelCommands {
 
     private static final VoxelOperations OPS = new VoxelOperations();
+    private static final VoxelOperations DRY = OPS.dryRun();
+    private static final VoxelOperations GHOST = OPS.ghost();
     private static final HistoryService HISTORY = new HistoryService();
 
+    /** Whether a command edits, only reports ({@code dryrun}) or also shows the result ({@code ghost}). */
+    private enum Mode { RUN, DRY_RUN, GHOST }
+
     private VoxelCommands() {}
 
     public static void register(CommandManager.RegistrationEnvironment dispatcherEnv) {
@@ -47,106 +69,57 @@ public final class VoxelCommands {
         // Syntax: /vc <w> <h> <d> [loot|drops] [force|override]
         //         /vc <w> <h> <d> <material> [loot|drops] [force|override]
         // Extra:  /vc help
-        //         /vc undo [count]
-        //         /vc redo [count]
+        //         /vc undo [count] [skip|force]
+        //         /vc redo [count] [skip|force]
         //         /vc history [count]
+        //         /vc cancel
+        //         /vc dryrun <...> | /vc ghost <...>
+        //         /vc reload   (admins)
+        //         /vc region add <name> <from> <to> [owner] | remove <name> | list   (admins)
         // -----------------------------------------------------------------
 
-        UnaryOperator<com.mojang.brigadier.builder.LiteralArgumentBuilder<ServerCommandSource>> buildCleaner =
+        UnaryOperator<LiteralArgumentBuilder<ServerCommandSource>> buildCleaner =
                 root -> root
                         .then(literal("help").executes(VoxelCommands::help))
-                        .then(literal("undo")
-                                .executes(ctx -> undo(ctx, 1))
-                                .then(argument("count", IntegerArgumentType.integer(1, 10))
-                                        .executes(ctx -> undo(ctx, IntegerArgumentType.getInteger(ctx, "count")))))
-                        .then(literal("redo")
-                                .executes(ctx -> redo(ctx, 1))
-                                .then(argument("count", IntegerArgumentType.integer(1, 10))
-                                        .executes(ctx -> redo(ctx, IntegerArgumentType.getInteger(ctx, "count")))))
+                        .then(historyStep(literal("undo"), true))
+                        .then(historyStep(literal("redo"), false))
                         .then(literal("history")
                                 .executes(ctx -> history(ctx, 5))
                                 .then(argument("count", IntegerArgumentType.integer(1, VoxelConfig.MAX_HISTORY_LINES))
                                         .executes(ctx -> history(ctx, IntegerArgumentType.getInteger(ctx, "count")))))
+                        .then(literal("cancel").executes(VoxelCommands::cancel))
+                        .then(literal("reload")
+                                .requires(CommandUtil::isAdmin)
+                                .executes(VoxelCommands::reload))
+                        .then(literal("region")
+                                .requires(CommandUtil::isAdmin)
+                                .then(literal("add")
+                                        .then(argument("name", StringArgumentType.word())
+                                                .then(argument("from", BlockPosArgumentType.blockPos())
+                                                        .then(argument("to", BlockPosArgumentType.blockPos())
+                                                                .executes(ctx -> regionAdd(ctx, null))
+                                                                .then(argument("owner", EntityArgumentType.player())
+                                                                        .executes(ctx -> regionAdd(ctx,
+                                                                                EntityArgumentType.getPlayer(ctx, "owner").getUuid())))))))
+                                .then(literal("remove")
+                                        .then(argument("name", StringArgumentType.word())
+                                                .executes(VoxelCommands::regionRemove)))
+                                .then(literal("list").executes(VoxelCommands::regionList)))
 
 
                         // -----------------------------------------------------------------
                         // replace
                         // Syntax: /vc replace <w> <h> <d> <from> <to> [shell|inside] [chance <1..100>] [force|override]
                         // -----------------------------------------------------------------
-                        .then(literal("replace")
-                                .then(argument("width", IntegerArgumentType.integer(1, VoxelConfig.MAX_W))
-                                        .then(argument("height", IntegerArgumentType.integer(1, VoxelConfig.MAX_H))
-                                                .then(argument("depth", IntegerArgumentType.integer(1, VoxelConfig.MAX_D))
-                                                        .then(argument("from", BlockStateArgumentType.blockState(registryAccess))
-                                                                .then(argument("to", BlockStateArgumentType.blockState(registryAccess))
-                                                                        .executes(ctx -> runReplace(ctx, false, false, 100, false))
-                                                                        .then(literal("shell")
-                                                                                .executes(ctx -> runReplace(ctx, true, false, 100, false))
-                                                                                .then(literal("force").executes(ctx -> runReplace(ctx, true, false, 100, true)))
-                                                                                .then(literal("override").executes(ctx -> runReplace(ctx, true, false, 100, true)))
-                                                                                .then(literal("chance")
-                                                                                        .then(argument("percent", IntegerArgumentType.integer(1, 100))
-                                                                                                .executes(ctx -> runReplace(ctx, true, false, IntegerArgumentType.getInteger(ctx, "percent"), false))
-                                                                                                .then(literal("force").executes(ctx -> runReplace(ctx, true, false, IntegerArgumentType.getInteger(ctx, "percent"), true)))
-                                                                                                .then(literal("override").executes(ctx -> runReplace(ctx, true, false, IntegerArgumentType.getInteger(ctx, "percent"), true))))))
-                                                                        .then(literal("inside")
-                                                                                .executes(ctx -> runReplace(ctx, false, true, 100, false))
-                                                                                .then(literal("force").executes(ctx -> runReplace(ctx, false, true, 100, true)))
-                                                                                .then(literal("override").executes(ctx -> runReplace(ctx, false, true, 100, true)))
-                                                                                .then(literal("chance")
-                                                                                        .then(argument("percent", IntegerArgumentType.integer(1, 100))
-                                                                                                .executes(ctx -> runReplace(ctx, false, true, IntegerArgumentType.getInteger(ctx, "percent"), false))
-                                                                                                .then(literal("force").executes(ctx -> runReplace(ctx, false, true, IntegerArgumentType.getInteger(ctx, "percent"), true)))
-                                                                                                .then(literal("override").executes(ctx -> runReplace(ctx, false, true, IntegerArgumentType.getInteger(ctx, "percent"), true))))))
-                                                                        .then(literal("chance")
-                                                                                .then(argument("percent", IntegerArgumentType.integer(1, 100))
-                                                                                        .executes(ctx -> runReplace(ctx, false, false, IntegerArgumentType.getInteger(ctx, "percent"), false))
-                                                                                        .then(literal("force").executes(ctx -> runReplace(ctx, false, false, IntegerArgumentType.getInteger(ctx, "percent"), true)))
-                                                                                        .then(literal("override").executes(ctx -> runReplace(ctx, false, false, IntegerArgumentType.getInteger(ctx, "percent"), true)))))
-                                                                        .then(literal("force").executes(ctx -> runReplace(ctx, false, false, 100, true)))
-                                                                        .then(literal("override").executes(ctx -> runReplace(ctx, false, false, 100, true)))
-                                                                ))))))
+                        .then(replaceArgs(registryAccess, Mode.RUN))
 
-        // -----------------------------------------------------------------
-        // shapes
-        // Syntax: /vc shape sphere <radius> <material> [hollow] [force|override]
-        //         /vc shape cylinder <radius> <height> <material> [hollow] [force|override]
-        //         /vc shape pyramid <base> <height> <material> [hollow] [force|override]
-        // -----------------------------------------------------------------
-                        .then(literal("shape")
-                .then(literal("sphere")
-                        .then(argument("radius", IntegerArgumentType.integer(1, VoxelConfig.MAX_W))
-                                .then(argument("material", BlockStateArgumentType.blockState(registryAccess))
-                                        .executes(ctx -> runShapeSphere(ctx, false, false))
-                                        .then(literal("hollow").executes(ctx -> runShapeSphere(ctx, true, false))
-                                                .then(literal("force").executes(ctx -> runShapeSphere(ctx, true, true)))
-                                                .then(literal("override").executes(ctx -> runShapeSphere(ctx, true, true))))
-                                        .then(literal("force").executes(ctx -> runShapeSphere(ctx, false, true)))
-                                        .then(literal("override").executes(ctx -> runShapeSphere(ctx, false, true)))
-                                )))
-                .then(literal("cylinder")
-                        .then(argument("radius", IntegerArgumentType.integer(1, VoxelConfig.MAX_W))
-                                .then(argument("height", IntegerArgumentType.integer(1, VoxelConfig.MAX_H))
-                                        .then(argument("material", BlockStateArgumentType.blockState(registryAccess))
-                                                .executes(ctx -> runShapeCylinder(ctx, false, false))
-                                                .then(literal("hollow").executes(ctx -> runShapeCylinder(ctx, true, false))
-                                                        .then(literal("force").executes(ctx -> runShapeCylinder(ctx, true, true)))
-                                                        .then(literal("override").executes(ctx -> runShapeCylinder(ctx, true, true))))
-                                                .then(literal("force").executes(ctx -> runShapeCylinder(ctx, false, true)))
-                                                .then(literal("override").executes(ctx -> runShapeCylinder(ctx, false, true)))
-                                        ))))
-                .then(literal("pyramid")
-                        .then(argument("base", IntegerArgumentType.integer(1, VoxelConfig.MAX_W))
-                                .then(argument("height", IntegerArgumentType.integer(1, VoxelConfig.MAX_H))
-                                        .then(argument("material", BlockStateArgumentType.blockState(registryAccess))
-                                                .executes(ctx -> runShapePyramid(ctx, false, false))
-                                                .then(literal("hollow").executes(ctx -> runShapePyramid(ctx, true, false))
-                                                        .then(literal("force").executes(ctx -> runShapePyramid(ctx, true, true)))
-                                                        .then(literal("override").executes(ctx -> runShapePyramid(ctx, true, true))))
-                                                .then(literal("force").executes(ctx -> runShapePyramid(ctx, false, true)))
-                                                .then(literal("override").executes(ctx -> runShapePyramid(ctx, false, true)))
-                                        ))))
-        )
+                        // -----------------------------------------------------------------
+                        // shapes
+                        // Syntax: /vc shape sphere <radius> <material> [hollow] [force|override]
+                        //         /vc shape cylinder <radius> <height> <material> [hollow] [force|override]
+                        //         /vc shape pyramid <base> <height> <material> [hollow] [force|override]
+                        // -----------------------------------------------------------------
+                        .then(shapeArgs(registryAccess, Mode.RUN))
 
                 // -----------------------------------------------------------------
                 // preview (particles)
@@ -155,89 +128,58 @@ public final class VoxelCommands {
                 // -----------------------------------------------------------------
                 .then(literal("preview")
                         .then(literal("clean")
-                                .then(argument("width", IntegerArgumentType.integer(1, VoxelConfig.MAX_W))
-                                        .then(argument("height", IntegerArgumentType.integer(1, VoxelConfig.MAX_H))
-                                                .then(argument("depth", IntegerArgumentType.integer(1, VoxelConfig.MAX_D))
+                                .then(argument("width", IntegerArgumentType.integer(1, VoxelConfig.MAX_SIZE_ARGUMENT))
+                                        .then(argument("height", IntegerArgumentType.integer(1, VoxelConfig.MAX_SIZE_ARGUMENT))
+                                                .then(argument("depth", IntegerArgumentType.integer(1, VoxelConfig.MAX_SIZE_ARGUMENT))
                                                         .executes(ctx -> runPreviewBox(ctx, true))))))
                         .then(literal("room")
-                                .then(argument("width", IntegerArgumentType.integer(1, VoxelConfig.MAX_W))
-                                        .then(argument("height", IntegerArgumentType.integer(1, VoxelConfig.MAX_H))
-                                                .then(argument("depth", IntegerArgumentType.integer(1, VoxelConfig.MAX_D))
+                                .then(argument("width", IntegerArgumentType.integer(1, VoxelConfig.MAX_SIZE_ARGUMENT))
+                                        .then(argument("height", IntegerArgumentType.integer(1, VoxelConfig.MAX_SIZE_ARGUMENT))
+                                                .then(argument("depth", IntegerArgumentType.integer(1, VoxelConfig.MAX_SIZE_ARGUMENT))
                                                         .executes(ctx -> runPreviewBox(ctx, true))))))
                         .then(literal("replace")
-                                .then(argument("width", IntegerArgumentType.integer(1, VoxelConfig.MAX_W))
-                                        .then(argument("height", IntegerArgumentType.integer(1, VoxelConfig.MAX_H))
-                                                .then(argument("depth", IntegerArgumentType.integer(1, VoxelConfig.MAX_D))
+                                .then(argument("width", IntegerArgumentType.integer(1, VoxelConfig.MAX_SIZE_ARGUMENT))
+                                        .then(argument("height", IntegerArgumentType.integer(1, VoxelConfig.MAX_SIZE_ARGUMENT))
+                                                .then(argument("depth", IntegerArgumentType.integer(1, VoxelConfig.MAX_SIZE_ARGUMENT))
                                                         .executes(ctx -> runPreviewBox(ctx, false))))))
                         .then(literal("shape")
                                 .then(literal("sphere")
-                                        .then(argument("radius", IntegerArgumentType.integer(1, VoxelConfig.MAX_W))
+                                        .then(argument("radius", IntegerArgumentType.integer(1, VoxelConfig.MAX_SIZE_ARGUMENT))
                                                 .executes(ctx -> runPreviewSphere(ctx))))
                                 .then(literal("cylinder")
-                                        .then(argument("radius", IntegerArgumentType.integer(1, VoxelConfig.MAX_W))
-                                                .then(argument("height", IntegerArgumentType.integer(1, VoxelConfig.MAX_H))
+                                        .then(argument("radius", IntegerArgumentType.integer(1, VoxelConfig.MAX_SIZE_ARGUMENT))
+                                                .then(argument("height", IntegerArgumentType.integer(1, VoxelConfig.MAX_SIZE_ARGUMENT))
                                                         .executes(ctx -> runPreviewCylinder(ctx)))))
                                 .then(literal("pyramid")
-                                        .then(argument("base", IntegerArgumentType.integer(1, VoxelConfig.MAX_W))
-                                                .then(argument("height", IntegerArgumentType.integer(1, VoxelConfig.MAX_H))
+                                        .then(argument("base", IntegerArgumentType.integer(1, VoxelConfig.MAX_SIZE_ARGUMENT))
+                                                .then(argument("height", IntegerArgumentType.integer(1, VoxelConfig.MAX_SIZE_ARGUMENT))
                                                         .executes(ctx -> runPreviewPyramid(ctx)))))
                         )
                 )
 
 
-                // main operation: clean/hollow
-                .then(argument("width", IntegerArgumentType.integer(1, VoxelConfig.MAX_W))
-                        .then(argument("height", IntegerArgumentType.integer(1, VoxelConfig.MAX_H))
-                                .then(argument("depth", IntegerArgumentType.integer(1, VoxelConfig.MAX_D))
-
-                                        .executes(ctx -> runClean(ctx, null, false, false))
-
-                                        // options: [loot|drops] [force|override]
-                                        .then(literal("loot")
-                                                .executes(ctx -> runClean(ctx, null, false, true))
-                                                .then(literal("force")
-                                                        .executes(ctx -> runClean(ctx, null, true, true)))
-                                                .then(literal("override")
-                                                        .executes(ctx -> runClean(ctx, null, true, true))))
-                                        .then(literal("drops")
-                                                .executes(ctx -> runClean(ctx, null, false, true))
-                                                .then(literal("force")
-                                                        .executes(ctx -> runClean(ctx, null, true, true)))
-                                                .then(literal("override")
-                                                        .executes(ctx -> runClean(ctx, null, true, true))))
-
-                                        // allow force-only (still shows loot first in tab completion)
-                                        .then(literal("force")
-                                                .executes(ctx -> runClean(ctx, null, true, false)))
-                                        .then(literal("override")
-                                                .executes(ctx -> runClean(ctx, null, true, false)))
-
-                                        // material variant
-                                        .then(argument("material", BlockStateArgumentType.blockState(registryAccess))
-
-                                                .executes(ctx -> runClean(ctx, CommandUtil.getBlock(ctx, "material"), false, false))
+                // -----------------------------------------------------------------
+                // dry run: same selection, nothing is written
+                // Syntax: /vc dryrun <w> <h> <d> [material] [loot|drops] [force|override]
+                //         /vc dryrun replace <...> | /vc dryrun shape <...>
+                // -----------------------------------------------------------------
+                .then(literal("dryrun")
+                        .then(replaceArgs(registryAccess, Mode.DRY_RUN))
+                        .then(shapeArgs(registryAccess, Mode.DRY_RUN))
+                        .then(cleanArgs(registryAccess, Mode.DRY_RUN)))
 
-                                                .then(literal("loot")
-                                                        .executes(ctx -> runClean(ctx, CommandUtil.getBlock(ctx, "material"), false, true))
-                                                        .then(literal("force")
-                                                                .executes(ctx -> runClean(ctx, CommandUtil.getBlock(ctx, "material"), true, true)))
-                                                        .then(literal("override")
-                                                                .executes(ctx -> runClean(ctx, CommandUtil.getBlock(ctx, "material"), true, true))))
-                                                .then(literal("drops")
-                                                        .executes(ctx -> runClean(ctx, CommandUtil.getBlock(ctx, "material"), false, true))
-                                                        .then(literal("force")
-                                                                .executes(ctx -> runClean(ctx, CommandUtil.getBlock(ctx, "material"), true, true)))
-                                                        .then(literal("override")
-                                                                .executes(ctx -> runClean(ctx, CommandUtil.getBlock(ctx, "material"), true, true))))
+                // -----------------------------------------------------------------
+                // ghost preview: the planned blocks, shown only to the player
+                // Syntax: /vc ghost <w> <h> <d> [material] [loot|drops] [force|override]
+                //         /vc ghost replace <...> | /vc ghost shape <...>
+                // -----------------------------------------------------------------
+                .then(literal("ghost")
+                        .then(replaceArgs(registryAccess, Mode.GHOST))
+                        .then(shapeArgs(registryAccess, Mode.GHOST))
+                        .then(cleanArgs(registryAccess, Mode.GHOST)))
 
-                                                .then(literal("force")
-                                                        .executes(ctx -> runClean(ctx, CommandUtil.getBlock(ctx, "material"), true, false)))
-                                                .then(literal("override")
-                                                        .executes(ctx -> runClean(ctx, CommandUtil.getBlock(ctx, "material"), true, false)))
-                                        )
-                                )
-                        )
-                );
+                // main operation: clean/hollow
+                .then(cleanArgs(registryAccess, Mode.RUN));
 
         dispatcher.register(buildCleaner.apply(literal("voxelcleaner")));
         dispatcher.register(buildCleaner.apply(literal("vc")));
@@ -245,43 +187,15 @@ public final class VoxelCommands {
         // -----------------------------------------------------------------
         // voxelroom / vr
         // Syntax: /vr <w> <h> <d> <walls> <floor> <ceiling> [loot|drops] [force|override]
+        //         /vr dryrun <...>
+        //         /vr ghost <...>
         // -----------------------------------------------------------------
 
-        UnaryOperator<com.mojang.brigadier.builder.LiteralArgumentBuilder<ServerCommandSource>> buildRoom =
+        UnaryOperator<LiteralArgumentBuilder<ServerCommandSource>> buildRoom =
                 root -> root
-                        .then(argument("width", IntegerArgumentType.integer(1, VoxelConfig.MAX_W))
-                                .then(argument("height", IntegerArgumentType.integer(1, VoxelConfig.MAX_H))
-                                        .then(argument("depth", IntegerArgumentType.integer(1, VoxelConfig.MAX_D))
-                                                .then(argument("walls", BlockStateArgumentType.blockState(registryAccess))
-                                                        .then(argument("floor", BlockStateArgumentType.blockState(registryAccess))
-                                                                .then(argument("ceiling", BlockStateArgumentType.blockState(registryAccess))
-
-                                                                        .executes(ctx -> runRoom(ctx, false, false))
-
-                                                                        // options: [loot|drops] [force|override]
-                                                                        .then(literal("loot")
-                                                                                .executes(ctx -> runRoom(ctx, false, true))
-                                                                                .then(literal("force")
-                                                                                        .executes(ctx -> runRoom(ctx, true, true)))
-                                                                                .then(literal("override")
-                                                                                        .executes(ctx -> runRoom(ctx, true, true))))
-                                                                        .then(literal("drops")
-                                                                                .executes(ctx -> runRoom(ctx, false, true))
-                                                                                .then(literal("force")
-                                                                                        .executes(ctx -> runRoom(ctx, true, true)))
-                                                                                .then(literal("override")
-                                                                                        .executes(ctx -> runRoom(ctx, true, true))))
-
-                                                                        .then(literal("force")
-                                                                                .executes(ctx -> runRoom(ctx, true, false)))
-                                                                        .then(literal("override")
-                                                                                .executes(ctx -> runRoom(ctx, true, false)))
-                                                                )
-                                                        )
-                                                )
-                                        )
-                                )
-                        );
+                        .then(literal("dryrun").then(roomArgs(registryAccess, Mode.DRY_RUN)))
+                        .then(literal("ghost").then(roomArgs(registryAccess, Mode.GHOST)))
+                        .then(roomArgs(registryAccess, Mode.RUN));
 
         dispatcher.register(buildRoom.apply(literal("voxelroom")));
         dispatcher.register(buildRoom.apply(literal("vr")));
@@ -290,25 +204,13 @@ public final class VoxelCommands {
         // Keep existing standalone aliases (backward compatible)
         // -----------------------------------------------------------------
 
-        dispatcher.register(literal("voxelundo")
-                .executes(ctx -> undo(ctx, 1))
-                .then(argument("count", IntegerArgumentType.integer(1, 10))
-                        .executes(ctx -> undo(ctx, IntegerArgumentType.getInteger(ctx, "count")))));
+        dispatcher.register(historyStep(literal("voxelundo"), true));
 
-        dispatcher.register(literal("vcu")
-                .executes(ctx -> undo(ctx, 1))
-                .then(argument("count", IntegerArgumentType.integer(1, 10))
-                        .executes(ctx -> undo(ctx, IntegerArgumentType.getInteger(ctx, "count")))));
+        dispatcher.register(historyStep(literal("vcu"), true));
 
-        dispatcher.register(literal("voxelredo")
-                .executes(ctx -> redo(ctx, 1))
-                .then(argument("count", IntegerArgumentType.integer(1, 10))
-                        .executes(ctx -> redo(ctx, IntegerArgumentType.getInteger(ctx, "count")))));
+        dispatcher.register(historyStep(literal("voxelredo"), false));
 
-        dispatcher.register(literal("vcr")
-                .executes(ctx -> redo(ctx, 1))
-                .then(argument("count", IntegerArgumentType.integer(1, 10))
-                        .executes(ctx -> redo(ctx, IntegerArgumentType.getInteger(ctx, "count")))));
+        dispatcher.register(historyStep(literal("vcr"), false));
 
         dispatcher.register(literal("voxelhistory")
                 .executes(ctx -> history(ctx, 5))
@@ -321,6 +223,184 @@ public final class VoxelCommands {
                         .executes(ctx -> history(ctx, IntegerArgumentType.getInteger(ctx, "count")))));
     }
 
+    /** {@code replace <w> <h> <d> <from> <to> [shell|inside] [chance <1..100>] [force|override]} */
+    private static ArgumentBuilder<ServerCommandSource, ?> replaceArgs(CommandRegistryAccess registryAccess, Mode mode) {
+        return literal("replace")
+                .then(argument("width", IntegerArgumentType.integer(1, VoxelConfig.MAX_SIZE_ARGUMENT))
+                        .then(argument("height", IntegerArgumentType.integer(1, VoxelConfig.MAX_SIZE_ARGUMENT))
+                                .then(argument("depth", IntegerArgumentType.integer(1, VoxelConfig.MAX_SIZE_ARGUMENT))
+                                        .then(argument("from", BlockStateArgumentType.blockState(registryAccess))
+                                                .then(argument("to", BlockStateArgumentType.blockState(registryAccess))
+                                                        .executes(ctx -> runReplace(ctx, mode, false, false, 100, false))
+                                                        .then(literal("shell")
+                                                                .executes(ctx -> runReplace(ctx, mode, true, false, 100, false))
+                                                                .then(literal("force").executes(ctx -> runReplace(ctx, mode, true, false, 100, true)))
+                                                                .then(literal("override").executes(ctx -> runReplace(ctx, mode, true, false, 100, true)))
+                                                                .then(literal("chance")
+                                                                        .then(argument("percent", IntegerArgumentType.integer(1, 100))
+                                                                                .executes(ctx -> runReplace(ctx, mode, true, false, IntegerArgumentType.getInteger(ctx, "percent"), false))
+                                                                                .then(literal("force").executes(ctx -> runReplace(ctx, mode, true, false, IntegerArgumentType.getInteger(ctx, "percent"), true)))
+                                                                                .then(literal("override").executes(ctx -> runReplace(ctx, mode, true, false, IntegerArgumentType.getInteger(ctx, "percent"), true))))))
+                                                        .then(literal("inside")
+                                                                .executes(ctx -> runReplace(ctx, mode, false, true, 100, false))
+                                                                .then(literal("force").executes(ctx -> runReplace(ctx, mode, false, true, 100, true)))
+                                                                .then(literal("override").executes(ctx -> runReplace(ctx, mode, false, true, 100, true)))
+                                                                .then(literal("chance")
+                                                                        .then(argument("percent", IntegerArgumentType.integer(1, 100))
+                                                                                .executes(ctx -> runReplace(ctx, mode, false, true, IntegerArgumentType.getInteger(ctx, "percent"), false))
+                                                                                .then(literal("force").executes(ctx -> runReplace(ctx, mode, false, true, IntegerArgumentType.getInteger(ctx, "percent"), true)))
+                                                                                .then(literal("override").executes(ctx -> runReplace(ctx, mode, false, true, IntegerArgumentType.getInteger(ctx, "percent"), true))))))
+                                                        .then(literal("chance")
+                                                                .then(argument("percent", IntegerArgumentType.integer(1, 100))
+                                                                        .executes(ctx -> runReplace(ctx, mode, false, false, IntegerArgumentType.getInteger(ctx, "percent"), false))
+                                                                        .then(literal("force").executes(ctx -> runReplace(ctx, mode, false, false, IntegerArgumentType.getInteger(ctx, "percent"), true)))
+                                                                        .then(literal("override").executes(ctx -> runReplace(ctx, mode, false, false, IntegerArgumentType.getInteger(ctx, "percent"), true)))))
+                                                        .then(literal("force").executes(ctx -> runReplace(ctx, mode, false, false, 100, true)))
+                                                        .then(literal("override").executes(ctx -> runReplace(ctx, mode, false, false, 100, true)))
+                                                )))));
+    }
+
+    /** {@code shape sphere|cylinder|pyramid <...> <material> [hollow] [force|override]} */
+    private static ArgumentBuilder<ServerCommandSource, ?> shapeArgs(CommandRegistryAccess registryAccess, Mode mode) {
+        return literal("shape")
+                .then(literal("sphere")
+                        .then(argument("radius", IntegerArgumentType.integer(1, VoxelConfig.MAX_SIZE_ARGUMENT))
+                                .then(argument("material", BlockStateArgumentType.blockState(registryAccess))
+                                        .executes(ctx -> runShapeSphere(ctx, mode, false, false))
+                                        .then(literal("hollow").executes(ctx -> runShapeSphere(ctx, mode, true, false))
+                                                .then(literal("force").executes(ctx -> runShapeSphere(ctx, mode, true, true)))
+                                                .then(literal("override").executes(ctx -> runShapeSphere(ctx, mode, true, true))))
+                                        .then(literal("force").executes(ctx -> runShapeSphere(ctx, mode, false, true)))
+                                        .then(literal("override").executes(ctx -> runShapeSphere(ctx, mode, false, true)))
+                                )))
+                .then(literal("cylinder")
+                        .then(argument("radius", IntegerArgumentType.integer(1, VoxelConfig.MAX_SIZE_ARGUMENT))
+                                .then(argument("height", IntegerArgumentType.integer(1, VoxelConfig.MAX_SIZE_ARGUMENT))
+                                        .then(argument("material", BlockStateArgumentType.blockState(registryAccess))
+                                                .executes(ctx -> runShapeCylinder(ctx, mode, false, false))
+                                                .then(literal("hollow").executes(ctx -> runShapeCylinder(ctx, mode, true, false))
+                                                        .then(literal("force").executes(ctx -> runShapeCylinder(ctx, mode, true, true)))
+                                                        .then(literal("override").executes(ctx -> runShapeCylinder(ctx, mode, true, true))))
+                                                .then(literal("force").executes(ctx -> runShapeCylinder(ctx, mode, false, true)))
+                                                .then(literal("override").executes(ctx -> runShapeCylinder(ctx, mode, false, true)))
+                                        ))))
+                .then(literal("pyramid")
+                        .then(argument("base", IntegerArgumentType.integer(1, VoxelConfig.MAX_SIZE_ARGUMENT))
+                                .then(argument("height", IntegerArgumentType.integer(1, VoxelConfig.MAX_SIZE_ARGUMENT))
+                                        .then(argument("material", BlockStateArgumentType.blockState(registryAccess))
+                                                .executes(ctx -> runShapePyramid(ctx, mode, false, false))
+                                                .then(literal("hollow").executes(ctx -> runShapePyramid(ctx, mode, true, false))
+                                                        .then(literal("force").executes(ctx -> runShapePyramid(ctx, mode, true, true)))
+                                                        .then(literal("override").executes(ctx -> runShapePyramid(ctx, mode, true, true))))
+                                                .then(literal("force").executes(ctx -> runShapePyramid(ctx, mode, false, true)))
+                                                .then(literal("override").executes(ctx -> runShapePyramid(ctx, mode, false, true)))
+                                        ))));
+    }
+
+    /** {@code <w> <h> <d> [material] [loot|drops] [force|override]} */
+    private static ArgumentBuilder<ServerCommandSource, ?> cleanArgs(CommandRegistryAccess registryAccess, Mode mode) {
+        return argument("width", IntegerArgumentType.integer(1, VoxelConfig.MAX_SIZE_ARGUMENT))
+                .then(argument("height", IntegerArgumentType.integer(1, VoxelConfig.MAX_SIZE_ARGUMENT))
+                        .then(argument("depth", IntegerArgumentType.integer(1, VoxelConfig.MAX_SIZE_ARGUMENT))
+
+                                .executes(ctx -> runClean(ctx, mode, null, false, false))
+
+                                // options: [loot|drops] [force|override]
+                                .then(literal("loot")
+                                        .executes(ctx -> runClean(ctx, mode, null, false, true))
+                                        .then(literal("force")
+                                                .executes(ctx -> runClean(ctx, mode, null, true, true)))
+                                        .then(literal("override")
+                                                .executes(ctx -> runClean(ctx, mode, null, true, true))))
+                                .then(literal("drops")
+                                        .executes(ctx -> runClean(ctx, mode, null, false, true))
+                                        .then(literal("force")
+                                                .executes(ctx -> runClean(ctx, mode, null, true, true)))
+                                        .then(literal("override")
+                                                .executes(ctx -> runClean(ctx, mode, null, true, true))))
+
+                                // allow force-only (still shows loot first in tab completion)
+                                .then(literal("force")
+                                        .executes(ctx -> runClean(ctx, mode, null, true, false)))
+                                .then(literal("override")
+                                        .executes(ctx -> runClean(ctx, mode, null, true, false)))
+
+                                // material variant
+                                .then(argument("material", BlockStateArgumentType.blockState(registryAccess))
+
+                                        .executes(ctx -> runClean(ctx, mode, CommandUtil.getBlock(ctx, "material"), false, false))
+
+                                        .then(literal("loot")
+                                                .executes(ctx -> runClean(ctx, mode, CommandUtil.getBlock(ctx, "material"), false, true))
+                                                .then(literal("force")
+                                                        .executes(ctx -> runClean(ctx, mode, CommandUtil.getBlock(ctx, "material"), true, true)))
+                                                .then(literal("override")
+                                                        .executes(ctx -> runClean(ctx, mode, CommandUtil.getBlock(ctx, "material"), true, true))))
+                                        .then(literal("drops")
+                                                .executes(ctx -> runClean(ctx, mode, CommandUtil.getBlock(ctx, "material"), false, true))
+                                                .then(literal("force")
+                                                        .executes(ctx -> runClean(ctx, mode, CommandUtil.getBlock(ctx, "material"), true, true)))
+                                                .then(literal("override")
+                                                        .executes(ctx -> runClean(ctx, mode, CommandUtil.getBlock(ctx, "material"), true, true))))
+
+                                        .then(literal("force")
+                                                .executes(ctx -> runClean(ctx, mode, CommandUtil.getBlock(ctx, "material"), true, false)))
+                                        .then(literal("override")
+                                                .executes(ctx -> runClean(ctx, mode, CommandUtil.getBlock(ctx, "material"), true, false)))
+                                )
+                        )
+                );
+    }
+
+    /** {@code <w> <h> <d> <walls> <floor> <ceiling> [loot|drops] [force|override]} */
+    private static ArgumentBuilder<ServerCommandSource, ?> roomArgs(CommandRegistryAccess registryAccess, Mode mode) {
+        return argument("width", IntegerArgumentType.integer(1, VoxelConfig.MAX_SIZE_ARGUMENT))
+                .then(argument("height", IntegerArgumentType.integer(1, VoxelConfig.MAX_SIZE_ARGUMENT))
+                        .then(argument("depth", IntegerArgumentType.integer(1, VoxelConfig.MAX_SIZE_ARGUMENT))
+                                .then(argument("walls", BlockStateArgumentType.blockState(registryAccess))
+                                        .then(argument("floor", BlockStateArgumentType.blockState(registryAccess))
+                                                .then(argument("ceiling", BlockStateArgumentType.blockState(registryAccess))
+
+                                                        .executes(ctx -> runRoom(ctx, mode, false, false))
+
+                                                        // options: [loot|drops] [force|override]
+                                                        .then(literal("loot")
+                                                                .executes(ctx -> runRoom(ctx, mode, false, true))
+                                                                .then(literal("force")
+                                                                        .executes(ctx -> runRoom(ctx, mode, true, true)))
+                                                                .then(literal("override")
+                                                                        .executes(ctx -> runRoom(ctx, mode, true, true))))
+                                                        .then(literal("drops")
+                                                                .executes(ctx -> runRoom(ctx, mode, false, true))
+                                                                .then(literal("force")
+                                                                        .executes(ctx -> runRoom(ctx, mode, true, true)))
+                                                                .then(literal("override")
+                                                                        .executes(ctx -> runRoom(ctx, mode, true, true))))
+
+                                                        .then(literal("force")
+                                                                .executes(ctx -> runRoom(ctx, mode, true, false)))
+                                                        .then(literal("override")
+                                                                .executes(ctx -> runRoom(ctx, mode, true, false)))
+                                                )
+                                        )
+                                )
+                        )
+                );
+    }
+
+    /** {@code [count] [skip|force]} for undo/redo; without a mode, conflicting changes abort the step. */
+    private static LiteralArgumentBuilder<ServerCommandSource> historyStep(
+            LiteralArgumentBuilder<ServerCommandSource> root, boolean undo) {
+        return root
+                .executes(ctx -> step(ctx, undo, 1, ConflictMode.ABORT))
+                .then(literal("skip").executes(ctx -> step(ctx, undo, 1, ConflictMode.SKIP)))
+                .then(literal("force").executes(ctx -> step(ctx, undo, 1, ConflictMode.FORCE)))
+                .then(argument("count", IntegerArgumentType.integer(1, 10))
+                        .executes(ctx -> step(ctx, undo, IntegerArgumentType.getInteger(ctx, "count"), ConflictMode.ABORT))
+                        .then(literal("skip").executes(ctx -> step(ctx, undo, IntegerArgumentType.getInteger(ctx, "count"), ConflictMode.SKIP)))
+                        .then(literal("force").executes(ctx -> step(ctx, undo, IntegerArgumentType.getInteger(ctx, "count"), ConflictMode.FORCE))));
+    }
+
     private static int help(com.mojang.brigadier.context.CommandContext<ServerCommandSource> ctx) {
         ServerPlayerEntity player = CommandUtil.player(ctx.getSource());
         if (player == null) return 0;
@@ -338,11 +418,18 @@ public final class VoxelCommands {
         player.sendMessage(Text.literal("  Beispiel:  /vr 9 5 9 minecraft:stone minecraft:oak_planks minecraft:oak_planks"), false);
 
         player.sendMessage(Text.literal("Undo/Redo/History:"), false);
-        player.sendMessage(Text.literal("/vc undo [count]   (z.B. /vc undo 3)"), false);
-        player.sendMessage(Text.literal("/vc redo [count]"), false);
+        player.sendMessage(Text.literal("/vc undo [count] [skip|force]   (z.B. /vc undo 3)"), false);
+        player.sendMessage(Text.literal("/vc redo [count] [skip|force]"), false);
+        player.sendMessage(Text.literal("  skip: inzwischen veränderte Blöcke auslassen, force: trotzdem überschreiben"), false);
         player.sendMessage(Text.literal("/vc history [count]"), false);
+        player.sendMessage(Text.literal("/vc cancel   (bricht den laufenden Auftrag ab)"), false);
+        if (CommandUtil.isAdmin(ctx.getSource())) {
+            player.sendMessage(Text.literal("/vc reload   (liest config/voxelcleaner/config.json neu)"), false);
+            player.sendMessage(Text.literal("/vc region add <name> <from> <to> [owner] | remove <name> | list"), false);
+            player.sendMessage(Text.literal("  geschützte Bereiche; nur der Besitzer und Admins dürfen darin bearbeiten"), false);
+        }
 
-        if (VoxelConfig.PERSIST_HISTORY) {
+        if (VoxelConfig.get().persistHistory()) {
             player.sendMessage(Text.literal("Hinweis: Undo/Redo ist persistent (über Server-Neustart hinweg)."), false);
         }
 
@@ -355,13 +442,18 @@ public final class VoxelCommands {
         player.sendMessage(Text.literal("/vc shape cylinder <radius> <height> <material> [hollow] [force|override]"), false);
         player.sendMessage(Text.literal("/vc shape pyramid <base> <height> <material> [hollow] [force|override]"), false);
 
+        player.sendMessage(Text.literal("/vc dryrun <...>   /vr dryrun <...>   (zählt nur, ändert nichts)"), false);
+        player.sendMessage(Text.literal("  Beispiel:  /vc dryrun replace 64 64 64 minecraft:stone minecraft:air"), false);
+
+        player.sendMessage(Text.literal("/vc ghost <...>   /vr ghost <...>   (zeigt nur dir das Ergebnis, ändert nichts)"), false);
+
         player.sendMessage(Text.literal("/vc preview clean|room|replace <w> <h> <d>"), false);
         player.sendMessage(Text.literal("/vc preview shape sphere <radius>"), false);
 
         return Command.SINGLE_SUCCESS;
     }
 
-    private static int runClean(com.mojang.brigadier.context.CommandContext<ServerCommandSource> ctx,
+    private static int runClean(com.mojang.brigadier.context.CommandContext<ServerCommandSource> ctx, Mode mode,
                                 Block shell, boolean force, boolean loot) {
         ServerPlayerEntity player = CommandUtil.player(ctx.getSource());
         if (player == null) return 0;
@@ -370,21 +462,21 @@ public final class VoxelCommands {
         int h = IntegerArgumentType.getInteger(ctx, "height");
         int d = IntegerArgumentType.getInteger(ctx, "depth");
 
-        Result r = OPS.hollow(player, w, h, d, shell, force, loot);
+        if (!withinLimits(ctx.getSource(), (long) w * h * d, w, h, d)) return 0;
 
-        if (!r.action().snapshots().isEmpty()) {
-            HISTORY.pushUndo(player.getUuid(), r.action());
-            HISTORY.clearRedo(player.getUuid());
-        }
+        EditJob job = ops(mode).hollow(player, w, h, d, shell, force, loot);
+        if (mode != Mode.RUN) return submitDryRun(ctx, player, job, mode);
 
-        ctx.getSource().sendFeedback(() -> Text.literal("VoxelCleaner: " + r.action().changed()), false);
-        if (loot && !player.isCreative()) {
-            ctx.getSource().sendFeedback(() -> Text.literal("Loot: " + r.action().lootItems()), false);
-        }
-        return Command.SINGLE_SUCCESS;
+
+        return submit(ctx, player, job, r -> {
+            ctx.getSource().sendFeedback(() -> Text.literal("VoxelCleaner: " + r.action().changed()), false);
+            if (loot && !player.isCreative()) {
+                ctx.getSource().sendFeedback(() -> Text.literal("Loot: " + r.action().lootItems()), false);
+            }
+        });
     }
 
-    private static int runRoom(com.mojang.brigadier.context.CommandContext<ServerCommandSource> ctx,
+    private static int runRoom(com.mojang.brigadier.context.CommandContext<ServerCommandSource> ctx, Mode mode,
                                boolean force, boolean loot) {
         ServerPlayerEntity player = CommandUtil.player(ctx.getSource());
         if (player == null) return 0;
@@ -398,21 +490,21 @@ public final class VoxelCommands {
         Block ceiling = CommandUtil.getBlock(ctx, "ceiling");
 
 
-        Result r = OPS.room(player, w, h, d, walls, floor, ceiling, force, loot);
+        if (!withinLimits(ctx.getSource(), (long) w * h * d, w, h, d)) return 0;
 
-        if (!r.action().snapshots().isEmpty()) {
-            HISTORY.pushUndo(player.getUuid(), r.action());
-            HISTORY.clearRedo(player.getUuid());
-        }
+        EditJob job = ops(mode).room(player, w, h, d, walls, floor, ceiling, force, loot);
+        if (mode != Mode.RUN) return submitDryRun(ctx, player, job, mode);
 
-        ctx.getSource().sendFeedback(() -> Text.literal("VoxelRoom: " + r.action().changed()), false);
-        if (loot && !player.isCreative()) {
-            ctx.getSource().sendFeedback(() -> Text.literal("Loot: " + r.action().lootItems()), false);
-        }
-        return Command.SINGLE_SUCCESS;
+
+        return submit(ctx, player, job, r -> {
+            ctx.getSource().sendFeedback(() -> Text.literal("VoxelRoom: " + r.action().changed()), false);
+            if (loot && !player.isCreative()) {
+                ctx.getSource().sendFeedback(() -> Text.literal("Loot: " + r.action().lootItems()), false);
+            }
+        });
     }
 
-    private static int runReplace(com.mojang.brigadier.context.CommandContext<ServerCommandSource> ctx,
+    private static int runReplace(com.mojang.brigadier.context.CommandContext<ServerCommandSource> ctx, Mode mode,
                                   boolean shellOnly, boolean insideOnly, int chancePercent, boolean force) {
         ServerPlayerEntity player = CommandUtil.player(ctx.getSource());
         if (player == null) return 0;
@@ -424,18 +516,17 @@ public final class VoxelCommands {
         Block from = CommandUtil.getBlock(ctx, "from");
         Block to = CommandUtil.getBlock(ctx, "to");
 
-        Result r = OPS.replace(player, w, h, d, from, to, force, shellOnly, insideOnly, chancePercent);
+        if (!withinLimits(ctx.getSource(), (long) w * h * d, w, h, d)) return 0;
 
-        if (!r.action().snapshots().isEmpty()) {
-            HISTORY.pushUndo(player.getUuid(), r.action());
-            HISTORY.clearRedo(player.getUuid());
-        }
+        EditJob job = ops(mode).replace(player, w, h, d, from, to, force, shellOnly, insideOnly, chancePercent);
+        if (mode != Mode.RUN) return submitDryRun(ctx, player, job, mode);
 
-        ctx.getSource().sendFeedback(() -> Text.literal("VoxelReplace: " + r.action().changed()), false);
-        return Command.SINGLE_SUCCESS;
+
+        return submit(ctx, player, job,
+                r -> ctx.getSource().sendFeedback(() -> Text.literal("VoxelReplace: " + r.action().changed()), false));
     }
 
-    private static int runShapeSphere(com.mojang.brigadier.context.CommandContext<ServerCommandSource> ctx,
+    private static int runShapeSphere(com.mojang.brigadier.context.CommandContext<ServerCommandSource> ctx, Mode mode,
                                       boolean hollow, boolean force) {
         ServerPlayerEntity player = CommandUtil.player(ctx.getSource());
         if (player == null) return 0;
@@ -443,18 +534,17 @@ public final class VoxelCommands {
         int radius = IntegerArgumentType.getInteger(ctx, "radius");
         Block material = CommandUtil.getBlock(ctx, "material");
 
-        Result r = OPS.shapeSphere(player, radius, material, hollow, force);
+        if (!withinLimits(ctx.getSource(), cube(2L * radius + 1), radius)) return 0;
 
-        if (!r.action().snapshots().isEmpty()) {
-            HISTORY.pushUndo(player.getUuid(), r.action());
-            HISTORY.clearRedo(player.getUuid());
-        }
+        EditJob job = ops(mode).shapeSphere(player, radius, material, hollow, force);
+        if (mode != Mode.RUN) return submitDryRun(ctx, player, job, mode);
 
-        ctx.getSource().sendFeedback(() -> Text.literal("VoxelShape Sphere: " + r.action().changed()), false);
-        return Command.SINGLE_SUCCESS;
+
+        return submit(ctx, player, job,
+                r -> ctx.getSource().sendFeedback(() -> Text.literal("VoxelShape Sphere: " + r.action().changed()), false));
     }
 
-    private static int runShapeCylinder(com.mojang.brigadier.context.CommandContext<ServerCommandSource> ctx,
+    private static int runShapeCylinder(com.mojang.brigadier.context.CommandContext<ServerCommandSource> ctx, Mode mode,
                                         boolean hollow, boolean force) {
         ServerPlayerEntity player = CommandUtil.player(ctx.getSource());
         if (player == null) return 0;
@@ -463,18 +553,17 @@ public final class VoxelCommands {
         int height = IntegerArgumentType.getInteger(ctx, "height");
         Block material = CommandUtil.getBlock(ctx, "material");
 
-        Result r = OPS.shapeCylinder(player, radius, height, material, hollow, force);
+        if (!withinLimits(ctx.getSource(), square(2L * radius + 1) * height, radius, height)) return 0;
 
-        if (!r.action().snapshots().isEmpty()) {
-            HISTORY.pushUndo(player.getUuid(), r.action());
-            HISTORY.clearRedo(player.getUuid());
-        }
+        EditJob job = ops(mode).shapeCylinder(player, radius, height, material, hollow, force);
+        if (mode != Mode.RUN) return submitDryRun(ctx, player, job, mode);
 
-        ctx.getSource().sendFeedback(() -> Text.literal("VoxelShape Cylinder: " + r.action().changed()), false);
-        return Command.SINGLE_SUCCESS;
+
+        return submit(ctx, player, job,
+                r -> ctx.getSource().sendFeedback(() -> Text.literal("VoxelShape Cylinder: " + r.action().changed()), false));
     }
 
-    private static int runShapePyramid(com.mojang.brigadier.context.CommandContext<ServerCommandSource> ctx,
+    private static int runShapePyramid(com.mojang.brigadier.context.CommandContext<ServerCommandSource> ctx, Mode mode,
                                        boolean hollow, boolean force) {
         ServerPlayerEntity player = CommandUtil.player(ctx.getSource());
         if (player == null) return 0;
@@ -483,14 +572,190 @@ public final class VoxelCommands {
         int height = IntegerArgumentType.getInteger(ctx, "height");
         Block material = CommandUtil.getBlock(ctx, "material");
 
-        Result r = OPS.shapePyramid(player, base, height, material, hollow, force);
+        if (!withinLimits(ctx.getSource(), square(base) * height, base, height)) return 0;
+
+        EditJob job = ops(mode).shapePyramid(player, base, height, material, hollow, force);
+        if (mode != Mode.RUN) return submitDryRun(ctx, player, job, mode);
+
+
+        return submit(ctx, player, job,
+                r -> ctx.getSource().sendFeedback(() -> Text.literal("VoxelShape Pyramid: " + r.action().changed()), false));
+    }
+
+    /**
+     * Hands the job to {@link EditJobService}; history and feedback follow once the job has finished.
+     */
+    private static int submit(com.mojang.brigadier.context.CommandContext<ServerCommandSource> ctx,
+                              ServerPlayerEntity player, EditJob job, Consumer<Result> feedback) {
+        boolean started = EditJobService.submit(player, job, r -> {
+            if (!r.action().snapshots().isEmpty()) {
+                HISTORY.pushUndo(player.getUuid(), r.action());
+                HISTORY.clearRedo(player.getUuid());
+            }
+            // job finished after its player left: keep it in the journal, not on the heap
+            if (player.isDisconnected()) HistoryService.release(player.getUuid());
+            feedback.accept(r);
+        });
+
+        if (!started) {
+            ctx.getSource().sendError(Text.literal("VoxelCleaner: es läuft bereits ein Auftrag (/vc cancel)"));
+            return 0;
+        }
+        // the edit confirms what a ghost preview showed; the player sees the real blocks from now on
+        GhostPreview.revert(player);
+        return Command.SINGLE_SUCCESS;
+    }
+
+    /**
+     * Runs a dry-run or ghost job (planning only, nothing written or recorded) and reports what the edit would
+     * do; a ghost job has by then also shown the result to the player.
+     */
+    private static int submitDryRun(com.mojang.brigadier.context.CommandContext<ServerCommandSource> ctx,
+                                    ServerPlayerEntity player, EditJob job, Mode mode) {
+        String label = job.label();
+        boolean started = EditJobService.submit(player, job, r -> {
+            DryRun d = r.dryRun();
+            if (d == null) {
+                ctx.getSource().sendFeedback(() -> Text.literal(label + ": nichts zu tun"), false);
+                return;
+            }
+            ctx.getSource().sendFeedback(() -> Text.literal(label + ": " + d.changed() + " Blöcke würden geändert"), false);
+            ctx.getSource().sendFeedback(() -> Text.literal("  übersprungen: " + d.skippedProtected() + " geschützt, "
+                    + d.skippedBedrock() + " Bedrock"), false);
+            if (mode == Mode.GHOST) {
+                ctx.getSource().sendFeedback(() -> Text.literal("  Vorschau für " + VoxelConfig.get().ghostPreviewTicks() / 20
+                        + " s, verschwindet beim nächsten Auftrag"), false);
+                return;
+            }
+            ctx.getSource().sendFeedback(() -> Text.literal("  Chunks: " + d.chunks()
+                    + ", History: ~" + formatBytes(d.snapshotBytes())
+                    + ", Dauer: ~" + d.applyTicks() + " Ticks (" + String.format(Locale.ROOT, "%.1f", d.applyTicks() / 20.0) + " s)"), false);
+        });
+
+        if (!started) {
+            ctx.getSource().sendError(Text.literal("VoxelCleaner: es läuft bereits ein Auftrag (/vc cancel)"));
+            return 0;
+        }
+        return Command.SINGLE_SUCCESS;
+    }
+
+    /**
+     * Checks a selection against the limits of the source's permission level and reports why it is refused.
+     *
+     * @param volume volume of the selection's box
+     * @param sizes  the size arguments (width, height, radius, ...)
+     */
+    private static boolean withinLimits(ServerCommandSource src, long volume, int... sizes) {
+        VoxelConfig.Limit limit = VoxelConfig.get().limitFor(CommandUtil.permissionLevel(src));
+        if (limit == null) {
+            src.sendError(Text.literal("VoxelCleaner: keine Berechtigung für Bearbeitungen"));
+            return false;
+        }
+        for (int size : sizes) {
+            if (size > limit.maxSize()) {
+                src.sendError(Text.literal("VoxelCleaner: höchstens " + limit.maxSize() + " Blöcke pro Maß erlaubt"));
+                return false;
+            }
+        }
+        if (!limit.allows(volume)) {
+            src.sendError(Text.literal("VoxelCleaner: Auswahl zu groß (" + volume + " Blöcke, erlaubt sind " + limit.maxVolume() + ")"));
+            return false;
+        }
+        return true;
+    }
+
+    private static long square(long n) {
+        return n * n;
+    }
+
+    private static long cube(long n) {
+        return n * n * n;
+    }
+
+    private static VoxelOperations ops(Mode mode) {
+        return switch (mode) {
+            case RUN -> OPS;
+            case DRY_RUN -> DRY;
+            case GHOST -> GHOST;
+        };
+    }
+
+    private static String formatBytes(long bytes) {
+        if (bytes < 1024) return bytes + " B";
+        if (bytes < 1024 * 1024) return (bytes + 512) / 1024 + " KiB";
+        return String.format(Locale.ROOT, "%.1f MiB", bytes / (1024.0 * 1024.0));
+    }
+
+    private static int cancel(com.mojang.brigadier.context.CommandContext<ServerCommandSource> ctx) {
+        ServerPlayerEntity player = CommandUtil.player(ctx.getSource());
+        if (player == null) return 0;
+
+        if (!EditJobService.cancel(player.getUuid())) {
+            ctx.getSource().sendError(Text.literal("VoxelCleaner: kein laufender Auftrag"));
+            return 0;
+        }
+
+        ctx.getSource().sendFeedback(() -> Text.literal("VoxelCleaner: Auftrag abgebrochen"), false);
+        return Command.SINGLE_SUCCESS;
+    }
 
-        if (!r.action().snapshots().isEmpty()) {
-            HISTORY.pushUndo(player.getUuid(), r.action());
-            HISTORY.clearRedo(player.getUuid());
+    private static int reload(com.mojang.brigadier.context.CommandContext<ServerCommandSource> ctx) {
+        VoxelConfig.Values values;
+        try {
+            values = VoxelConfig.reload();
+        } catch (Exception e) {
+            ctx.getSource().sendError(Text.literal("VoxelCleaner: Konfiguration fehlerhaft, die bisherigen Werte bleiben aktiv: "
+                    + e.getMessage()));
+            return 0;
         }
+        // the protection table is compiled from the config
+        ProtectionRules.compile();
 
-        ctx.getSource().sendFeedback(() -> Text.literal("VoxelShape Pyramid: " + r.action().changed()), false);
+        ctx.getSource().sendFeedback(() -> Text.literal("VoxelCleaner: Konfiguration neu geladen ("
+                + values.limits().size() + " Limit-Stufen, " + values.jobBlocksPerTick() + " Blöcke/Tick)"), true);
+        return Command.SINGLE_SUCCESS;
+    }
+
+    private static int regionAdd(com.mojang.brigadier.context.CommandContext<ServerCommandSource> ctx, UUID owner) {
+        String name = StringArgumentType.getString(ctx, "name");
+        BlockBox box = BlockBox.create(BlockPosArgumentType.getBlockPos(ctx, "from"), BlockPosArgumentType.getBlockPos(ctx, "to"));
+        String dim = ctx.getSource().getWorld().getRegistryKey().getValue().toString();
+
+        if (!ProtectedRegions.add(new ProtectedRegions.Region(name, dim, box, owner))) {
+            ctx.getSource().sendError(Text.literal("VoxelCleaner: Bereich '" + name + "' existiert bereits"));
+            return 0;
+        }
+
+        ctx.getSource().sendFeedback(() -> Text.literal("VoxelCleaner: Bereich '" + name + "' geschützt ("
+                + box.getBlockCountX() + "x" + box.getBlockCountY() + "x" + box.getBlockCountZ() + ")"), true);
+        return Command.SINGLE_SUCCESS;
+    }
+
+    private static int regionRemove(com.mojang.brigadier.context.CommandContext<ServerCommandSource> ctx) {
+        String name = StringArgumentType.getString(ctx, "name");
+        if (!ProtectedRegions.remove(name)) {
+            ctx.getSource().sendError(Text.literal("VoxelCleaner: kein Bereich '" + name + "'"));
+            return 0;
+        }
+
+        ctx.getSource().sendFeedback(() -> Text.literal("VoxelCleaner: Bereich '" + name + "' entfernt"), true);
+        return Command.SINGLE_SUCCESS;
+    }
+
+    private static int regionList(com.mojang.brigadier.context.CommandContext<ServerCommandSource> ctx) {
+        if (ProtectedRegions.all().isEmpty()) {
+            ctx.getSource().sendFeedback(() -> Text.literal("VoxelCleaner: keine geschützten Bereiche"), false);
+            return Command.SINGLE_SUCCESS;
+        }
+
+        for (ProtectedRegions.Region r : ProtectedRegions.all()) {
+            BlockBox b = r.box();
+            String line = r.name() + "  " + r.dimension()
+                    + "  " + b.getMinX() + " " + b.getMinY() + " " + b.getMinZ()
+                    + " -> " + b.getMaxX() + " " + b.getMaxY() + " " + b.getMaxZ()
+                    + (r.owner() == null ? "" : "  Besitzer: " + r.owner());
+            ctx.getSource().sendFeedback(() -> Text.literal(line), false);
+        }
         return Command.SINGLE_SUCCESS;
     }
 
@@ -502,6 +767,8 @@ public final class VoxelCommands {
         int h = IntegerArgumentType.getInteger(ctx, "height");
         int d = IntegerArgumentType.getInteger(ctx, "depth");
 
+        if (!withinLimits(ctx.getSource(), (long) w * h * d, w, h, d)) return 0;
+
         PreviewService.previewBox(player, w, h, d, addShellPadding);
         ctx.getSource().sendFeedback(() -> Text.literal("VoxelPreview: OK"), false);
         return Command.SINGLE_SUCCESS;
@@ -512,6 +779,7 @@ public final class VoxelCommands {
         if (player == null) return 0;
 
         int radius = IntegerArgumentType.getInteger(ctx, "radius");
+        if (!withinLimits(ctx.getSource(), cube(2L * radius + 1), radius)) return 0;
         PreviewService.previewSphere(player, radius);
         ctx.getSource().sendFeedback(() -> Text.literal("VoxelPreview: OK"), false);
         return Command.SINGLE_SUCCESS;
@@ -523,6 +791,7 @@ public final class VoxelCommands {
 
         int radius = IntegerArgumentType.getInteger(ctx, "radius");
         int height = IntegerArgumentType.getInteger(ctx, "height");
+        if (!withinLimits(ctx.getSource(), square(2L * radius + 1) * height, radius, height)) return 0;
         PreviewService.previewCylinder(player, radius, height);
         ctx.getSource().sendFeedback(() -> Text.literal("VoxelPreview: OK"), false);
         return Command.SINGLE_SUCCESS;
@@ -534,51 +803,39 @@ public final class VoxelCommands {
 
         int base = IntegerArgumentType.getInteger(ctx, "base");
         int height = IntegerArgumentType.getInteger(ctx, "height");
+        if (!withinLimits(ctx.getSource(), square(base) * height, base, height)) return 0;
         PreviewService.previewPyramid(player, base, height);
         ctx.getSource().sendFeedback(() -> Text.literal("VoxelPreview: OK"), false);
         return Command.SINGLE_SUCCESS;
     }
 
 
-    private static int undo(com.mojang.brigadier.context.CommandContext<ServerCommandSource> ctx, int count) {
+    private static int step(com.mojang.brigadier.context.CommandContext<ServerCommandSource> ctx,
+                            boolean undo, int count, ConflictMode mode) {
         ServerPlayerEntity player = CommandUtil.player(ctx.getSource());
         if (player == null) return 0;
 
-        int restoredTotal = 0;
-        for (int i = 0; i < count; i++) {
-            int restored = HISTORY.undoOne(player);
-            if (restored == 0) break;
-            restoredTotal += restored;
-        }
-
-        if (restoredTotal == 0) {
-            ctx.getSource().sendError(Text.literal("VoxelCleaner: nichts zum Undo"));
+        if (EditJobService.isRunning(player.getUuid())) {
+            ctx.getSource().sendError(Text.literal("VoxelCleaner: erst den laufenden Auftrag abwarten oder /vc cancel"));
             return 0;
         }
 
-        int finalRestoredTotal = restoredTotal;
-        ctx.getSource().sendFeedback(() -> Text.literal("VoxelCleaner Undo: " + finalRestoredTotal), false);
-        return Command.SINGLE_SUCCESS;
-    }
+        String name = undo ? "Undo" : "Redo";
+        StepResult result = undo ? HISTORY.undo(player, count, mode) : HISTORY.redo(player, count, mode);
 
-    private static int redo(com.mojang.brigadier.context.CommandContext<ServerCommandSource> ctx, int count) {
-        ServerPlayerEntity player = CommandUtil.player(ctx.getSource());
-        if (player == null) return 0;
-
-        int appliedTotal = 0;
-        for (int i = 0; i < count; i++) {
-            int applied = HISTORY.redoOne(player);
-            if (applied == 0) break;
-            appliedTotal += applied;
+        if (result.aborted()) {
+            ctx.getSource().sendError(Text.literal("VoxelCleaner: " + result.conflicts()
+                    + " Blöcke wurden seit der Aktion verändert; " + name + " abgebrochen ("
+                    + (undo ? "/vc undo" : "/vc redo") + " [count] skip oder force)"));
+            return 0;
         }
-
-        if (appliedTotal == 0) {
-            ctx.getSource().sendError(Text.literal("VoxelCleaner: nichts zum Redo"));
+        if (result.changed() == 0 && result.conflicts() == 0) {
+            ctx.getSource().sendError(Text.literal("VoxelCleaner: nichts zum " + name));
             return 0;
         }
 
-        int finalAppliedTotal = appliedTotal;
-        ctx.getSource().sendFeedback(() -> Text.literal("VoxelCleaner Redo: " + finalAppliedTotal), false);
+        String skipped = result.conflicts() > 0 ? " (" + result.conflicts() + " veränderte Blöcke ausgelassen)" : "";
+        ctx.getSource().sendFeedback(() -> Text.literal("VoxelCleaner " + name + ": " + result.changed() + skipped), false);
         return Command.SINGLE_SUCCESS;
     }
 
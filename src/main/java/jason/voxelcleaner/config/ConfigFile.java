@@ -0,0 +1,184 @@
+/**
+ * JSON form of {@link VoxelConfig.Values}. Values are grouped by topic; a missing key keeps its default, so a
+ * file written by an older version stays valid. Wrong types and out-of-range numbers are rejected as a whole.
+ */
+
+package jason.voxelcleaner.config;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+final class ConfigFile {
+
+    private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
+
+    private ConfigFile() {}
+
+    static VoxelConfig.Values readOrCreate(Path file) throws IOException {
+        if (!Files.exists(file)) {
+            write(file, VoxelConfig.Values.DEFAULTS);
+            return VoxelConfig.Values.DEFAULTS;
+        }
+
+        JsonObject root;
+        try (Reader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            root = JsonParser.parseReader(in).getAsJsonObject();
+        } catch (IllegalStateException e) {
+            throw new JsonParseException("kein JSON-Objekt");
+        }
+        return read(root, VoxelConfig.Values.DEFAULTS);
+    }
+
+    private static VoxelConfig.Values read(JsonObject root, VoxelConfig.Values d) {
+        JsonObject jobs = section(root, "jobs");
+        JsonObject history = section(root, "history");
+        JsonObject preview = section(root, "preview");
+        JsonObject loot = section(root, "loot");
+        JsonObject protection = section(root, "protection");
+
+        List<VoxelConfig.Limit> limits = d.limits();
+        if (root.has("limits")) {
+            limits = new ArrayList<>();
+            for (JsonElement e : array(root, "limits")) {
+                JsonObject o = e.getAsJsonObject();
+                limits.add(new VoxelConfig.Limit(
+                        range(o, "permissionLevel", 0, 0, 4),
+                        range(o, "maxSize", 64, 1, VoxelConfig.MAX_SIZE_ARGUMENT),
+                        range(o, "maxVolume", 0L, 0L, Long.MAX_VALUE)));
+            }
+        }
+
+        return new VoxelConfig.Values(
+                limits,
+                range(jobs, "blocksPerTick", d.jobBlocksPerTick(), 1, Integer.MAX_VALUE),
+                range(jobs, "timeSliceMs", d.jobTimeSliceMs(), 1L, 1000L),
+                range(jobs, "planParallelMinVolume", d.planParallelMinVolume(), 0, Integer.MAX_VALUE),
+                bool(jobs, "bulkWrites", d.bulkWrites()),
+
+                range(history, "maxActionsPerPlayer", d.maxActionsPerPlayer(), 1, 1000),
+                bool(history, "persist", d.persistHistory()),
+                range(history, "persistMaxActionsPerPlayer", d.persistMaxActionsPerPlayer(), 0, 1000),
+                range(history, "memoryMb", d.historyMemoryMb(), 0, 1 << 20),
+                range(history, "sectionSnapshotMinChanges", d.sectionSnapshotMinChanges(), 1, 4096),
+
+                range(preview, "particlesPerTick", d.previewParticlesPerTick(), 1, Integer.MAX_VALUE),
+                range(preview, "fullDetailMaxPoints", d.previewFullDetailMaxPoints(), 0, Integer.MAX_VALUE),
+                range(preview, "ghostTicks", d.ghostPreviewTicks(), 1, Integer.MAX_VALUE),
+
+                bool(loot, "coalesceDrops", d.coalesceDrops()),
+                bool(loot, "breakEffects", d.breakEffects()),
+
+                strings(protection, "blocks", d.protectedBlocks()),
+                strings(protection, "tags", d.protectedTags()),
+                bool(protection, "blockEntities", d.protectBlockEntities()));
+    }
+
+    private static void write(Path file, VoxelConfig.Values v) throws IOException {
+        JsonObject root = new JsonObject();
+
+        JsonArray limits = new JsonArray();
+        for (VoxelConfig.Limit l : v.limits()) {
+            JsonObject o = new JsonObject();
+            o.addProperty("permissionLevel", l.permissionLevel());
+            o.addProperty("maxSize", l.maxSize());
+            o.addProperty("maxVolume", l.maxVolume());
+            limits.add(o);
+        }
+        root.add("limits", limits);
+
+        JsonObject jobs = new JsonObject();
+        jobs.addProperty("blocksPerTick", v.jobBlocksPerTick());
+        jobs.addProperty("timeSliceMs", v.jobTimeSliceMs());
+        jobs.addProperty("planParallelMinVolume", v.planParallelMinVolume());
+        jobs.addProperty("bulkWrites", v.bulkWrites());
+        root.add("jobs", jobs);
+
+        JsonObject history = new JsonObject();
+        history.addProperty("maxActionsPerPlayer", v.maxActionsPerPlayer());
+        history.addProperty("persist", v.persistHistory());
+        history.addProperty("persistMaxActionsPerPlayer", v.persistMaxActionsPerPlayer());
+        history.addProperty("memoryMb", v.historyMemoryMb());
+        history.addProperty("sectionSnapshotMinChanges", v.sectionSnapshotMinChanges());
+        root.add("history", history);
+
+        JsonObject preview = new JsonObject();
+        preview.addProperty("particlesPerTick", v.previewParticlesPerTick());
+        preview.addProperty("fullDetailMaxPoints", v.previewFullDetailMaxPoints());
+        preview.addProperty("ghostTicks", v.ghostPreviewTicks());
+        root.add("preview", preview);
+
+        JsonObject loot = new JsonObject();
+        loot.addProperty("coalesceDrops", v.coalesceDrops());
+        loot.addProperty("breakEffects", v.breakEffects());
+        root.add("loot", loot);
+
+        JsonObject protection = new JsonObject();
+        protection.add("blocks", GSON.toJsonTree(v.protectedBlocks()));
+        protection.add("tags", GSON.toJsonTree(v.protectedTags()));
+        protection.addProperty("blockEntities", v.protectBlockEntities());
+        root.add("protection", protection);
+
+        Files.createDirectories(file.getParent());
+        try (Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            GSON.toJson(root, out);
+        }
+    }
+
+    // ---------------- Typed getters ----------------
+
+    private static JsonObject section(JsonObject root, String key) {
+        if (!root.has(key)) return new JsonObject();
+        if (!root.get(key).isJsonObject()) throw new JsonParseException(key + ": Objekt erwartet");
+        return root.getAsJsonObject(key);
+    }
+
+    private static JsonArray array(JsonObject o, String key) {
+        if (!o.get(key).isJsonArray()) throw new JsonParseException(key + ": Liste erwartet");
+        return o.getAsJsonArray(key);
+    }
+
+    private static int range(JsonObject o, String key, int def, int min, int max) {
+        return (int) range(o, key, (long) def, min, max);
+    }
+
+    private static long range(JsonObject o, String key, long def, long min, long max) {
+        if (!o.has(key)) return def;
+        JsonElement e = o.get(key);
+        if (!e.isJsonPrimitive() || !e.getAsJsonPrimitive().isNumber()) throw new JsonParseException(key + ": Zahl erwartet");
+
+        long value = e.getAsLong();
+        if (value < min || value > max) throw new JsonParseException(key + ": " + value + " liegt nicht in " + min + ".." + max);
+        return value;
+    }
+
+    private static boolean bool(JsonObject o, String key, boolean def) {
+        if (!o.has(key)) return def;
+        JsonElement e = o.get(key);
+        if (!e.isJsonPrimitive() || !e.getAsJsonPrimitive().isBoolean()) throw new JsonParseException(key + ": true/false erwartet");
+        return e.getAsBoolean();
+    }
+
+    private static List<String> strings(JsonObject o, String key, List<String> def) {
+        if (!o.has(key)) return def;
+        List<String> out = new ArrayList<>();
+        for (JsonElement e : array(o, key)) {
+            if (!e.isJsonPrimitive() || !e.getAsJsonPrimitive().isString()) throw new JsonParseException(key + ": Text erwartet");
+            out.add(e.getAsString());
+        }
+        return out;
+    }
+}
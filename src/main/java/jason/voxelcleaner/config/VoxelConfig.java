@@ -1,26 +1,143 @@
 /**
- * Centralizes configuration constants and limits used across the mod.
+ * Centralizes configuration and limits used across the mod. Tunable values come from
+ * {@code config/voxelcleaner/config.json} and are published as one immutable {@link Values} snapshot that
+ * {@code /vc reload} swaps atomically; hot paths read {@link #get()} once and keep using that snapshot. Only
+ * values fixed at startup or by the command tree stay constants here.
  */
 
 package jason.voxelcleaner.config;
 
+import net.fabricmc.loader.api.FabricLoader;
+
+import java.nio.file.Path;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
+import java.util.Comparator;
+import java.util.List;
 
 public final class VoxelConfig {
     private VoxelConfig() {}
 
-    public static final int MAX_W = 64;
-    public static final int MAX_H = 64;
-    public static final int MAX_D = 64;
-
-    public static final int MAX_ACTIONS_PER_PLAYER = 10;
+    // Largest size argument the commands accept; the actual limit is per permission level (Values.limits)
+    public static final int MAX_SIZE_ARGUMENT = 256;
     public static final int MAX_HISTORY_LINES = 20;
 
-    public static final boolean PERSIST_HISTORY = true;
-
-    public static final int PERSIST_MAX_ACTIONS_PER_PLAYER = MAX_ACTIONS_PER_PLAYER;
+    // Edit planning threads; the pool is created once, so changing this needs a restart
+    public static final int PLAN_THREADS = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
 
     public static final DateTimeFormatter TS_FMT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")
             .withZone(ZoneId.systemDefault());
+
+    /**
+     * Size limits for players with at least {@code permissionLevel}.
+     *
+     * @param maxSize   largest width, height, depth, radius or base
+     * @param maxVolume largest box volume of a selection, 0 for no limit
+     */
+    public record Limit(int permissionLevel, int maxSize, long maxVolume) {
+        public boolean allows(long volume) {
+            return maxVolume <= 0 || volume <= maxVolume;
+        }
+    }
+
+    /** One consistent set of tunable values; never modified, a reload publishes a new instance. */
+    public record Values(
+            // Size limits, one entry per permission level; the highest level a player has applies
+            List<Limit> limits,
+
+            // Edit jobs: budget shared by all running jobs per server tick
+            int jobBlocksPerTick,
+            long jobTimeSliceMs,
+            // Box volume from which planning runs in parallel
+            int planParallelMinVolume,
+            // Opt-in: write changes straight into chunk sections (no neighbor updates) instead of setBlockState(..., 3)
+            boolean bulkWrites,
+
+            int maxActionsPerPlayer,
+            boolean persistHistory,
+            int persistMaxActionsPerPlayer,
+            // Server-wide heap budget for undo/redo snapshots; older payloads beyond it are spilled to disk
+            int historyMemoryMb,
+            // Sections with at least this many changed blocks are recorded as one section snapshot (of 4096 blocks)
+            int sectionSnapshotMinChanges,
+
+            // Particle previews (vanilla clients): particles per tick shared by all active previews, and the point count above which only edges are shown
+            int previewParticlesPerTick,
+            int previewFullDetailMaxPoints,
+            // Ghost previews (/vc ghost): how long the planned blocks stay visible to the player
+            int ghostPreviewTicks,
+
+            // Survival drops without loot: merge the drops of a job and spawn them as full stacks at a few points
+            boolean coalesceDrops,
+            // Vanilla break particles and sounds for every block a coalescing job breaks
+            boolean breakEffects,
+
+            // Protection: edits skip these blocks unless forced; block IDs, block tags (without '#') and block-entity blocks
+            List<String> protectedBlocks,
+            List<String> protectedTags,
+            boolean protectBlockEntities
+    ) {
+        public static final Values DEFAULTS = new Values(
+                List.of(new Limit(0, 64, 0)),
+                20_000, 10, 32_768, false,
+                10, true, 10, 256, 512,
+                2048, 8192, 20 * 30,
+                true, false,
+                List.of("minecraft:spawner"), List.of(), true);
+
+        public Values {
+            // sorted by level, so limitFor can stop at the first level the player lacks
+            limits = limits.stream().sorted(Comparator.comparingInt(Limit::permissionLevel)).toList();
+            protectedBlocks = List.copyOf(protectedBlocks);
+            protectedTags = List.copyOf(protectedTags);
+        }
+
+        /** Limits for a player with {@code permissionLevel}, or null if no entry covers that level. */
+        public Limit limitFor(int permissionLevel) {
+            Limit best = null;
+            for (Limit l : limits) {
+                if (l.permissionLevel() > permissionLevel) break;
+                best = l;
+            }
+            return best;
+        }
+
+        public long historyMemoryBytes() {
+            return historyMemoryMb * 1024L * 1024L;
+        }
+    }
+
+    private static volatile Values current = Values.DEFAULTS;
+
+    /** The current snapshot; read it once per operation, a reload may replace it at any time. */
+    public static Values get() {
+        return current;
+    }
+
+    /** Loads the config file at startup, writing it with the defaults if it does not exist yet. */
+    public static void load() {
+        try {
+            current = ConfigFile.readOrCreate(file());
+        } catch (Exception ignored) {
+            // broken file: keep the defaults, /vc reload reports what is wrong
+        }
+    }
+
+    /**
+     * Reads the config file again and publishes it.
+     *
+     * @throws Exception if the file cannot be read or holds invalid values; the current values stay active
+     */
+    public static Values reload() throws Exception {
+        Values values = ConfigFile.readOrCreate(file());
+        current = values;
+        return values;
+    }
+
+    private static Path file() {
+        // config/voxelcleaner/config.json
+        return FabricLoader.getInstance().getConfigDir()
+                .resolve("voxelcleaner")
+                .resolve("config.json");
+    }
 }
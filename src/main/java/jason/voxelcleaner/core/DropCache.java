@@ -0,0 +1,191 @@
+/**
+ * Remembers the drops of block states whose loot table turned out to be deterministic, so a cleanup of mostly
+ * stone and dirt evaluates each table once instead of once per block. A table counts as deterministic when its
+ * evaluation consumed no randomness and none of its conditions or functions reads the position or the breaking
+ * entity (e.g. {@code location_check}, {@code entity_properties}); states with a block entity are never cached.
+ * Entries hold for one tool (item and components), one player and one data pack load, and are dropped as soon as
+ * any of them changes.
+ */
+
+package jason.voxelcleaner.core;
+
+import jason.voxelcleaner.mixin.LootTableAccessor;
+
+import it.unimi.dsi.fastutil.objects.Reference2ObjectOpenHashMap;
+
+import net.minecraft.block.Block;
+import net.minecraft.block.BlockState;
+import net.minecraft.block.entity.BlockEntity;
+import net.minecraft.item.ItemStack;
+import net.minecraft.loot.LootTable;
+import net.minecraft.loot.LootTableReporter;
+import net.minecraft.loot.context.LootContextParameters;
+import net.minecraft.loot.context.LootContextTypes;
+import net.minecraft.loot.context.LootWorldContext;
+import net.minecraft.registry.RegistryEntryLookup;
+import net.minecraft.registry.RegistryKey;
+import net.minecraft.server.network.ServerPlayerEntity;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.ErrorReporter;
+import net.minecraft.util.context.ContextType;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.Vec3d;
+import net.minecraft.util.math.random.Random;
+import net.minecraft.util.math.random.RandomSplitter;
+
+import java.util.List;
+import java.util.Optional;
+
+final class DropCache {
+
+    /** Marks states whose drops depend on randomness, the position or the breaking entity. */
+    private static final List<ItemStack> UNCACHEABLE = List.of(ItemStack.EMPTY);
+
+    /**
+     * The inputs a cache entry is keyed by (state, tool) plus those that are never set when breaking a block
+     * without a block entity; a table whose parameters do not all fit in here depends on where or by whom the
+     * block is broken.
+     */
+    private static final ContextType KEYED = new ContextType.Builder()
+            .allow(LootContextParameters.BLOCK_STATE)
+            .allow(LootContextParameters.TOOL)
+            .allow(LootContextParameters.BLOCK_ENTITY)
+            .allow(LootContextParameters.EXPLOSION_RADIUS)
+            .build();
+
+    private final Reference2ObjectOpenHashMap<BlockState, List<ItemStack>> drops = new Reference2ObjectOpenHashMap<>();
+    private ItemStack tool = ItemStack.EMPTY;
+    private ServerPlayerEntity player;
+    private Object lootTables;
+
+    /**
+     * Drops of breaking {@code state} at {@code pos}; the returned list and its stacks must not be modified.
+     * Server thread only.
+     */
+    List<ItemStack> drops(ServerWorld world, ServerPlayerEntity player, BlockPos pos, BlockState state,
+                          BlockEntity be, ItemStack tool) {
+        if (be != null || state.hasBlockEntity()) return Block.getDroppedStacks(state, world, pos, be, player, tool);
+
+        validate(world, player, tool);
+        List<ItemStack> cached = drops.get(state);
+        if (cached == UNCACHEABLE) return Block.getDroppedStacks(state, world, pos, null, player, tool);
+        if (cached != null) return cached;
+
+        Optional<RegistryKey<LootTable>> key = state.getBlock().getLootTableKey();
+        if (key.isEmpty()) {
+            drops.put(state, List.of());
+            return List.of();
+        }
+
+        LootTable table = world.getServer().getReloadableRegistries().getLootTable(key.get());
+        if (!keyedOnly(world, table)) {
+            drops.put(state, UNCACHEABLE);
+            return Block.getDroppedStacks(state, world, pos, null, player, tool);
+        }
+
+        LootWorldContext params = new LootWorldContext.Builder(world)
+                .add(LootContextParameters.ORIGIN, Vec3d.ofCenter(pos))
+                .add(LootContextParameters.TOOL, tool)
+                .addOptional(LootContextParameters.THIS_ENTITY, player)
+                .add(LootContextParameters.BLOCK_STATE, state)
+                .build(LootContextTypes.BLOCK);
+
+        // a real evaluation with the random the table's sequence would give Block.getDroppedStacks (the world's
+        // random for tables without one); the probe only tells whether any was needed
+        Random real = ((LootTableAccessor) (Object) table).voxelcleaner$getRandomSequenceId()
+                .map(world::getOrCreateRandom)
+                .orElseGet(world::getRandom);
+        ProbeRandom random = new ProbeRandom(real);
+        List<ItemStack> result = table.generateLoot(params, random);
+        drops.put(state, random.used ? UNCACHEABLE : List.copyOf(result));
+        return result;
+    }
+
+    /** Whether {@code table} only reads inputs the cache key covers; uses the vanilla loot table validation. */
+    private static boolean keyedOnly(ServerWorld world, LootTable table) {
+        ErrorReporter.Impl errors = new ErrorReporter.Impl();
+        RegistryEntryLookup.RegistryLookup lookup = world.getServer().getReloadableRegistries().createRegistryLookup();
+        table.validate(new LootTableReporter(errors, KEYED, lookup));
+        return errors.isEmpty();
+    }
+
+    private void validate(ServerWorld world, ServerPlayerEntity player, ItemStack tool) {
+        Object tables = world.getServer().getReloadableRegistries();
+        if (tables == lootTables && player == this.player && ItemStack.areItemsAndComponentsEqual(tool, this.tool)) return;
+
+        drops.clear();
+        lootTables = tables;
+        this.player = player;
+        this.tool = tool.copy();
+    }
+
+    /** Forwards to another random and remembers whether anything was drawn from it. */
+    private static final class ProbeRandom implements Random {
+        private final Random delegate;
+        boolean used;
+
+        ProbeRandom(Random delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public Random split() {
+            used = true;
+            return delegate.split();
+        }
+
+        @Override
+        public RandomSplitter nextSplitter() {
+            used = true;
+            return delegate.nextSplitter();
+        }
+
+        @Override
+        public void setSeed(long seed) {
+            used = true;
+            delegate.setSeed(seed);
+        }
+
+        @Override
+        public int nextInt() {
+            used = true;
+            return delegate.nextInt();
+        }
+
+        @Override
+        public int nextInt(int bound) {
+            used = true;
+            return delegate.nextInt(bound);
+        }
+
+        @Override
+        public long nextLong() {
+            used = true;
+            return delegate.nextLong();
+        }
+
+        @Override
+        public boolean nextBoolean() {
+            used = true;
+            return delegate.nextBoolean();
+        }
+
+        @Override
+        public float nextFloat() {
+            used = true;
+            return delegate.nextFloat();
+        }
+
+        @Override
+        public double nextDouble() {
+            used = true;
+            return delegate.nextDouble();
+        }
+
+        @Override
+        public double nextGaussian() {
+            used = true;
+            return delegate.nextGaussian();
+        }
+    }
+}
@@ -0,0 +1,74 @@
+/**
+ * Plans an operation like the real job does, but instead of writing it records the changes into a throwaway
+ * {@link SnapshotBuffer} to measure the history entry, and counts what the protection rules kept. Planning
+ * runs off the server thread and the measuring pass shares the normal per-tick block budget.
+ */
+
+package jason.voxelcleaner.core;
+
+import jason.voxelcleaner.config.VoxelConfig;
+import jason.voxelcleaner.model.SnapshotBuffer;
+import jason.voxelcleaner.model.VoxelModels.DryRun;
+import jason.voxelcleaner.model.VoxelModels.Result;
+
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+
+import net.minecraft.block.BlockState;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
+
+import java.util.concurrent.atomic.LongAdder;
+
+final class DryRunJob extends PlannedEditJob {
+
+    private final Skips skips;
+    private final SnapshotBuffer snaps = new SnapshotBuffer();
+    private final LongOpenHashSet chunks = new LongOpenHashSet();
+
+    DryRunJob(String label, ServerWorld world, RegionKernel region, EditPlan.Decision wanted,
+              boolean force, boolean keepBedrock, ProtectedRegions.SectionAccess access) {
+        this(label, world, region, wanted, force, keepBedrock, access, new Skips());
+    }
+
+    private DryRunJob(String label, ServerWorld world, RegionKernel region, EditPlan.Decision wanted,
+                      boolean force, boolean keepBedrock, ProtectedRegions.SectionAccess access, Skips skips) {
+        super(label + " (Dry-Run)", world, region, ProtectionRules.guard(wanted, force, keepBedrock, skips), access);
+        this.skips = skips;
+    }
+
+    @Override
+    protected void apply(BlockPos.Mutable pos, BlockState current, BlockState target) {
+        snaps.add(pos, current, target);
+        chunks.add(ChunkPos.toLong(pos.getX() >> 4, pos.getZ() >> 4));
+    }
+
+    @Override
+    protected Result complete() {
+        snaps.groupSections(VoxelConfig.get().sectionSnapshotMinChanges()).trim();
+
+        long changed = snaps.changeCount();
+        int perTick = VoxelConfig.get().jobBlocksPerTick();
+        long ticks = (changed + perTick - 1) / perTick;
+
+        DryRun report = new DryRun(changed, skips.protectedBlocks.sum(), skips.bedrock.sum(),
+                chunks.size(), snaps.estimatedBytes(), Math.max(1, ticks));
+        return new Result(null, report);
+    }
+
+    /** Counts what the protection rules kept; shared with {@link GhostJob}. */
+    static final class Skips implements ProtectionRules.SkipCounter {
+        final LongAdder protectedBlocks = new LongAdder();
+        final LongAdder bedrock = new LongAdder();
+
+        @Override
+        public void protectedBlocks(long positions) {
+            protectedBlocks.add(positions);
+        }
+
+        @Override
+        public void bedrock(long positions) {
+            bedrock.add(positions);
+        }
+    }
+}
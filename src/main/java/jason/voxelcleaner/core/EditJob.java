@@ -0,0 +1,101 @@
+/**
+ * Resumable world edit that is advanced in small slices from the server tick.
+ */
+
+package jason.voxelcleaner.core;
+
+import jason.voxelcleaner.model.VoxelModels.Result;
+
+public abstract class EditJob {
+
+    private final String label;
+    private long total;
+    private long cursor;
+    private boolean cancelled;
+
+    protected EditJob(String label, long total) {
+        this.label = label;
+        this.total = Math.max(0, total);
+    }
+
+    /** Job without any voxels; {@link #finish()} returns the given result right away. */
+    public static EditJob done(String label, Result result) {
+        return new EditJob(label, 0) {
+            @Override
+            protected void visit(long index) {}
+
+            @Override
+            protected Result finish() {
+                return result;
+            }
+        };
+    }
+
+    public final String label() {
+        return label;
+    }
+
+    public final long total() {
+        return total;
+    }
+
+    public final long processed() {
+        return cursor;
+    }
+
+    public final float progress() {
+        return total == 0 ? 1.0f : (float) ((double) cursor / (double) total);
+    }
+
+    public final boolean isDone() {
+        return cancelled || cursor >= total;
+    }
+
+    public final boolean isCancelled() {
+        return cancelled;
+    }
+
+    /** Stops the job after the current slice; changes made so far are still recorded by {@link #finish()}. */
+    public final void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * Processes voxels until either {@code maxVoxels} were visited or {@code deadlineNanos} has passed.
+     * The clock is only sampled every few voxels to keep the check out of the hot path.
+     */
+    final int step(int maxVoxels, long deadlineNanos) {
+        if (!isDone() && !prepare()) return 0;
+
+        int n = 0;
+        while (!isDone() && n < maxVoxels) {
+            visit(cursor++);
+            n++;
+            if ((n & 63) == 0 && System.nanoTime() >= deadlineNanos) break;
+        }
+        afterSlice();
+        return n;
+    }
+
+    /**
+     * Called before every slice; returning false skips the slice, e.g. while background work the job depends on
+     * is still running.
+     */
+    protected boolean prepare() {
+        return true;
+    }
+
+    /** Replaces the number of voxels once it is known, e.g. after planning; must not be below {@link #processed()}. */
+    protected final void resize(long total) {
+        this.total = Math.max(cursor, total);
+    }
+
+    /** Called at the end of every slice, e.g. to flush buffered writes. */
+    protected void afterSlice() {}
+
+    /** Handles the voxel with the given linear index, {@code 0 <= index < total}. */
+    protected abstract void visit(long index);
+
+    /** Called once on the server thread after the last slice (or after cancellation). */
+    protected abstract Result finish();
+}
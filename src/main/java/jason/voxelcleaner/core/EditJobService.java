@@ -0,0 +1,136 @@
+/**
+ * Schedules edit jobs and advances them within a per-tick block and time budget.
+ */
+
+package jason.voxelcleaner.core;
+
+import jason.voxelcleaner.config.VoxelConfig;
+import jason.voxelcleaner.model.VoxelModels.Result;
+
+import net.minecraft.entity.boss.BossBar;
+import net.minecraft.entity.boss.ServerBossBar;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.network.ServerPlayerEntity;
+import net.minecraft.text.Text;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+public final class EditJobService {
+
+    /** Server thread only; insertion order keeps the per-tick round robin stable. */
+    private static final Map<UUID, RunningJob> ACTIVE = new LinkedHashMap<>();
+
+    private EditJobService() {}
+
+    /**
+     * Starts a job for the player. The first slice runs immediately so small edits finish in the same tick;
+     * larger ones continue from {@link #tick(MinecraftServer)} and show a boss bar.
+     *
+     * @return false if the player already has a running job
+     */
+    public static boolean submit(ServerPlayerEntity player, EditJob job, Consumer<Result> onDone) {
+        UUID id = player.getUuid();
+        if (ACTIVE.containsKey(id)) return false;
+
+        RunningJob rj = new RunningJob(id, job, onDone);
+
+        VoxelConfig.Values cfg = VoxelConfig.get();
+        long deadline = System.nanoTime() + cfg.jobTimeSliceMs() * 1_000_000L;
+        job.step(cfg.jobBlocksPerTick(), deadline);
+
+        if (job.isDone()) {
+            complete(rj);
+            return true;
+        }
+
+        rj.bar = new ServerBossBar(Text.literal(job.label()), BossBar.Color.BLUE, BossBar.Style.PROGRESS);
+        rj.bar.addPlayer(player);
+        rj.bar.setPercent(job.progress());
+        ACTIVE.put(id, rj);
+        return true;
+    }
+
+    public static boolean isRunning(UUID playerId) {
+        return ACTIVE.containsKey(playerId);
+    }
+
+    /** Cancels the player's running job; the part already applied stays in the world and in the history. */
+    public static boolean cancel(UUID playerId) {
+        RunningJob rj = ACTIVE.get(playerId);
+        if (rj == null) return false;
+        rj.job.cancel();
+        return true;
+    }
+
+    /** Muss in VoxelCleaner per ServerTickEvents registriert werden. */
+    public static void tick(MinecraftServer server) {
+        if (ACTIVE.isEmpty()) return;
+
+        long start = System.nanoTime();
+        VoxelConfig.Values cfg = VoxelConfig.get();
+        long sliceNanos = cfg.jobTimeSliceMs() * 1_000_000L;
+        int blocksLeft = cfg.jobBlocksPerTick();
+
+        List<RunningJob> finished = new ArrayList<>();
+        int jobsLeft = ACTIVE.size();
+
+        for (RunningJob rj : ACTIVE.values()) {
+            if (server.getPlayerManager().getPlayer(rj.playerId) == null) rj.job.cancel();
+
+            if (!rj.job.isDone() && blocksLeft > 0) {
+                // every remaining job gets an equal share of what is left of this tick's budget
+                long now = System.nanoTime();
+                long remainingNanos = Math.max(0, start + sliceNanos - now);
+                long deadline = now + remainingNanos / jobsLeft;
+                int share = Math.max(1, blocksLeft / jobsLeft);
+
+                blocksLeft -= rj.job.step(share, deadline);
+            }
+            jobsLeft--;
+
+            if (rj.job.isDone()) finished.add(rj);
+            else if (rj.bar != null) rj.bar.setPercent(rj.job.progress());
+        }
+
+        for (RunningJob rj : finished) {
+            ACTIVE.remove(rj.playerId);
+            complete(rj);
+        }
+    }
+
+    /** Cancels and completes every job so partial edits are still recorded before the server stops. */
+    public static void cancelAll() {
+        Iterator<RunningJob> it = ACTIVE.values().iterator();
+        while (it.hasNext()) {
+            RunningJob rj = it.next();
+            it.remove();
+            rj.job.cancel();
+            complete(rj);
+        }
+    }
+
+    private static void complete(RunningJob rj) {
+        if (rj.bar != null) rj.bar.clearPlayers();
+        Result result = rj.job.finish();
+        rj.onDone.accept(result);
+    }
+
+    private static final class RunningJob {
+        final UUID playerId;
+        final EditJob job;
+        final Consumer<Result> onDone;
+        ServerBossBar bar;
+
+        RunningJob(UUID playerId, EditJob job, Consumer<Result> onDone) {
+            this.playerId = playerId;
+            this.job = job;
+            this.onDone = onDone;
+        }
+    }
+}
@@ -0,0 +1,281 @@
+/**
+ * Read side of an edit, computed off the server thread. {@link #capture} copies the paletted block data of every
+ * relevant section a region touches (a cheap array copy on the server thread); {@link #start} then asks a
+ * {@link Decision} for each position of every section in parallel on a shared fork-join pool. The resulting
+ * change set is walked on the server thread with {@link #next()} in section order. Sections whose palette cannot
+ * hold a state the decision would change are skipped, and single-state sections can be decided in one go.
+ * Positions a {@link ProtectedRegions.SectionAccess} denies are never planned; fully denied sections not even copied.
+ */
+
+package jason.voxelcleaner.core;
+
+import jason.voxelcleaner.config.VoxelConfig;
+
+import net.minecraft.block.BlockState;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkSectionPos;
+import net.minecraft.world.chunk.ChunkSection;
+import net.minecraft.world.chunk.PalettedContainer;
+import net.minecraft.world.chunk.WorldChunk;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
+
+public final class EditPlan {
+
+    private static final ForkJoinPool POOL = new ForkJoinPool(VoxelConfig.PLAN_THREADS, pool -> {
+        ForkJoinWorkerThread t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+        t.setName("VoxelCleaner Planner " + t.getPoolIndex());
+        t.setDaemon(true);
+        return t;
+    }, null, false);
+
+    /**
+     * Decides what a single position should become. Runs on planner threads, so it may only look at its
+     * arguments and immutable captured values, never at the world.
+     */
+    @FunctionalInterface
+    public interface Decision {
+        /** @return the new state, or null (or {@code current}) to leave the position alone */
+        BlockState target(BlockState current, RegionKernel cursor);
+
+        /**
+         * {@link #target} as the planner asks it: once for each of {@code positions} positions holding
+         * {@code current} (several only for a uniform section). The planner visits every position exactly once,
+         * so this is where a decision may count what it leaves alone; re-decisions go through {@link #target}.
+         */
+        default BlockState decide(BlockState current, RegionKernel cursor, long positions) {
+            return target(current, cursor);
+        }
+
+        /**
+         * States the decision may change inside the section {@code section} covers, or null if that can be any
+         * state. A section whose palette holds none of them is skipped without visiting its positions.
+         */
+        default Predicate<BlockState> candidates(RegionKernel section) {
+            return null;
+        }
+
+        /**
+         * Whether the result inside {@code section} depends only on the current state, not on the position. A
+         * section filled with a single state is then decided once for all its positions.
+         */
+        default boolean uniformIn(RegionKernel section) {
+            return false;
+        }
+    }
+
+    /** Decision with the section shortcuts of {@link Decision#candidates} and {@link Decision#uniformIn}. */
+    public static Decision decision(Decision target, Function<RegionKernel, Predicate<BlockState>> candidates,
+                                    Predicate<RegionKernel> uniformIn) {
+        return new Decision() {
+            @Override
+            public BlockState target(BlockState current, RegionKernel cursor) {
+                return target.target(current, cursor);
+            }
+
+            @Override
+            public Predicate<BlockState> candidates(RegionKernel section) {
+                return candidates.apply(section);
+            }
+
+            @Override
+            public boolean uniformIn(RegionKernel section) {
+                return uniformIn.test(section);
+            }
+        };
+    }
+
+    private final RegionKernel region;
+    private final Decision decision;
+    private final long[] keys;
+    private final PalettedContainer<BlockState>[] blocks;
+    /** Denied positions per section, null where everything is allowed. */
+    private final long[][] denied;
+    private final Planned[] planned;
+    private ForkJoinTask<?> task;
+
+    private int section;
+    private int index = -1;
+    private final BlockPos.Mutable pos = new BlockPos.Mutable();
+
+    @SuppressWarnings("unchecked")
+    private EditPlan(RegionKernel region, Decision decision, long[] keys) {
+        this.region = region;
+        this.decision = decision;
+        this.keys = keys;
+        this.blocks = new PalettedContainer[keys.length];
+        this.denied = new long[keys.length][];
+        this.planned = new Planned[keys.length];
+    }
+
+    /**
+     * Copies the block data of every section {@code region} touches that may hold a state {@code decision}
+     * changes and {@code access} (may be null) does not deny entirely; the others (e.g. empty sections for a
+     * hollow) are not even copied. Server thread only.
+     */
+    public static EditPlan capture(ServerWorld world, RegionKernel region, Decision decision,
+                                   ProtectedRegions.SectionAccess access) {
+        EditPlan plan = new EditPlan(region, decision, region.sectionKeys());
+
+        for (int i = 0; i < plan.keys.length; i++) {
+            long key = plan.keys[i];
+            long[] denied = access == null ? null : access.denied(key);
+            if (denied == ProtectedRegions.ALL) continue;
+            plan.denied[i] = denied;
+
+            WorldChunk chunk = world.getChunk(ChunkSectionPos.unpackX(key), ChunkSectionPos.unpackZ(key));
+            ChunkSection section = chunk.getSection(chunk.getSectionIndex(ChunkSectionPos.getBlockCoord(ChunkSectionPos.unpackY(key))));
+            PalettedContainer<BlockState> states = section.getBlockStateContainer();
+
+            Predicate<BlockState> candidates = decision.candidates(region.clip(key));
+            if (candidates != null && !states.hasAny(candidates)) continue;
+
+            plan.blocks[i] = states.copy();
+        }
+        return plan;
+    }
+
+    /**
+     * Starts planning. Small regions are planned right away on the calling thread, larger ones section by
+     * section on the planner pool; {@link #isReady()} tells when the change set can be walked.
+     */
+    public void start() {
+        if (region.volume() < VoxelConfig.get().planParallelMinVolume() || keys.length < 2) {
+            for (int i = 0; i < keys.length; i++) plan(i);
+            return;
+        }
+        task = POOL.submit(() -> IntStream.range(0, keys.length).parallel().forEach(this::plan));
+    }
+
+    public boolean isReady() {
+        return task == null || task.isDone();
+    }
+
+    /** Stops planning that has not finished yet. */
+    public void cancel() {
+        if (task != null) task.cancel(false);
+    }
+
+    /** Number of planned changes; only valid once {@link #isReady()}. */
+    public long size() {
+        long n = 0;
+        for (Planned p : planned) {
+            if (p != null) n += p.size;
+        }
+        return n;
+    }
+
+    /**
+     * Advances to the next planned change.
+     *
+     * @return false once every change has been visited
+     */
+    public boolean next() {
+        while (section < planned.length) {
+            Planned p = planned[section];
+            if (p != null && ++index < p.size) {
+                long key = keys[section];
+                int local = p.locals[index];
+                pos.set(ChunkSectionPos.getBlockCoord(ChunkSectionPos.unpackX(key)) + (local & 15),
+                        ChunkSectionPos.getBlockCoord(ChunkSectionPos.unpackY(key)) + ((local >> 8) & 15),
+                        ChunkSectionPos.getBlockCoord(ChunkSectionPos.unpackZ(key)) + ((local >> 4) & 15));
+                return true;
+            }
+            section++;
+            index = -1;
+        }
+        return false;
+    }
+
+    /** Position of the current change; mutated by {@link #next()}. */
+    public BlockPos.Mutable pos() {
+        return pos;
+    }
+
+    /** State the position had when it was captured. */
+    public BlockState before() {
+        return planned[section].before[index];
+    }
+
+    public BlockState target() {
+        return planned[section].after[index];
+    }
+
+    private void plan(int i) {
+        PalettedContainer<BlockState> states = blocks[i];
+        if (states == null) return;
+        blocks[i] = null;
+        RegionKernel cursor = region.clip(keys[i]);
+        long[] deny = denied[i];
+
+        // only looks at the palette entries, not at the section's 4096 positions
+        BlockState first = states.get(0, 0, 0);
+        BlockState uniform = states.hasAny(st -> st != first) ? null : first;
+
+        if (uniform != null && decision.uniformIn(cursor)) {
+            // the allowed positions first, so the decision learns how many it is made for
+            Planned out = new Planned();
+            BlockPos firstAllowed = null;
+            while (cursor.next()) {
+                int local = localIndex(cursor.pos());
+                if (ProtectedRegions.isDenied(deny, local)) continue;
+                if (firstAllowed == null) firstAllowed = cursor.pos().toImmutable();
+                out.add(local, uniform, uniform);
+            }
+            if (firstAllowed == null) return;
+
+            // any position of the section will do, but the cursor must be on one
+            cursor.moveTo(firstAllowed.getX(), firstAllowed.getY(), firstAllowed.getZ());
+            BlockState target = decision.decide(uniform, cursor, out.size);
+            if (target == null || target == uniform) return;
+
+            Arrays.fill(out.after, 0, out.size, target);
+            planned[i] = out;
+            return;
+        }
+
+        Planned out = new Planned();
+        while (cursor.next()) {
+            BlockPos.Mutable p = cursor.pos();
+            if (ProtectedRegions.isDenied(deny, localIndex(p))) continue;
+
+            BlockState current = uniform != null ? uniform : states.get(p.getX() & 15, p.getY() & 15, p.getZ() & 15);
+            BlockState target = decision.decide(current, cursor, 1);
+            if (target == null || target == current) continue;
+
+            out.add(localIndex(p), current, target);
+        }
+
+        planned[i] = out.size == 0 ? null : out;
+    }
+
+    private static int localIndex(BlockPos p) {
+        return ((p.getY() & 15) << 8) | ((p.getZ() & 15) << 4) | (p.getX() & 15);
+    }
+
+    private static final class Planned {
+        short[] locals = new short[64];
+        BlockState[] before = new BlockState[64];
+        BlockState[] after = new BlockState[64];
+        int size;
+
+        void add(int local, BlockState from, BlockState to) {
+            if (size == locals.length) {
+                locals = Arrays.copyOf(locals, size * 2);
+                before = Arrays.copyOf(before, size * 2);
+                after = Arrays.copyOf(after, size * 2);
+            }
+            locals[size] = (short) local;
+            before[size] = from;
+            after[size] = to;
+            size++;
+        }
+    }
+}
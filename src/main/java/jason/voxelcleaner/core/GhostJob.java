@@ -0,0 +1,54 @@
+/**
+ * Plans an operation like the real job does and shows the result to its player as a {@link GhostPreview}
+ * instead of writing it. Nothing is recorded; the job completes with the same report as a dry run.
+ */
+
+package jason.voxelcleaner.core;
+
+import jason.voxelcleaner.config.VoxelConfig;
+import jason.voxelcleaner.model.VoxelModels.DryRun;
+import jason.voxelcleaner.model.VoxelModels.Result;
+
+import net.minecraft.block.BlockState;
+import net.minecraft.server.network.ServerPlayerEntity;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.math.BlockPos;
+
+final class GhostJob extends PlannedEditJob {
+
+    private final ServerPlayerEntity player;
+    private final DryRunJob.Skips skips;
+    private final GhostPreview.Changes changes = new GhostPreview.Changes();
+
+    GhostJob(String label, ServerPlayerEntity player, ServerWorld world, RegionKernel region, EditPlan.Decision wanted,
+             boolean force, boolean keepBedrock, ProtectedRegions.SectionAccess access) {
+        this(label, player, world, region, wanted, force, keepBedrock, access, new DryRunJob.Skips());
+    }
+
+    private GhostJob(String label, ServerPlayerEntity player, ServerWorld world, RegionKernel region,
+                     EditPlan.Decision wanted, boolean force, boolean keepBedrock,
+                     ProtectedRegions.SectionAccess access, DryRunJob.Skips skips) {
+        super(label + " (Ghost)", world, region, ProtectionRules.guard(wanted, force, keepBedrock, skips), access);
+        this.player = player;
+        this.skips = skips;
+    }
+
+    @Override
+    protected void apply(BlockPos.Mutable pos, BlockState current, BlockState target) {
+        changes.add(pos, target);
+    }
+
+    @Override
+    protected Result complete() {
+        if (isCancelled()) return new Result(null, null);
+
+        GhostPreview.show(player, world, changes);
+
+        long changed = changes.size();
+        int perTick = VoxelConfig.get().jobBlocksPerTick();
+        long ticks = (changed + perTick - 1) / perTick;
+        DryRun report = new DryRun(changed, skips.protectedBlocks.sum(), skips.bedrock.sum(),
+                changes.chunkCount(), 0, Math.max(1, ticks));
+        return new Result(null, report);
+    }
+}
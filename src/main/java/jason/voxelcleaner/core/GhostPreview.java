@@ -0,0 +1,177 @@
+/**
+ * Shows the planned result of an edit to a single player as fake block updates: one chunk delta packet per
+ * section holds every changed position with its target state, nothing is written and nothing is recorded. The
+ * same packets built from the real sections put the actual blocks back once the preview expires, a newer one
+ * replaces it or the player starts an edit.
+ */
+
+package jason.voxelcleaner.core;
+
+import jason.voxelcleaner.config.VoxelConfig;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectLinkedOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.shorts.ShortArraySet;
+
+import net.minecraft.block.BlockState;
+import net.minecraft.network.packet.s2c.play.ChunkDeltaUpdateS2CPacket;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.network.ServerPlayerEntity;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.util.math.ChunkSectionPos;
+import net.minecraft.world.chunk.ChunkSection;
+import net.minecraft.world.chunk.WorldChunk;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+public final class GhostPreview {
+
+    private static final Map<UUID, Ghost> ACTIVE = new ConcurrentHashMap<>();
+
+    private GhostPreview() {}
+
+    /** Planned changes grouped by section, in the order they were added. */
+    static final class Changes {
+        private final Long2ObjectLinkedOpenHashMap<Section> sections = new Long2ObjectLinkedOpenHashMap<>();
+        private long lastKey;
+        private Section last;
+        private long size;
+
+        void add(BlockPos pos, BlockState target) {
+            long key = ChunkSectionPos.asLong(
+                    ChunkSectionPos.getSectionCoord(pos.getX()),
+                    ChunkSectionPos.getSectionCoord(pos.getY()),
+                    ChunkSectionPos.getSectionCoord(pos.getZ()));
+
+            // changes arrive section by section, so the map is rarely asked
+            if (last == null || lastKey != key) {
+                last = sections.computeIfAbsent(key, k -> new Section());
+                lastKey = key;
+            }
+            last.add(ChunkSectionPos.packLocal(pos), target);
+            size++;
+        }
+
+        long size() {
+            return size;
+        }
+
+        int chunkCount() {
+            LongOpenHashSet chunks = new LongOpenHashSet();
+            for (long key : sections.keySet()) {
+                chunks.add(ChunkPos.toLong(ChunkSectionPos.unpackX(key), ChunkSectionPos.unpackZ(key)));
+            }
+            return chunks.size();
+        }
+    }
+
+    /**
+     * Sends {@code changes} to {@code player} and replaces the player's previous ghost preview. Server thread
+     * only.
+     */
+    static void show(ServerPlayerEntity player, ServerWorld world, Changes changes) {
+        revert(player);
+        if (player.isDisconnected() || player.getEntityWorld() != world || changes.sections.isEmpty()) return;
+
+        for (var e : changes.sections.long2ObjectEntrySet()) {
+            long key = e.getLongKey();
+            Section s = e.getValue();
+
+            WorldChunk chunk = loadedChunk(world, key);
+            if (chunk == null) continue;
+            ChunkSection real = sectionOf(chunk, key);
+
+            // the packet reads the states to send from a section; a copy with the targets applied stands in for it
+            ChunkSection ghost = new ChunkSection(real.getBlockStateContainer().copy(), real.getBiomeContainer());
+            for (int i = 0; i < s.size; i++) {
+                short p = s.positions[i];
+                ghost.setBlockState(ChunkSectionPos.unpackLocalX(p), ChunkSectionPos.unpackLocalY(p),
+                        ChunkSectionPos.unpackLocalZ(p), s.states[i], false);
+            }
+            player.networkHandler.sendPacket(new ChunkDeltaUpdateS2CPacket(ChunkSectionPos.from(key), s.positionSet(), ghost));
+        }
+
+        assert world.getServer() != null;
+        long expiresAt = world.getServer().getTicks() + VoxelConfig.get().ghostPreviewTicks();
+        ACTIVE.put(player.getUuid(), new Ghost(world, changes, expiresAt));
+    }
+
+    /** Puts the real blocks back on the player's client if a ghost preview is shown. */
+    public static void revert(ServerPlayerEntity player) {
+        Ghost ghost = ACTIVE.remove(player.getUuid());
+        if (ghost == null || player.isDisconnected()) return;
+
+        // after a dimension change the client has already dropped those chunks
+        if (player.getEntityWorld() != ghost.world) return;
+
+        for (var e : ghost.changes.sections.long2ObjectEntrySet()) {
+            long key = e.getLongKey();
+            WorldChunk chunk = loadedChunk(ghost.world, key);
+            if (chunk == null) continue;
+
+            player.networkHandler.sendPacket(new ChunkDeltaUpdateS2CPacket(ChunkSectionPos.from(key),
+                    e.getValue().positionSet(), sectionOf(chunk, key)));
+        }
+    }
+
+    /** Forgets the player's preview without sending anything, e.g. when they leave. */
+    public static void discard(UUID player) {
+        ACTIVE.remove(player);
+    }
+
+    /** Muss in VoxelCleaner per ServerTickEvents registriert werden. */
+    public static void tick(MinecraftServer server) {
+        if (ACTIVE.isEmpty()) return;
+
+        long now = server.getTicks();
+        for (Map.Entry<UUID, Ghost> e : ACTIVE.entrySet()) {
+            if (now <= e.getValue().expiresAtTick) continue;
+
+            ServerPlayerEntity player = server.getPlayerManager().getPlayer(e.getKey());
+            if (player != null) {
+                revert(player);
+            } else {
+                ACTIVE.remove(e.getKey());
+            }
+        }
+    }
+
+    private static WorldChunk loadedChunk(ServerWorld world, long sectionKey) {
+        return world.getChunkManager().getWorldChunk(ChunkSectionPos.unpackX(sectionKey), ChunkSectionPos.unpackZ(sectionKey));
+    }
+
+    private static ChunkSection sectionOf(WorldChunk chunk, long sectionKey) {
+        return chunk.getSection(chunk.getSectionIndex(ChunkSectionPos.getBlockCoord(ChunkSectionPos.unpackY(sectionKey))));
+    }
+
+    // ---------------- Data ----------------
+
+    private record Ghost(ServerWorld world, Changes changes, long expiresAtTick) {}
+
+    private static final class Section {
+        /** {@link ChunkSectionPos#packLocal} positions, as the delta packet expects them. */
+        short[] positions = new short[64];
+        BlockState[] states = new BlockState[64];
+        int size;
+
+        void add(short position, BlockState state) {
+            if (size == positions.length) {
+                positions = Arrays.copyOf(positions, size * 2);
+                states = Arrays.copyOf(states, size * 2);
+            }
+            positions[size] = position;
+            states[size] = state;
+            size++;
+        }
+
+        ShortArraySet positionSet() {
+            // every position is planned once, so the array holds no duplicates
+            return new ShortArraySet(positions, size);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+/**
+ * Loot collected by an edit, merged as it is gathered: one count per distinct item and components instead of one
+ * stack per drop. Knows how many inventory slots it needs, so chests can be planned before anything is placed.
+ */
+
+package jason.voxelcleaner.core;
+
+import it.unimi.dsi.fastutil.Hash;
+import it.unimi.dsi.fastutil.objects.Object2LongLinkedOpenCustomHashMap;
+import it.unimi.dsi.fastutil.objects.Object2LongMap;
+
+import net.minecraft.item.ItemStack;
+
+import java.util.function.Consumer;
+
+public final class LootPile {
+
+    private static final Hash.Strategy<ItemStack> ITEM_AND_COMPONENTS = new Hash.Strategy<>() {
+        @Override
+        public int hashCode(ItemStack stack) {
+            return stack == null ? 0 : ItemStack.hashCode(stack);
+        }
+
+        @Override
+        public boolean equals(ItemStack a, ItemStack b) {
+            return a == b || a != null && b != null && ItemStack.areItemsAndComponentsEqual(a, b);
+        }
+    };
+
+    /** Single-item templates to total count, in first-seen order. */
+    private final Object2LongLinkedOpenCustomHashMap<ItemStack> counts = new Object2LongLinkedOpenCustomHashMap<>(ITEM_AND_COMPONENTS);
+
+    /** Adds {@code stack}; the stack itself is not kept. */
+    public void add(ItemStack stack) {
+        if (stack == null || stack.isEmpty()) return;
+
+        long n = counts.getLong(stack);
+        if (n == 0) {
+            counts.put(stack.copyWithCount(1), stack.getCount());
+        } else {
+            counts.put(stack, n + stack.getCount());
+        }
+    }
+
+    public boolean isEmpty() {
+        return counts.isEmpty();
+    }
+
+    /** Number of inventory slots the pile fills with full stacks. */
+    public long slotsNeeded() {
+        long slots = 0;
+        for (Object2LongMap.Entry<ItemStack> e : counts.object2LongEntrySet()) {
+            int max = e.getKey().getMaxCount();
+            slots += (e.getLongValue() + max - 1) / max;
+        }
+        return slots;
+    }
+
+    /**
+     * Hands out the pile as stacks of at most their max size, in first-seen order, and removes what
+     * {@code sink} accepts. Stops as soon as {@code sink} returns false; the rest stays in the pile.
+     */
+    public void drain(StackSink sink) {
+        var it = counts.object2LongEntrySet().fastIterator();
+        while (it.hasNext()) {
+            Object2LongMap.Entry<ItemStack> e = it.next();
+            ItemStack template = e.getKey();
+            long left = e.getLongValue();
+
+            while (left > 0) {
+                int n = (int) Math.min(left, template.getMaxCount());
+                if (!sink.accept(template.copyWithCount(n))) {
+                    e.setValue(left);
+                    return;
+                }
+                left -= n;
+            }
+            it.remove();
+        }
+    }
+
+    /** Hands out and removes everything. */
+    public void drainAll(Consumer<ItemStack> sink) {
+        drain(stack -> {
+            sink.accept(stack);
+            return true;
+        });
+    }
+
+    @FunctionalInterface
+    public interface StackSink {
+        /** @return false if {@code stack} was not taken and draining should stop */
+        boolean accept(ItemStack stack);
+    }
+}
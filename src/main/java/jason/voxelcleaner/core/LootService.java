@@ -4,7 +4,6 @@
 
 package jason.voxelcleaner.core;
 
-import net.minecraft.block.Block;
 import net.minecraft.block.BlockState;
 import net.minecraft.block.Blocks;
 import net.minecraft.block.ChestBlock;
@@ -23,24 +22,51 @@ import java.util.List;
 
 public final class LootService {
 
-    public int breakAndCollect(ServerWorld world, ServerPlayerEntity player, BlockPos pos, BlockState state, List<ItemStack> out) {
+    private static final int CHEST_SLOTS = 27;
+
+    private final DropCache dropCache = new DropCache();
+
+    /**
+     * Collects the drops of {@code state}, rolled with the player's main-hand tool, and queues the removal on the
+     * writer; block entities are removed when the writer falls back to setBlockState for them.
+     */
+    public int breakAndCollect(SectionWriter writer, ServerPlayerEntity player, BlockPos pos, BlockState state, LootPile out) {
+        return collect(writer, player, pos, state, player.getMainHandStack(), out);
+    }
+
+    /**
+     * Stand-in for {@code world.breakBlock(pos, true, player)} that collects the drops instead of spawning them:
+     * like vanilla it rolls them without a tool, so Fortune and Silk Touch don't apply, and it still drops what
+     * {@link BlockState#onStacksDropped} adds (ore experience) at the block.
+     */
+    public void breakAndDrop(SectionWriter writer, ServerPlayerEntity player, BlockPos pos, BlockState state, LootPile out) {
+        collect(writer, player, pos, state, ItemStack.EMPTY, out);
+        state.onStacksDropped(writer.world(), pos, ItemStack.EMPTY, true);
+    }
+
+    private int collect(SectionWriter writer, ServerPlayerEntity player, BlockPos pos, BlockState state, ItemStack tool, LootPile out) {
+        ServerWorld world = writer.world();
         BlockEntity be = world.getBlockEntity(pos);
-        ItemStack tool = player.getMainHandStack();
 
-        List<ItemStack> drops = Block.getDroppedStacks(state, world, pos, be, player, tool);
+        List<ItemStack> drops = dropCache.drops(world, player, pos, state, be, tool);
 
-        world.setBlockState(pos, Blocks.AIR.getDefaultState(), 3);
-        if (be != null) world.removeBlockEntity(pos);
+        writer.set(pos, Blocks.AIR.getDefaultState());
 
         int c = 0;
         for (ItemStack st : drops) {
             if (st == null || st.isEmpty()) continue;
-            out.add(st.copy());
+            out.add(st);
             c += st.getCount();
         }
         return c;
     }
 
+    /**
+     * Places as many chest pairs as {@code loot} needs (or as fit into the room) in one pass, nearest to the
+     * room's center first, and fills them slot by slot. Whatever does not fit stays in {@code loot}.
+     *
+     * @return number of chests placed
+     */
     public int placeLootChestsAndFill(ServerWorld world,
                                       BlockPos base,
                                       Direction facing,
@@ -49,10 +75,13 @@ public final class LootService {
                                       int outerDepth,
                                       int minW,
                                       int maxW,
-                                      List<ItemStack> stacks,
+                                      LootPile loot,
                                       Direction chestFacing) {
 
-        if (stacks.isEmpty()) return 0;
+        if (loot.isEmpty()) return 0;
+
+        // a pair holds 2 x 27 slots; merged loot tells the exact number up front
+        long pairsNeeded = (loot.slotsNeeded() + 2L * CHEST_SLOTS - 1) / (2L * CHEST_SLOTS);
 
         int interiorY = base.getY() + 1;
         int minDepth = 1;
@@ -60,7 +89,7 @@ public final class LootService {
         int minWidth = minW + 1;
         int maxWidth = maxW - 1;
 
-        List<BlockPos> chestSlots = new ArrayList<>();
+        List<Inventory> chests = new ArrayList<>();
 
         int centerDepth = (outerDepth - 1) / 2;
         int centerWidth = minW + (outerWidth - 1) / 2;
@@ -83,8 +112,11 @@ public final class LootService {
             if (b <= maxWidth) widthOrder.add(b);
         }
 
+        placing:
         for (int dz : depthOrder) {
             for (int w : widthOrder) {
+                if (chests.size() / 2 >= pairsNeeded) break placing;
+
                 int w2 = w + 1;
                 if (w < minWidth || w > maxWidth) continue;
                 if (w2 < minWidth || w2 > maxWidth) continue;
@@ -97,25 +129,44 @@ public final class LootService {
                 if (!placeChest(world, p1, chestFacing)) continue;
                 if (!placeChest(world, p2, chestFacing)) continue;
 
-                chestSlots.add(p1);
-                chestSlots.add(p2);
-
-                if (tryFill(world, chestSlots, stacks)) {
-                    return chestSlots.size();
-                }
+                if (world.getBlockEntity(p1) instanceof ChestBlockEntity c1) chests.add(c1);
+                if (world.getBlockEntity(p2) instanceof ChestBlockEntity c2) chests.add(c2);
             }
         }
 
-        tryFill(world, chestSlots, stacks);
-        return chestSlots.size();
+        fill(chests, loot);
+        return chests.size();
     }
 
-    public void dropStacks(ServerWorld world, BlockPos pos, List<ItemStack> stacks) {
-        for (ItemStack st : stacks) {
-            if (st == null || st.isEmpty()) continue;
-            ItemScatterer.spawn(world, pos.getX(), pos.getY(), pos.getZ(), st);
+    public void dropStacks(ServerWorld world, BlockPos pos, LootPile loot) {
+        loot.drainAll(st -> ItemScatterer.spawn(world, pos.getX(), pos.getY(), pos.getZ(), st));
+    }
+
+    /**
+     * Spawns {@code loot} as full stacks spread over up to four points of the room's floor (the quarter points
+     * of its interior, or just its center for narrow rooms).
+     */
+    public void scatterInRoom(ServerWorld world, BlockPos base, Direction facing, Direction sideways,
+                              int outerWidth, int outerDepth, int minW, LootPile loot) {
+        int y = base.getY() + 1;
+        int innerWidth = outerWidth - 2, innerDepth = outerDepth - 2;
+
+        List<BlockPos> points = new ArrayList<>(4);
+        if (innerWidth < 4 || innerDepth < 4) {
+            points.add(roomCenterPos(base, facing, sideways, outerWidth, outerDepth, minW));
+        } else {
+            for (int dz : new int[]{1 + innerDepth / 4, 1 + innerDepth * 3 / 4}) {
+                for (int w : new int[]{minW + 1 + innerWidth / 4, minW + 1 + innerWidth * 3 / 4}) {
+                    points.add(base.offset(facing, dz).offset(sideways, w).withY(y));
+                }
+            }
         }
-        stacks.clear();
+
+        int[] next = new int[1];
+        loot.drainAll(st -> {
+            BlockPos p = points.get(next[0]++ % points.size());
+            ItemScatterer.spawn(world, p.getX(), p.getY(), p.getZ(), st);
+        });
     }
 
     public BlockPos roomCenterPos(BlockPos base, Direction facing, Direction sideways, int outerWidth, int outerDepth, int minW) {
@@ -137,55 +188,26 @@ public final class LootService {
         return world.setBlockState(pos, chest, 3);
     }
 
-    private boolean tryFill(ServerWorld world, List<BlockPos> chestPositions, List<ItemStack> stacks) {
-        if (chestPositions.isEmpty()) return false;
-
-        for (int i = 0; i < stacks.size(); i++) {
-            ItemStack st = stacks.get(i);
-            if (st == null || st.isEmpty()) continue;
-
-            for (BlockPos cp : chestPositions) {
-                BlockEntity be = world.getBlockEntity(cp);
-                if (!(be instanceof ChestBlockEntity chest)) continue;
-
-                st = insertIntoInventory(chest, st);
-                if (st.isEmpty()) break;
-            }
-
-            stacks.set(i, st);
-        }
-
-        for (ItemStack st : stacks) {
-            if (st != null && !st.isEmpty()) return false;
-        }
-        return true;
-    }
-
-    private ItemStack insertIntoInventory(Inventory inv, ItemStack stack) {
-        if (stack == null || stack.isEmpty()) return ItemStack.EMPTY;
-
-        for (int i = 0; i < inv.size(); i++) {
-            ItemStack slot = inv.getStack(i);
-            if (!slot.isEmpty()
-                    && ItemStack.areItemsAndComponentsEqual(slot, stack)
-                    && slot.getCount() < slot.getMaxCount()) {
-
-                int canMove = Math.min(stack.getCount(), slot.getMaxCount() - slot.getCount());
-                slot.increment(canMove);
-                stack.decrement(canMove);
-                inv.setStack(i, slot);
-                if (stack.isEmpty()) return ItemStack.EMPTY;
-            }
-        }
+    /** Fills the inventories' slots in order; merged loot never needs to look at a filled slot again. */
+    private void fill(List<Inventory> inventories, LootPile loot) {
+        if (inventories.isEmpty()) return;
+
+        int[] cursor = new int[2]; // inventory, slot
+        loot.drain(stack -> {
+            while (cursor[0] < inventories.size()) {
+                Inventory inv = inventories.get(cursor[0]);
+                int slot = cursor[1]++;
+                if (slot >= inv.size()) {
+                    cursor[0]++;
+                    cursor[1] = 0;
+                    continue;
+                }
+                if (!inv.getStack(slot).isEmpty()) continue;
 
-        for (int i = 0; i < inv.size(); i++) {
-            ItemStack slot = inv.getStack(i);
-            if (slot.isEmpty()) {
-                inv.setStack(i, stack);
-                return ItemStack.EMPTY;
+                inv.setStack(slot, stack);
+                return true;
             }
-        }
-
-        return stack;
+            return false;
+        });
     }
 }
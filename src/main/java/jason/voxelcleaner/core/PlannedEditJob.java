@@ -0,0 +1,100 @@
+/**
+ * Edit job split into a plan and an apply phase. The first slice captures the region's sections and starts an
+ * {@link EditPlan}; once planning is done, every later slice applies planned changes on the server thread. A
+ * position that changed since the capture is decided again against its current state before it is applied.
+ */
+
+package jason.voxelcleaner.core;
+
+import jason.voxelcleaner.model.VoxelModels.Result;
+
+import net.minecraft.block.BlockState;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.math.BlockPos;
+
+abstract class PlannedEditJob extends EditJob {
+
+    protected final ServerWorld world;
+    protected final SectionWriter writer;
+
+    private final RegionKernel region;
+    private final EditPlan.Decision decision;
+    private final ProtectedRegions.SectionAccess access;
+    /** Not iterated; positioned with {@link RegionKernel#moveTo} for re-decisions and flag lookups. */
+    private final RegionKernel recheck;
+    private EditPlan plan;
+    private boolean planned;
+
+    /** @param access protected regions of the editing player, null if none apply */
+    PlannedEditJob(String label, ServerWorld world, RegionKernel region, EditPlan.Decision decision,
+                   ProtectedRegions.SectionAccess access) {
+        // the real total is only known after planning
+        super(label, region.volume());
+        this.world = world;
+        this.writer = SectionWriter.create(world);
+        this.region = region;
+        this.decision = decision;
+        this.access = access;
+        this.recheck = region.clip(0L);
+    }
+
+    @Override
+    protected boolean prepare() {
+        if (planned) return true;
+
+        if (plan == null) {
+            plan = EditPlan.capture(world, region, decision, access);
+            plan.start();
+        }
+        if (!plan.isReady()) return false;
+
+        planned = true;
+        resize(plan.size());
+        return true;
+    }
+
+    @Override
+    protected final void visit(long index) {
+        if (!plan.next()) return;
+
+        BlockPos.Mutable p = plan.pos();
+        BlockState before = plan.before();
+        BlockState target = plan.target();
+
+        BlockState current = world.getBlockState(p);
+        if (current != before) {
+            target = decision.target(current, recheck.moveTo(p.getX(), p.getY(), p.getZ()));
+            if (target == null || target == current) return;
+        }
+
+        apply(p, current, target);
+    }
+
+    /**
+     * Applies one change on the server thread.
+     *
+     * @param pos     mutable position, call {@code toImmutable()} before keeping it
+     * @param current the position's state right now
+     */
+    protected abstract void apply(BlockPos.Mutable pos, BlockState current, BlockState target);
+
+    /** {@link RegionKernel} flags of a position inside the job's box. */
+    protected final int flagsAt(BlockPos pos) {
+        recheck.moveTo(pos.getX(), pos.getY(), pos.getZ());
+        return recheck.flags();
+    }
+
+    @Override
+    protected void afterSlice() {
+        writer.flush();
+    }
+
+    @Override
+    protected Result finish() {
+        if (plan != null && !planned) plan.cancel();
+        return complete();
+    }
+
+    /** Builds the job's result; called once after the last slice (or after cancellation). */
+    protected abstract Result complete();
+}
@@ -1,10 +1,24 @@
+/**
+ * Shows where an edit would go. Clients with the mod get a single {@link PreviewPayload} and draw the outline
+ * themselves; for vanilla clients the server spawns END_ROD particles along the shell. The particle points of
+ * a preview are computed once as packed positions (only the edges for large shapes) and then streamed out
+ * under a per-tick budget that all active previews share, skipping points beyond the player's view distance.
+ */
+
 package jason.voxelcleaner.core;
 
+import jason.voxelcleaner.config.VoxelConfig;
+import jason.voxelcleaner.network.PreviewPayload;
+
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+
+import net.fabricmc.fabric.api.networking.v1.ServerPlayNetworking;
 import net.minecraft.particle.ParticleEffect;
 import net.minecraft.particle.ParticleTypes;
 import net.minecraft.server.MinecraftServer;
 import net.minecraft.server.network.ServerPlayerEntity;
 import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.math.BlockBox;
 import net.minecraft.util.math.BlockPos;
 import net.minecraft.util.math.Direction;
 
@@ -19,7 +33,10 @@ public final class PreviewService {
 
     // 20 ticks = 1s
     private static final int DEFAULT_DURATION_TICKS = 20 * 6; // 6s sichtbar
-    private static final int DEFAULT_REFRESH_EVERY = 4;       // alle 4 Ticks neu spawnen (~0.2s)
+    private static final int DEFAULT_REFRESH_EVERY = 4;       // alle Punkte etwa alle 4 Ticks (~0.2s)
+
+    /** Layers between two contour rings of a shape shown at edge-only detail. */
+    private static final int EDGE_LAYER_STEP = 4;
 
     private static final Map<UUID, PreviewRequest> ACTIVE = new ConcurrentHashMap<>();
 
@@ -28,20 +45,18 @@ public final class PreviewService {
     /** Muss in VoxelCleaner per ServerTickEvents registriert werden. */
     public static void tick(MinecraftServer server) {
         long now = server.getTicks();
+        ACTIVE.values().removeIf(req -> now > req.expiresAtTick);
+        if (ACTIVE.isEmpty()) return;
+
+        // every preview gets the same share; a small one never needs all of it
+        int share = Math.max(1, VoxelConfig.get().previewParticlesPerTick() / ACTIVE.size());
+        double range = server.getPlayerManager().getViewDistance() * 16.0;
 
         Iterator<Map.Entry<UUID, PreviewRequest>> it = ACTIVE.entrySet().iterator();
         while (it.hasNext()) {
             Map.Entry<UUID, PreviewRequest> e = it.next();
             PreviewRequest req = e.getValue();
 
-            if (now > req.expiresAtTick) {
-                it.remove();
-                continue;
-            }
-
-            if (now < req.nextSpawnTick) continue;
-            req.nextSpawnTick = now + req.refreshEvery;
-
             ServerPlayerEntity player = server.getPlayerManager().getPlayer(e.getKey());
             if (player == null) {
                 it.remove();
@@ -53,12 +68,7 @@ public final class PreviewService {
                 continue;
             }
 
-            switch (req.type) {
-                case BOX -> renderBox(world, player, req.box);
-                case SPHERE -> renderSphere(world, player, req.sphere);
-                case CYLINDER -> renderCylinder(world, player, req.cylinder);
-                case PYRAMID -> renderPyramid(world, player, req.pyramid);
-            }
+            emit(world, player, req, Math.min(share, req.perTick), range * range);
         }
     }
 
@@ -76,160 +86,144 @@ public final class PreviewService {
         int minW = -(ow / 2);
         int maxW = minW + ow - 1;
 
-        assert world.getServer() != null;
-        long now = world.getServer().getTicks();
-        PreviewRequest req = PreviewRequest.box(
-                player.getUuid(), now,
-                new BoxData(base, f, s, ow, oh, od, minW, maxW)
-        );
-        ACTIVE.put(player.getUuid(), req);
+        BlockBox box = BlockBox.create(base.offset(s, minW), base.offset(f, od - 1).offset(s, maxW).up(oh - 1));
+        if (sendToClient(player, new PreviewPayload(PreviewPayload.Kind.BOX, new BlockPos(box.getMinX(), box.getMinY(), box.getMinZ()),
+                box.getBlockCountX(), box.getBlockCountY(), box.getBlockCountZ(), DEFAULT_DURATION_TICKS))) return;
 
-        renderBox(world, player, req.box); // sofortiges Feedback
+        start(world, player, boxPoints(box));
     }
 
-    public static void previewSphere(ServerPlayerEntity player, int radius) {
-        if (!(player.getEntityWorld() instanceof ServerWorld world)) return;
+    // shapes use the hollow raster and placement of the real operation, so the preview shows exactly its surface
 
-        Direction f = player.getHorizontalFacing();
-        BlockPos center = player.getBlockPos().offset(f, 1).up(radius / 2);
+    public static void previewSphere(ServerPlayerEntity player, int radius) {
+        previewShape(player, PreviewPayload.Kind.SPHERE, ShapeRaster.roundOrigin(player, radius), ShapeRaster.sphere(radius, true));
+    }
 
-        assert world.getServer() != null;
-        long now = world.getServer().getTicks();
-        PreviewRequest req = PreviewRequest.sphere(
-                player.getUuid(), now,
-                new SphereData(center, radius)
-        );
-        ACTIVE.put(player.getUuid(), req);
+    public static void previewCylinder(ServerPlayerEntity player, int radius, int height) {
+        previewShape(player, PreviewPayload.Kind.CYLINDER, ShapeRaster.roundOrigin(player, radius), ShapeRaster.cylinder(radius, height, true));
+    }
 
-        renderSphere(world, player, req.sphere);
+    public static void previewPyramid(ServerPlayerEntity player, int baseSize, int height) {
+        previewShape(player, PreviewPayload.Kind.PYRAMID, ShapeRaster.pyramidOrigin(player, baseSize), ShapeRaster.pyramid(baseSize, height, true));
     }
 
-    public static void previewCylinder(ServerPlayerEntity player, int radius, int height) {
+    private static void previewShape(ServerPlayerEntity player, PreviewPayload.Kind kind, BlockPos origin, ShapeRaster raster) {
         if (!(player.getEntityWorld() instanceof ServerWorld world)) return;
 
-        Direction f = player.getHorizontalFacing();
-        BlockPos base = player.getBlockPos().offset(f, 1);
-
-        assert world.getServer() != null;
-        long now = world.getServer().getTicks();
-        PreviewRequest req = PreviewRequest.cylinder(
-                player.getUuid(), now,
-                new CylinderData(base, radius, height)
-        );
-        ACTIVE.put(player.getUuid(), req);
+        // the client rebuilds the raster from its box size
+        if (sendToClient(player, new PreviewPayload(kind, origin, raster.width(), raster.height(), raster.depth(),
+                DEFAULT_DURATION_TICKS))) return;
 
-        renderCylinder(world, player, req.cylinder);
+        start(world, player, shapePoints(origin, raster));
     }
 
-    public static void previewPyramid(ServerPlayerEntity player, int baseSize, int height) {
-        if (!(player.getEntityWorld() instanceof ServerWorld world)) return;
+    /** Hands the preview to a client that draws it itself; false for vanilla clients. */
+    private static boolean sendToClient(ServerPlayerEntity player, PreviewPayload payload) {
+        if (!ServerPlayNetworking.canSend(player, PreviewPayload.ID)) return false;
 
-        Direction f = player.getHorizontalFacing();
-        BlockPos base = player.getBlockPos().offset(f, 1);
+        ServerPlayNetworking.send(player, payload);
+        // a particle preview still running from before would otherwise overlap the outline
+        ACTIVE.remove(player.getUuid());
+        return true;
+    }
 
+    private static void start(ServerWorld world, ServerPlayerEntity player, long[] points) {
         assert world.getServer() != null;
         long now = world.getServer().getTicks();
-        PreviewRequest req = PreviewRequest.pyramid(
-                player.getUuid(), now,
-                new PyramidData(base, baseSize, height)
-        );
-        ACTIVE.put(player.getUuid(), req);
-
-        renderPyramid(world, player, req.pyramid);
+        ACTIVE.put(player.getUuid(), new PreviewRequest(points, now + DEFAULT_DURATION_TICKS));
     }
 
-    // ---------------- Render ----------------
-
-    private static void renderBox(ServerWorld world, ServerPlayerEntity player, BoxData d) {
-        for (int dz = 0; dz < d.od; dz++) {
-            for (int dx = d.minW; dx <= d.maxW; dx++) {
-                for (int dy = 0; dy < d.oh; dy++) {
-
-                    boolean onX = dx == d.minW || dx == d.maxW;
-                    boolean onY = dy == 0 || dy == d.oh - 1;
-                    boolean onZ = dz == 0 || dz == d.od - 1;
+    // ---------------- Points (computed once per preview) ----------------
 
-                    if (!(onX || onY || onZ)) continue;
+    /** Every other shell position of the box, or only its 12 edges if that would be too many particles. */
+    private static long[] boxPoints(BlockBox b) {
+        long sx = b.getBlockCountX(), sy = b.getBlockCountY(), sz = b.getBlockCountZ();
+        long shell = sx * sy * sz - Math.max(0, sx - 2) * Math.max(0, sy - 2) * Math.max(0, sz - 2);
+        boolean edgesOnly = shell / 2 > VoxelConfig.get().previewFullDetailMaxPoints();
 
-                    if (((dx - d.minW) + dy + dz) % 2 != 0) continue;
+        LongArrayList out = new LongArrayList();
+        for (int y = b.getMinY(); y <= b.getMaxY(); y++) {
+            for (int z = b.getMinZ(); z <= b.getMaxZ(); z++) {
+                for (int x = b.getMinX(); x <= b.getMaxX(); x++) {
+                    int faces = (x == b.getMinX() || x == b.getMaxX() ? 1 : 0)
+                            + (y == b.getMinY() || y == b.getMaxY() ? 1 : 0)
+                            + (z == b.getMinZ() || z == b.getMaxZ() ? 1 : 0);
 
-                    BlockPos p = d.base.offset(d.f, dz).offset(d.s, dx).up(dy);
-                    spawnToPlayer(world, player, p);
+                    if (edgesOnly ? faces < 2 : faces == 0 || ((x + y + z) & 1) != 0) continue;
+                    out.add(BlockPos.asLong(x, y, z));
                 }
             }
         }
+        return out.toLongArray();
     }
 
-    private static void renderSphere(ServerWorld world, ServerPlayerEntity player, SphereData d) {
-        int r = d.radius;
-        int r2 = r * r;
-        int inner = Math.max(0, r - 1);
-        int inner2 = inner * inner;
-
-        for (int x = -r; x <= r; x++) {
-            for (int y = -r; y <= r; y++) {
-                for (int z = -r; z <= r; z++) {
-                    int dist2 = x * x + y * y + z * z;
-                    if (dist2 > r2) continue;
-                    if (dist2 <= inner2) continue;
-                    if (((x + y + z) & 1) != 0) continue;
-
-                    spawnToPlayer(world, player, d.center.add(x, y, z));
+    /**
+     * Every other surface position of the raster, or, if that would be too many particles, the outer ends of
+     * each row on every {@link #EDGE_LAYER_STEP}th layer (plus the bottom and top layer), i.e. stacked rings.
+     */
+    private static long[] shapePoints(BlockPos o, ShapeRaster raster) {
+        long[] surface = {0};
+        raster.forEachSpan((y, z, x0, x1) -> surface[0] += x1 - x0 + 1);
+        boolean edgesOnly = surface[0] / 2 > VoxelConfig.get().previewFullDetailMaxPoints();
+
+        LongArrayList out = new LongArrayList();
+        if (!edgesOnly) {
+            raster.forEachSpan((y, z, x0, x1) -> {
+                for (int x = x0; x <= x1; x++) {
+                    if (((x + y + z) & 1) == 0) out.add(BlockPos.asLong(o.getX() + x, o.getY() + y, o.getZ() + z));
                 }
-            }
+            });
+            return out.toLongArray();
         }
-    }
-
-    private static void renderCylinder(ServerWorld world, ServerPlayerEntity player, CylinderData d) {
-        int r2 = d.radius * d.radius;
-        int inner = Math.max(0, d.radius - 1);
-        int inner2 = inner * inner;
-
-        for (int y = 0; y < d.height; y++) {
-            for (int x = -d.radius; x <= d.radius; x++) {
-                for (int z = -d.radius; z <= d.radius; z++) {
-                    int dist2 = x * x + z * z;
-                    if (dist2 > r2) continue;
 
-                    boolean boundary = dist2 > inner2 || y == 0 || y == d.height - 1;
-                    if (!boundary) continue;
-
-                    if (((x + y + z) & 1) != 0) continue;
-
-                    spawnToPlayer(world, player, d.base.add(x, y, z));
-                }
+        int top = raster.height() - 1;
+        // spans arrive row by row; {y, z, end of the row's last span so far}
+        int[] row = {-1, 0, 0};
+        raster.forEachSpan((y, z, x0, x1) -> {
+            if (y % EDGE_LAYER_STEP != 0 && y != top) return;
+
+            if (y != row[0] || z != row[1]) {
+                if (row[0] >= 0) addRowEnd(out, o, row);
+                row[0] = y;
+                row[1] = z;
+                out.add(BlockPos.asLong(o.getX() + x0, o.getY() + y, o.getZ() + z));
             }
-        }
+            row[2] = x1;
+        });
+        if (row[0] >= 0) addRowEnd(out, o, row);
+        return out.toLongArray();
     }
 
-    private static void renderPyramid(ServerWorld world, ServerPlayerEntity player, PyramidData d) {
-        int half = d.baseSize / 2;
+    private static void addRowEnd(LongArrayList out, BlockPos o, int[] row) {
+        out.add(BlockPos.asLong(o.getX() + row[2], o.getY() + row[0], o.getZ() + row[1]));
+    }
 
-        for (int y = 0; y < d.height; y++) {
-            int layerHalf = Math.max(0, half - (int) Math.floor((double) y * (double) half / (double) Math.max(1, d.height - 1)));
-            int min = -layerHalf;
+    // ---------------- Render ----------------
 
-            for (int x = min; x <= layerHalf; x++) {
-                for (int z = min; z <= layerHalf; z++) {
-                    boolean boundary = x == min || x == layerHalf || z == min || z == layerHalf || y == 0 || y == d.height - 1;
-                    if (!boundary) continue;
-                    if (((x + y + z) & 1) != 0) continue;
+    /** Spawns up to {@code budget} of the request's points, continuing where the last tick stopped. */
+    private static void emit(ServerWorld world, ServerPlayerEntity player, PreviewRequest req, int budget, double rangeSq) {
+        long[] points = req.points;
+        for (int visited = 0; visited < points.length && budget > 0; visited++) {
+            long p = points[req.cursor];
+            if (++req.cursor == points.length) req.cursor = 0;
 
-                    spawnToPlayer(world, player, d.base.add(x, y, z));
-                }
-            }
+            double x = BlockPos.unpackLongX(p) + 0.5, y = BlockPos.unpackLongY(p) + 0.5, z = BlockPos.unpackLongZ(p) + 0.5;
+            if (player.squaredDistanceTo(x, y, z) > rangeSq) continue;
+
+            spawnToPlayer(world, player, x, y, z);
+            budget--;
         }
     }
 
-    private static void spawnToPlayer(ServerWorld world, ServerPlayerEntity player, BlockPos p) {
+    private static void spawnToPlayer(ServerWorld world, ServerPlayerEntity player, double x, double y, double z) {
         world.spawnParticles(
                 player,
                 P,
                 true,   // force
                 false,  // important
-                p.getX() + 0.5,
-                p.getY() + 0.5,
-                p.getZ() + 0.5,
+                x,
+                y,
+                z,
                 2,
                 0.0, 0.03, 0.03,
                 0.0
@@ -238,50 +232,18 @@ public final class PreviewService {
 
     // ---------------- Data ----------------
 
-    private enum Type { BOX, SPHERE, CYLINDER, PYRAMID }
-
-    private record BoxData(BlockPos base, Direction f, Direction s, int ow, int oh, int od, int minW, int maxW) {}
-    private record SphereData(BlockPos center, int radius) {}
-    private record CylinderData(BlockPos base, int radius, int height) {}
-    private record PyramidData(BlockPos base, int baseSize, int height) {}
-
     private static final class PreviewRequest {
-        final Type type;
+        /** Packed {@link BlockPos#asLong} positions. */
+        final long[] points;
         final long expiresAtTick;
-        final int refreshEvery;
-        long nextSpawnTick;
-
-        final BoxData box;
-        final SphereData sphere;
-        final CylinderData cylinder;
-        final PyramidData pyramid;
+        /** Points per tick that show the whole set once every {@link #DEFAULT_REFRESH_EVERY} ticks. */
+        final int perTick;
+        int cursor;
 
-        private PreviewRequest(Type type, long expiresAtTick, int refreshEvery, long nextSpawnTick,
-                               BoxData box, SphereData sphere, CylinderData cylinder, PyramidData pyramid) {
-            this.type = type;
+        PreviewRequest(long[] points, long expiresAtTick) {
+            this.points = points;
             this.expiresAtTick = expiresAtTick;
-            this.refreshEvery = refreshEvery;
-            this.nextSpawnTick = nextSpawnTick;
-            this.box = box;
-            this.sphere = sphere;
-            this.cylinder = cylinder;
-            this.pyramid = pyramid;
-        }
-
-        static PreviewRequest box(UUID playerId, long nowTick, BoxData d) {
-            return new PreviewRequest(Type.BOX, nowTick + PreviewService.DEFAULT_DURATION_TICKS, PreviewService.DEFAULT_REFRESH_EVERY, nowTick, d, null, null, null);
-        }
-
-        static PreviewRequest sphere(UUID playerId, long nowTick, SphereData d) {
-            return new PreviewRequest(Type.SPHERE, nowTick + PreviewService.DEFAULT_DURATION_TICKS, PreviewService.DEFAULT_REFRESH_EVERY, nowTick, null, d, null, null);
-        }
-
-        static PreviewRequest cylinder(UUID playerId, long nowTick, CylinderData d) {
-            return new PreviewRequest(Type.CYLINDER, nowTick + PreviewService.DEFAULT_DURATION_TICKS, PreviewService.DEFAULT_REFRESH_EVERY, nowTick, null, null, d, null);
-        }
-
-        static PreviewRequest pyramid(UUID playerId, long nowTick, PyramidData d) {
-            return new PreviewRequest(Type.PYRAMID, nowTick + PreviewService.DEFAULT_DURATION_TICKS, PreviewService.DEFAULT_REFRESH_EVERY, nowTick, null, null, null, d);
+            this.perTick = (points.length + DEFAULT_REFRESH_EVERY - 1) / DEFAULT_REFRESH_EVERY;
         }
     }
 }
@@ -0,0 +1,221 @@
+/**
+ * Named boxes nobody but their owner (and admins) may edit, e.g. spawn or other players' builds. Regions are
+ * stored in the world folder and indexed by chunk, so an edit asks once per chunk section whether the section
+ * is fully allowed, fully denied or denied only at some positions, instead of testing boxes per block.
+ */
+
+package jason.voxelcleaner.core;
+
+import jason.voxelcleaner.history.HistoryWriter;
+import jason.voxelcleaner.model.SectionSnapshot;
+import jason.voxelcleaner.util.CommandUtil;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.nbt.NbtIo;
+import net.minecraft.nbt.NbtList;
+import net.minecraft.nbt.NbtSizeTracker;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.network.ServerPlayerEntity;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.WorldSavePath;
+import net.minecraft.util.math.BlockBox;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.util.math.ChunkSectionPos;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.LongConsumer;
+
+public final class ProtectedRegions {
+    private ProtectedRegions() {}
+
+    /** Protected box in one dimension; {@code owner} (may be null) can still edit inside it. */
+    public record Region(String name, String dimension, BlockBox box, UUID owner) {}
+
+    /**
+     * Which positions of a section an edit must leave alone. Server thread only.
+     */
+    @FunctionalInterface
+    public interface SectionAccess {
+        /**
+         * @return null if the whole section may be edited, {@link #ALL} if none of it, otherwise a mask of
+         * {@link SectionSnapshot#MASK_WORDS} words with a bit per denied local index {@code (y << 8) | (z << 4) | x}
+         */
+        long[] denied(long sectionKey);
+    }
+
+    /** Denied mask of a section that is denied as a whole; never modified. */
+    public static final long[] ALL = filled();
+
+    private static final Map<String, Region> REGIONS = new LinkedHashMap<>();
+    /** Dimension -> chunk key -> regions overlapping that chunk. */
+    private static final Map<String, Long2ObjectOpenHashMap<List<Region>>> INDEX = new HashMap<>();
+    private static Path file;
+
+    private static long[] filled() {
+        long[] all = new long[SectionSnapshot.MASK_WORDS];
+        Arrays.fill(all, -1L);
+        return all;
+    }
+
+    // ---------------------------------------------------------------------
+    // Lifecycle / persistence
+    // ---------------------------------------------------------------------
+
+    /** Reads the regions of the server's world; called when the server starts. */
+    public static void load(MinecraftServer server) {
+        REGIONS.clear();
+        INDEX.clear();
+        file = server.getSavePath(WorldSavePath.ROOT).resolve("voxelcleaner").resolve("regions.dat");
+
+        try {
+            if (!Files.exists(file)) return;
+            NbtCompound root = NbtIo.readCompressed(file, NbtSizeTracker.ofUnlimitedBytes());
+            NbtList list = root.getList("regions").orElse(new NbtList());
+            for (int i = 0; i < list.size(); i++) {
+                NbtCompound tag = list.getCompound(i).orElse(new NbtCompound());
+                String owner = tag.getString("owner").orElse("");
+                Region region = new Region(tag.getString("name").orElse(""), tag.getString("dim").orElse(""),
+                        new BlockBox(tag.getInt("minX").orElse(0), tag.getInt("minY").orElse(0), tag.getInt("minZ").orElse(0),
+                                tag.getInt("maxX").orElse(0), tag.getInt("maxY").orElse(0), tag.getInt("maxZ").orElse(0)),
+                        owner.isEmpty() ? null : UUID.fromString(owner));
+                put(region);
+            }
+        } catch (Exception ignored) {
+            // a broken file leaves the world unprotected rather than blocking the server
+        }
+    }
+
+    private static void save() {
+        if (file == null) return;
+
+        NbtList list = new NbtList();
+        for (Region r : REGIONS.values()) {
+            NbtCompound tag = new NbtCompound();
+            tag.putString("name", r.name());
+            tag.putString("dim", r.dimension());
+            tag.putInt("minX", r.box().getMinX());
+            tag.putInt("minY", r.box().getMinY());
+            tag.putInt("minZ", r.box().getMinZ());
+            tag.putInt("maxX", r.box().getMaxX());
+            tag.putInt("maxY", r.box().getMaxY());
+            tag.putInt("maxZ", r.box().getMaxZ());
+            if (r.owner() != null) tag.putString("owner", r.owner().toString());
+            list.add(tag);
+        }
+        NbtCompound root = new NbtCompound();
+        root.put("regions", list);
+
+        Path target = file;
+        HistoryWriter.execute(() -> {
+            try {
+                HistoryWriter.writeAtomically(target, tmp -> NbtIo.writeCompressed(root, tmp));
+            } catch (Exception ignored) {
+            }
+        });
+    }
+
+    // ---------------------------------------------------------------------
+    // Management
+    // ---------------------------------------------------------------------
+
+    /** @return false if a region with that name exists already */
+    public static boolean add(Region region) {
+        if (REGIONS.containsKey(region.name())) return false;
+        put(region);
+        save();
+        return true;
+    }
+
+    public static boolean remove(String name) {
+        Region region = REGIONS.remove(name);
+        if (region == null) return false;
+
+        Long2ObjectOpenHashMap<List<Region>> chunks = INDEX.get(region.dimension());
+        forEachChunk(region.box(), key -> {
+            List<Region> list = chunks.get(key);
+            list.remove(region);
+            if (list.isEmpty()) chunks.remove(key);
+        });
+        save();
+        return true;
+    }
+
+    public static Collection<Region> all() {
+        return Collections.unmodifiableCollection(REGIONS.values());
+    }
+
+    private static void put(Region region) {
+        REGIONS.put(region.name(), region);
+        Long2ObjectOpenHashMap<List<Region>> chunks = INDEX.computeIfAbsent(region.dimension(), d -> new Long2ObjectOpenHashMap<>());
+        forEachChunk(region.box(), key -> chunks.computeIfAbsent(key, k -> new ArrayList<>(2)).add(region));
+    }
+
+    private static void forEachChunk(BlockBox box, LongConsumer action) {
+        for (int cz = box.getMinZ() >> 4; cz <= box.getMaxZ() >> 4; cz++) {
+            for (int cx = box.getMinX() >> 4; cx <= box.getMaxX() >> 4; cx++) action.accept(ChunkPos.toLong(cx, cz));
+        }
+    }
+
+    // ---------------------------------------------------------------------
+    // Queries
+    // ---------------------------------------------------------------------
+
+    /**
+     * Access of {@code player} to the sections of {@code world}, or null if nothing there is protected against
+     * them (no regions in the dimension, or an admin).
+     */
+    public static SectionAccess accessFor(ServerPlayerEntity player, ServerWorld world) {
+        Long2ObjectOpenHashMap<List<Region>> chunks = INDEX.get(world.getRegistryKey().getValue().toString());
+        if (chunks == null || chunks.isEmpty() || CommandUtil.isAdmin(player.getCommandSource())) return null;
+
+        UUID id = player.getUuid();
+        return key -> {
+            List<Region> regions = chunks.get(ChunkPos.toLong(ChunkSectionPos.unpackX(key), ChunkSectionPos.unpackZ(key)));
+            if (regions == null) return null;
+
+            int bx = ChunkSectionPos.getBlockCoord(ChunkSectionPos.unpackX(key));
+            int by = ChunkSectionPos.getBlockCoord(ChunkSectionPos.unpackY(key));
+            int bz = ChunkSectionPos.getBlockCoord(ChunkSectionPos.unpackZ(key));
+
+            long[] mask = null;
+            for (Region r : regions) {
+                if (id.equals(r.owner())) continue;
+
+                BlockBox b = r.box();
+                int x0 = Math.max(bx, b.getMinX()) - bx, x1 = Math.min(bx + 15, b.getMaxX()) - bx;
+                int y0 = Math.max(by, b.getMinY()) - by, y1 = Math.min(by + 15, b.getMaxY()) - by;
+                int z0 = Math.max(bz, b.getMinZ()) - bz, z1 = Math.min(bz + 15, b.getMaxZ()) - bz;
+                if (x0 > x1 || y0 > y1 || z0 > z1) continue;
+                if (x0 == 0 && x1 == 15 && y0 == 0 && y1 == 15 && z0 == 0 && z1 == 15) return ALL;
+
+                if (mask == null) mask = new long[SectionSnapshot.MASK_WORDS];
+                // a row of 16 x positions is a 16-bit lane of one word
+                long lane = ((1L << (x1 - x0 + 1)) - 1) << x0;
+                for (int y = y0; y <= y1; y++) {
+                    for (int z = z0; z <= z1; z++) {
+                        int local = (y << 8) | (z << 4);
+                        mask[local >>> 6] |= lane << (local & 63);
+                    }
+                }
+            }
+            return mask;
+        };
+    }
+
+    /** Whether {@code mask} (as returned by {@link SectionAccess#denied}) denies local index {@code local}. */
+    public static boolean isDenied(long[] mask, int local) {
+        return mask != null && (mask[local >>> 6] & (1L << (local & 63))) != 0;
+    }
+}
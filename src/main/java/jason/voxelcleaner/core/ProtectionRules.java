@@ -1,17 +1,111 @@
 /**
- * Encapsulates rules that prevent protected blocks from being modified.
+ * Encapsulates rules that prevent protected blocks from being modified. The configured block IDs, block tags and
+ * the block-entity rule are compiled into a table indexed by raw block-state id whenever the server's data is
+ * (re)loaded, so a check costs the same no matter how many rules there are.
  */
 
 package jason.voxelcleaner.core;
 
+import jason.voxelcleaner.config.VoxelConfig;
+
+import net.minecraft.block.Block;
 import net.minecraft.block.BlockState;
 import net.minecraft.block.Blocks;
+import net.minecraft.registry.Registries;
+import net.minecraft.registry.RegistryKeys;
+import net.minecraft.registry.tag.TagKey;
+import net.minecraft.util.Identifier;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Predicate;
 
 public final class ProtectionRules {
     private ProtectionRules() {}
 
+    /** Protected raw state ids; replaced as a whole and never mutated afterwards, so planner threads may read it. */
+    private static volatile BitSet table = new BitSet();
+
+    /** Receives positions an operation wanted to change but left alone; must be thread-safe. */
+    public interface SkipCounter {
+        void protectedBlocks(long positions);
+
+        void bedrock(long positions);
+    }
+
+    /**
+     * Rebuilds the table from {@link VoxelConfig}. Call once the block tags are bound (server start, data pack
+     * reload); unknown IDs and tags are ignored.
+     */
+    public static void compile() {
+        VoxelConfig.Values cfg = VoxelConfig.get();
+        Set<Block> blocks = new HashSet<>();
+        for (String id : cfg.protectedBlocks()) {
+            Identifier key = Identifier.tryParse(id);
+            if (key != null) Registries.BLOCK.getOptionalValue(key).ifPresent(blocks::add);
+        }
+
+        List<TagKey<Block>> tags = new ArrayList<>();
+        for (String id : cfg.protectedTags()) {
+            Identifier key = Identifier.tryParse(id.startsWith("#") ? id.substring(1) : id);
+            if (key != null) tags.add(TagKey.of(RegistryKeys.BLOCK, key));
+        }
+
+        BitSet compiled = new BitSet(Block.STATE_IDS.size());
+        for (BlockState state : Block.STATE_IDS) {
+            boolean prot = cfg.protectBlockEntities() && state.hasBlockEntity() || blocks.contains(state.getBlock());
+            for (int i = 0; !prot && i < tags.size(); i++) prot = state.isIn(tags.get(i));
+            if (prot) compiled.set(Block.getRawIdFromState(state));
+        }
+        table = compiled;
+    }
+
     public static boolean isProtected(BlockState s) {
-        if (s.hasBlockEntity()) return true;
-        return s.getBlock() == Blocks.SPAWNER;
+        return table.get(Block.getRawIdFromState(s));
+    }
+
+    /**
+     * Wraps what an operation wants to place with the protection checks: bedrock (if {@code keepBedrock}) and,
+     * unless {@code force}, protected blocks are left alone. Only planning reports them to {@code skips} (may be
+     * null), once per position; re-decisions of changed positions are not counted again.
+     */
+    public static EditPlan.Decision guard(EditPlan.Decision wanted, boolean force, boolean keepBedrock, SkipCounter skips) {
+        // the checks only look at the state, so the section shortcuts of wanted still hold
+        BitSet prot = table;
+        return new EditPlan.Decision() {
+            @Override
+            public BlockState target(BlockState st, RegionKernel cursor) {
+                return decide(st, cursor, 0);
+            }
+
+            @Override
+            public BlockState decide(BlockState st, RegionKernel cursor, long positions) {
+                BlockState target = wanted.target(st, cursor);
+                if (target == null || target.equals(st)) return null;
+
+                if (keepBedrock && st.getBlock() == Blocks.BEDROCK) {
+                    if (skips != null && positions > 0) skips.bedrock(positions);
+                    return null;
+                }
+                if (!force && prot.get(Block.getRawIdFromState(st))) {
+                    if (skips != null && positions > 0) skips.protectedBlocks(positions);
+                    return null;
+                }
+                return target;
+            }
+
+            @Override
+            public Predicate<BlockState> candidates(RegionKernel section) {
+                return wanted.candidates(section);
+            }
+
+            @Override
+            public boolean uniformIn(RegionKernel section) {
+                return wanted.uniformIn(section);
+            }
+        };
     }
 }
@@ -0,0 +1,325 @@
+/**
+ * Allocation-free cursor over an axis-aligned block box, clamped to the world's build height and walked
+ * section by section (x innermost, then z, then y inside each 16³ section) with a single mutable position.
+ * With a {@link VoxelMask} only the mask's set positions are visited, run by run along each row.
+ */
+
+package jason.voxelcleaner.core;
+
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkSectionPos;
+import net.minecraft.util.math.Direction;
+import net.minecraft.world.HeightLimitView;
+
+import java.util.Arrays;
+
+public final class RegionKernel {
+
+    /** Position lies on the outer face of the (unclamped) box. */
+    public static final int SHELL = 1;
+    /** Position lies in the bottom layer of the box. */
+    public static final int FLOOR = 2;
+    /** Position lies in the top layer of the box. */
+    public static final int CEILING = 4;
+
+    private final int minX, minY, minZ, maxX, maxY, maxZ;
+    private final int clampedMinY, clampedMaxY;
+    /** Null for a full box. */
+    private final VoxelMask mask;
+    private final long volume;
+
+    private final int sxMin, sxMax, syMin, syMax, szMin, szMax;
+    private int sx, sy, sz;
+    private int x0, x1, y0, y1, z0, z1;
+
+    private final BlockPos.Mutable pos = new BlockPos.Mutable();
+    private int x, y, z;
+    /** Last x of the current run of consecutive positions. */
+    private int xEnd;
+    private boolean started;
+    private boolean done;
+
+    private RegionKernel(HeightLimitView world, int minX, int minY, int minZ, int maxX, int maxY, int maxZ,
+                         VoxelMask mask) {
+        this(minX, minY, minZ, maxX, maxY, maxZ, mask,
+                Math.max(minY, world.getBottomY()), Math.min(maxY, world.getTopYInclusive()),
+                ChunkSectionPos.getSectionCoord(minX), ChunkSectionPos.getSectionCoord(maxX),
+                ChunkSectionPos.getSectionCoord(Math.max(minY, world.getBottomY())),
+                ChunkSectionPos.getSectionCoord(Math.min(maxY, world.getTopYInclusive())),
+                ChunkSectionPos.getSectionCoord(minZ), ChunkSectionPos.getSectionCoord(maxZ));
+    }
+
+    private RegionKernel(int minX, int minY, int minZ, int maxX, int maxY, int maxZ, VoxelMask mask,
+                         int clampedMinY, int clampedMaxY,
+                         int sxMin, int sxMax, int syMin, int syMax, int szMin, int szMax) {
+        this.minX = minX;
+        this.minY = minY;
+        this.minZ = minZ;
+        this.maxX = maxX;
+        this.maxY = maxY;
+        this.maxZ = maxZ;
+        this.mask = mask;
+
+        this.clampedMinY = clampedMinY;
+        this.clampedMaxY = clampedMaxY;
+
+        this.sxMin = sxMin;
+        this.sxMax = sxMax;
+        this.syMin = syMin;
+        this.syMax = syMax;
+        this.szMin = szMin;
+        this.szMax = szMax;
+
+        boolean empty = minX > maxX || minZ > maxZ || clampedMinY > clampedMaxY;
+        if (empty) {
+            this.volume = 0;
+        } else if (mask == null) {
+            this.volume = (long) spanOf(minX, maxX, sxMin, sxMax)
+                    * spanOf(clampedMinY, clampedMaxY, syMin, syMax)
+                    * spanOf(minZ, maxZ, szMin, szMax);
+        } else {
+            this.volume = maskVolume();
+        }
+        this.done = volume == 0;
+    }
+
+    /** Set positions of the mask inside this cursor's sections; counted a word at a time. */
+    private long maskVolume() {
+        int lx = Math.max(minX, ChunkSectionPos.getBlockCoord(sxMin));
+        int hx = Math.min(maxX, ChunkSectionPos.getBlockCoord(sxMax) + 15);
+        int ly = Math.max(clampedMinY, ChunkSectionPos.getBlockCoord(syMin));
+        int hy = Math.min(clampedMaxY, ChunkSectionPos.getBlockCoord(syMax) + 15);
+        int lz = Math.max(minZ, ChunkSectionPos.getBlockCoord(szMin));
+        int hz = Math.min(maxZ, ChunkSectionPos.getBlockCoord(szMax) + 15);
+
+        long n = 0;
+        for (int wy = ly; wy <= hy; wy++) {
+            for (int wz = lz; wz <= hz; wz++) {
+                for (int wx = lx; wx <= hx; wx += 64) {
+                    n += Long.bitCount(mask.window(wy, wz, wx) & lowBits(hx - wx + 1));
+                }
+            }
+        }
+        return n;
+    }
+
+    /** Number of coordinates in {@code min..max} that fall into the sections {@code sMin..sMax}. */
+    private static int spanOf(int min, int max, int sMin, int sMax) {
+        int lo = Math.max(min, ChunkSectionPos.getBlockCoord(sMin));
+        int hi = Math.min(max, ChunkSectionPos.getBlockCoord(sMax) + 15);
+        return Math.max(0, hi - lo + 1);
+    }
+
+    /** Box given by two inclusive corners in world coordinates. */
+    public static RegionKernel of(HeightLimitView world, int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+        return new RegionKernel(world,
+                Math.min(minX, maxX), Math.min(minY, maxY), Math.min(minZ, maxZ),
+                Math.max(minX, maxX), Math.max(minY, maxY), Math.max(minZ, maxZ), null);
+    }
+
+    /**
+     * Set positions of {@code mask}. Flags and relative coordinates refer to the mask's bounding box; the box's
+     * outer face is not necessarily the mask's surface, use {@link VoxelMask#shell()} for that.
+     */
+    public static RegionKernel masked(HeightLimitView world, VoxelMask mask) {
+        return new RegionKernel(world, mask.minX(), mask.minY(), mask.minZ(), mask.maxX(), mask.maxY(), mask.maxZ(), mask);
+    }
+
+    /**
+     * Box spanned by {@code od} blocks along {@code facing} and the widths {@code minW..minW + ow - 1} along
+     * {@code sideways}, starting at {@code base} and extending {@code oh} blocks upwards.
+     */
+    public static RegionKernel oriented(HeightLimitView world, BlockPos base, Direction facing, Direction sideways,
+                                        int ow, int oh, int od, int minW) {
+        int maxW = minW + ow - 1;
+
+        int ax = base.getX() + sideways.getOffsetX() * minW;
+        int az = base.getZ() + sideways.getOffsetZ() * minW;
+        int bx = base.getX() + facing.getOffsetX() * (od - 1) + sideways.getOffsetX() * maxW;
+        int bz = base.getZ() + facing.getOffsetZ() * (od - 1) + sideways.getOffsetZ() * maxW;
+
+        return of(world, ax, base.getY(), az, bx, base.getY() + oh - 1, bz);
+    }
+
+    /** Every position of the (unclamped) box as a mask, as the starting point for composite selections. */
+    public VoxelMask boxMask() {
+        return VoxelMask.box(minX, minY, minZ, maxX, maxY, maxZ);
+    }
+
+    /** Number of positions the cursor will visit (after clamping). */
+    public long volume() {
+        return volume;
+    }
+
+    /**
+     * Packed {@link ChunkSectionPos} keys of every section the box touches, in visiting order; with a mask only
+     * sections that contain some of its positions (a hollow sphere skips its inside).
+     */
+    public long[] sectionKeys() {
+        if (volume == 0) return new long[0];
+
+        long[] keys = new long[(sxMax - sxMin + 1) * (syMax - syMin + 1) * (szMax - szMin + 1)];
+        int n = 0;
+        for (int cy = syMin; cy <= syMax; cy++) {
+            for (int cz = szMin; cz <= szMax; cz++) {
+                for (int cx = sxMin; cx <= sxMax; cx++) {
+                    long key = ChunkSectionPos.asLong(cx, cy, cz);
+                    if (mask != null && clip(key).volume() == 0) continue;
+                    keys[n++] = key;
+                }
+            }
+        }
+        return n == keys.length ? keys : Arrays.copyOf(keys, n);
+    }
+
+    /**
+     * Fresh cursor over the part of this box inside one section. Flags and relative coordinates still refer to
+     * the whole box, so several threads can each walk their own section independently.
+     */
+    public RegionKernel clip(long sectionKey) {
+        int cx = ChunkSectionPos.unpackX(sectionKey);
+        int cy = ChunkSectionPos.unpackY(sectionKey);
+        int cz = ChunkSectionPos.unpackZ(sectionKey);
+        return new RegionKernel(minX, minY, minZ, maxX, maxY, maxZ, mask, clampedMinY, clampedMaxY, cx, cx, cy, cy, cz, cz);
+    }
+
+    /** Whether any position this cursor visits lies on the outer face of the box, see {@link #SHELL}. */
+    public boolean touchesShell() {
+        if (volume == 0) return false;
+        return ChunkSectionPos.getBlockCoord(sxMin) <= minX || ChunkSectionPos.getBlockCoord(sxMax) + 15 >= maxX
+                || ChunkSectionPos.getBlockCoord(szMin) <= minZ || ChunkSectionPos.getBlockCoord(szMax) + 15 >= maxZ
+                || ChunkSectionPos.getBlockCoord(syMin) <= minY || ChunkSectionPos.getBlockCoord(syMax) + 15 >= maxY;
+    }
+
+    /**
+     * Places the cursor on an arbitrary position so {@link #flags()} and the {@code rel*} offsets describe it;
+     * meant for cursors that are not iterated with {@link #next()}.
+     */
+    public BlockPos.Mutable moveTo(int x, int y, int z) {
+        this.x = x;
+        this.y = y;
+        this.z = z;
+        return pos.set(x, y, z);
+    }
+
+    /**
+     * Advances to the next position.
+     *
+     * @return false once every position has been visited
+     */
+    public boolean next() {
+        if (done) return false;
+
+        if (!started) {
+            started = true;
+            sx = sxMin;
+            sy = syMin;
+            sz = szMin;
+            enterSection();
+        } else {
+            x++;
+        }
+
+        while (x > xEnd) {
+            if (mask != null && nextRun()) break;
+            if (!nextRow()) {
+                done = true;
+                return false;
+            }
+        }
+
+        pos.set(x, y, z);
+        return true;
+    }
+
+    private boolean nextRow() {
+        if (++z > z1) {
+            z = z0;
+            if (++y > y1) return nextSection();
+        }
+        beginRow();
+        return true;
+    }
+
+    private void beginRow() {
+        x = x0;
+        // with a mask: empty run, next() moves on to the row's first run of set bits
+        xEnd = mask == null ? x1 : x0 - 1;
+    }
+
+    /** Moves to the next run of set mask bits after the current one, within the section's part of the row. */
+    private boolean nextRun() {
+        for (int wx = xEnd + 1; wx <= x1; wx += 64) {
+            long bits = mask.window(y, z, wx) & lowBits(x1 - wx + 1);
+            if (bits == 0) continue;
+
+            int a = wx + Long.numberOfTrailingZeros(bits);
+            int b = a;
+            while (b < x1) {
+                int ones = Long.numberOfTrailingZeros(~mask.window(y, z, b + 1));
+                b = Math.min(x1, b + ones);
+                if (ones < 64) break;
+            }
+            x = a;
+            xEnd = b;
+            return true;
+        }
+        return false;
+    }
+
+    /** The lowest {@code n} bits (all of them for {@code n >= 64}). */
+    private static long lowBits(int n) {
+        return n >= 64 ? -1L : (1L << n) - 1;
+    }
+
+    private boolean nextSection() {
+        if (++sx > sxMax) {
+            sx = sxMin;
+            if (++sz > szMax) {
+                sz = szMin;
+                if (++sy > syMax) return false;
+            }
+        }
+        enterSection();
+        return true;
+    }
+
+    private void enterSection() {
+        x0 = Math.max(minX, ChunkSectionPos.getBlockCoord(sx));
+        x1 = Math.min(maxX, ChunkSectionPos.getBlockCoord(sx) + 15);
+        y0 = Math.max(clampedMinY, ChunkSectionPos.getBlockCoord(sy));
+        y1 = Math.min(clampedMaxY, ChunkSectionPos.getBlockCoord(sy) + 15);
+        z0 = Math.max(minZ, ChunkSectionPos.getBlockCoord(sz));
+        z1 = Math.min(maxZ, ChunkSectionPos.getBlockCoord(sz) + 15);
+        y = y0;
+        z = z0;
+        beginRow();
+    }
+
+    /** Current position; mutated by {@link #next()}, call {@code toImmutable()} before keeping it. */
+    public BlockPos.Mutable pos() {
+        return pos;
+    }
+
+    /** {@link #SHELL}, {@link #FLOOR} and {@link #CEILING} bits of the current position. */
+    public int flags() {
+        int flags = 0;
+        if (y == minY) flags |= FLOOR | SHELL;
+        if (y == maxY) flags |= CEILING | SHELL;
+        if (x == minX || x == maxX || z == minZ || z == maxZ) flags |= SHELL;
+        return flags;
+    }
+
+    /** Offsets of the current position from the box's minimum corner. */
+    public int relX() {
+        return x - minX;
+    }
+
+    public int relY() {
+        return y - minY;
+    }
+
+    public int relZ() {
+        return z - minZ;
+    }
+}
@@ -0,0 +1,196 @@
+/**
+ * Buffers block changes per chunk section and writes them directly into the section's paletted container.
+ * The bulk path skips neighbor and shape updates on purpose: heightmaps, lighting and POIs are kept in sync,
+ * and clients receive one delta packet per section through the chunk holder. Changes involving block entities
+ * always go through {@link ServerWorld#setBlockState} so those are created and removed the vanilla way.
+ */
+
+package jason.voxelcleaner.core;
+
+import jason.voxelcleaner.config.VoxelConfig;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectLinkedOpenHashMap;
+
+import net.minecraft.block.BlockState;
+import net.minecraft.server.world.ServerChunkManager;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkSectionPos;
+import net.minecraft.world.Heightmap;
+import net.minecraft.world.chunk.ChunkSection;
+import net.minecraft.world.chunk.WorldChunk;
+import net.minecraft.world.chunk.light.LightingProvider;
+
+import java.util.Arrays;
+
+public final class SectionWriter {
+
+    private static final Heightmap.Type[] TRACKED_HEIGHTMAPS = {
+            Heightmap.Type.MOTION_BLOCKING,
+            Heightmap.Type.MOTION_BLOCKING_NO_LEAVES,
+            Heightmap.Type.OCEAN_FLOOR,
+            Heightmap.Type.WORLD_SURFACE
+    };
+
+    private final ServerWorld world;
+    private final boolean bulk;
+    private final Long2ObjectLinkedOpenHashMap<Pending> pending = new Long2ObjectLinkedOpenHashMap<>();
+
+    // consecutive changes usually hit the same section
+    private long lastKey;
+    private Pending lastPending;
+
+    private SectionWriter(ServerWorld world, boolean bulk) {
+        this.world = world;
+        this.bulk = bulk;
+    }
+
+    /** Writer using the backend selected by the {@code bulkWrites} setting. */
+    public static SectionWriter create(ServerWorld world) {
+        return new SectionWriter(world, VoxelConfig.get().bulkWrites());
+    }
+
+    public ServerWorld world() {
+        return world;
+    }
+
+    /** Queues a change; in per-block mode it is applied immediately with flags 3. */
+    public void set(BlockPos pos, BlockState state) {
+        if (!bulk) {
+            world.setBlockState(pos, state, 3);
+            return;
+        }
+        if (world.isOutOfHeightLimit(pos.getY())) return;
+
+        long key = ChunkSectionPos.asLong(
+                ChunkSectionPos.getSectionCoord(pos.getX()),
+                ChunkSectionPos.getSectionCoord(pos.getY()),
+                ChunkSectionPos.getSectionCoord(pos.getZ()));
+        pendingFor(key).add(localIndex(pos.getX(), pos.getY(), pos.getZ()), state);
+    }
+
+    /**
+     * Queues a change addressed by section key and local index ({@code y << 8 | z << 4 | x}), as stored by
+     * section snapshots; avoids building a block position per change.
+     */
+    public void set(long sectionKey, int local, BlockState state) {
+        int sx = ChunkSectionPos.unpackX(sectionKey);
+        int sy = ChunkSectionPos.unpackY(sectionKey);
+        int sz = ChunkSectionPos.unpackZ(sectionKey);
+
+        if (!bulk) {
+            BlockPos pos = new BlockPos(
+                    ChunkSectionPos.getBlockCoord(sx) + (local & 15),
+                    ChunkSectionPos.getBlockCoord(sy) + ((local >> 8) & 15),
+                    ChunkSectionPos.getBlockCoord(sz) + ((local >> 4) & 15));
+            world.setBlockState(pos, state, 3);
+            return;
+        }
+        if (world.isOutOfHeightLimit(ChunkSectionPos.getBlockCoord(sy))) return;
+
+        pendingFor(sectionKey).add(local, state);
+    }
+
+    private Pending pendingFor(long key) {
+        if (lastPending != null && lastKey == key) return lastPending;
+
+        Pending p = pending.get(key);
+        if (p == null) {
+            p = new Pending();
+            pending.put(key, p);
+        }
+        lastKey = key;
+        lastPending = p;
+        return p;
+    }
+
+    /**
+     * Writes all queued changes section by section.
+     *
+     * @return number of blocks whose state actually changed
+     */
+    public int flush() {
+        if (pending.isEmpty()) return 0;
+
+        ServerChunkManager chunkManager = world.getChunkManager();
+        LightingProvider light = chunkManager.getLightingProvider();
+        BlockPos.Mutable pos = new BlockPos.Mutable();
+
+        int written = 0;
+        for (var e : pending.long2ObjectEntrySet()) {
+            long key = e.getLongKey();
+            Pending p = e.getValue();
+
+            int sx = ChunkSectionPos.unpackX(key);
+            int sy = ChunkSectionPos.unpackY(key);
+            int sz = ChunkSectionPos.unpackZ(key);
+
+            WorldChunk chunk = world.getChunk(sx, sz);
+            ChunkSection section = chunk.getSection(chunk.getSectionIndex(ChunkSectionPos.getBlockCoord(sy)));
+            boolean wasEmpty = section.isEmpty();
+            boolean changedAny = false;
+
+            for (int i = 0; i < p.size; i++) {
+                int local = p.locals[i];
+                int lx = local & 15;
+                int lz = (local >> 4) & 15;
+                int ly = (local >> 8) & 15;
+                pos.set(ChunkSectionPos.getBlockCoord(sx) + lx, ChunkSectionPos.getBlockCoord(sy) + ly, ChunkSectionPos.getBlockCoord(sz) + lz);
+
+                BlockState state = p.states[i];
+                BlockState old = section.getBlockState(lx, ly, lz);
+                if (old == state) continue;
+
+                if (old.hasBlockEntity() || state.hasBlockEntity()) {
+                    if (world.setBlockState(pos, state, 3)) written++;
+                    continue;
+                }
+
+                section.setBlockState(lx, ly, lz, state);
+
+                for (Heightmap.Type type : TRACKED_HEIGHTMAPS) {
+                    chunk.getHeightmap(type).trackUpdate(lx, pos.getY(), lz, state);
+                }
+
+                light.checkBlock(pos);
+                chunkManager.markForUpdate(pos);
+                world.onBlockStateChanged(pos, old, state);
+
+                changedAny = true;
+                written++;
+            }
+
+            if (changedAny) {
+                boolean isEmpty = section.isEmpty();
+                if (wasEmpty != isEmpty) {
+                    light.setSectionStatus(ChunkSectionPos.from(sx, sy, sz), isEmpty);
+                }
+                chunk.markNeedsSaving();
+            }
+        }
+
+        pending.clear();
+        lastPending = null;
+        return written;
+    }
+
+    private static int localIndex(int x, int y, int z) {
+        return ((y & 15) << 8) | ((z & 15) << 4) | (x & 15);
+    }
+
+    private static final class Pending {
+        short[] locals = new short[64];
+        BlockState[] states = new BlockState[64];
+        int size;
+
+        void add(int local, BlockState state) {
+            if (size == locals.length) {
+                locals = Arrays.copyOf(locals, size * 2);
+                states = Arrays.copyOf(states, size * 2);
+            }
+            locals[size] = (short) local;
+            states[size] = state;
+            size++;
+        }
+    }
+}
@@ -0,0 +1,178 @@
+/**
+ * Shape rasterized as x-spans per (y, z) row of its bounding box, computed analytically per row. Solid shapes have
+ * one span per row; hollow ones keep only their surface, at most two spans per row, so the work grows with the
+ * surface instead of the volume. Execution (via {@link VoxelMask#of}) and {@link PreviewService} share these
+ * rasters and the placement in front of the player, so a preview always shows exactly what will be built.
+ */
+
+package jason.voxelcleaner.core;
+
+import net.minecraft.server.network.ServerPlayerEntity;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.Direction;
+
+public final class ShapeRaster {
+
+    private static final int MAX_SPANS = 2;
+
+    private final int width, height, depth;
+    /** Span bounds per row {@code y * depth + z}, relative to the box's minimum x; {@link #MAX_SPANS} slots each. */
+    private final int[] starts;
+    private final int[] ends;
+    private final byte[] counts;
+
+    private ShapeRaster(int width, int height, int depth) {
+        this.width = width;
+        this.height = height;
+        this.depth = depth;
+        int rows = height * depth;
+        this.starts = new int[rows * MAX_SPANS];
+        this.ends = new int[rows * MAX_SPANS];
+        this.counts = new byte[rows];
+    }
+
+    @FunctionalInterface
+    public interface SpanVisitor {
+        /** Row {@code (y, z)} covers {@code x0..x1}; all offsets relative to the box's minimum corner. */
+        void accept(int y, int z, int x0, int x1);
+    }
+
+    // ---------------------------------------------------------------------
+    // Shapes (box minimum corner at the origin)
+    // ---------------------------------------------------------------------
+
+    /** Sphere of {@code x² + y² + z² <= r²}; hollow keeps the part outside {@code (r - 1)²}. */
+    public static ShapeRaster sphere(int radius, boolean hollow) {
+        int size = 2 * radius + 1;
+        ShapeRaster raster = new ShapeRaster(size, size, size);
+
+        int outer = radius * radius;
+        int inner = hollow ? (radius - 1) * (radius - 1) : -1;
+        for (int y = -radius; y <= radius; y++) {
+            for (int z = -radius; z <= radius; z++) {
+                int q = y * y + z * z;
+                raster.ring(y + radius, z + radius, radius, outer - q, inner - q);
+            }
+        }
+        return raster;
+    }
+
+    /** Cylinder of {@code x² + z² <= r²}; hollow keeps the wall plus the bottom and top layer. */
+    public static ShapeRaster cylinder(int radius, int height, boolean hollow) {
+        int size = 2 * radius + 1;
+        ShapeRaster raster = new ShapeRaster(size, height, size);
+
+        int outer = radius * radius;
+        int inner = (radius - 1) * (radius - 1);
+        for (int y = 0; y < height; y++) {
+            boolean cap = y == 0 || y == height - 1;
+            for (int z = -radius; z <= radius; z++) {
+                int q = z * z;
+                raster.ring(y, z + radius, radius, outer - q, hollow && !cap ? inner - q : -1);
+            }
+        }
+        return raster;
+    }
+
+    /** Stepped pyramid narrowing from {@code base / 2} to 0; hollow keeps its faces plus the bottom and top layer. */
+    public static ShapeRaster pyramid(int baseSize, int height, boolean hollow) {
+        int half = baseSize / 2;
+        int size = 2 * half + 1;
+        ShapeRaster raster = new ShapeRaster(size, height, size);
+
+        for (int y = 0; y < height; y++) {
+            int layerHalf = Math.max(0, half - (int) Math.floor((double) y * (double) half / (double) Math.max(1, height - 1)));
+            boolean cap = y == 0 || y == height - 1;
+
+            for (int z = -layerHalf; z <= layerHalf; z++) {
+                int row = y * size + z + half;
+                if (!hollow || cap || z == -layerHalf || z == layerHalf) {
+                    raster.add(row, half - layerHalf, half + layerHalf);
+                } else {
+                    raster.add(row, half - layerHalf, half - layerHalf);
+                    raster.add(row, half + layerHalf, half + layerHalf);
+                }
+            }
+        }
+        return raster;
+    }
+
+    /**
+     * Row of a shape symmetric around {@code x = center}: every x with {@code x² <= outerLeft} that does not
+     * also satisfy {@code x² <= innerLeft} (a negative value means no interior is cut out).
+     */
+    private void ring(int y, int z, int center, int outerLeft, int innerLeft) {
+        if (outerLeft < 0) return;
+
+        int row = y * depth + z;
+        int a = isqrt(outerLeft);
+        if (innerLeft < 0) {
+            add(row, center - a, center + a);
+            return;
+        }
+
+        int b = isqrt(innerLeft);
+        if (b >= a) return;
+        add(row, center - a, center - b - 1);
+        add(row, center + b + 1, center + a);
+    }
+
+    private void add(int row, int x0, int x1) {
+        int slot = row * MAX_SPANS + counts[row];
+        starts[slot] = x0;
+        ends[slot] = x1;
+        counts[row]++;
+    }
+
+    private static int isqrt(int v) {
+        int r = (int) Math.sqrt(v);
+        while (r * r > v) r--;
+        while ((r + 1) * (r + 1) <= v) r++;
+        return r;
+    }
+
+    // ---------------------------------------------------------------------
+    // Access
+    // ---------------------------------------------------------------------
+
+    public int width() {
+        return width;
+    }
+
+    public int height() {
+        return height;
+    }
+
+    public int depth() {
+        return depth;
+    }
+
+    /** Visits every span, row by row; spans of a row are sorted and do not overlap. */
+    public void forEachSpan(SpanVisitor visitor) {
+        for (int y = 0; y < height; y++) {
+            for (int z = 0; z < depth; z++) {
+                int row = y * depth + z;
+                for (int k = 0; k < counts[row]; k++) {
+                    visitor.accept(y, z, starts[row * MAX_SPANS + k], ends[row * MAX_SPANS + k]);
+                }
+            }
+        }
+    }
+
+    // ---------------------------------------------------------------------
+    // Placement in front of the player
+    // ---------------------------------------------------------------------
+
+    /** Minimum corner of a sphere's or cylinder's box, centered {@code max(2, r + 2)} blocks ahead at the player's level. */
+    public static BlockPos roundOrigin(ServerPlayerEntity player, int radius) {
+        Direction f = player.getHorizontalFacing();
+        return player.getBlockPos().offset(f, Math.max(2, radius + 2)).add(-radius, 0, -radius);
+    }
+
+    /** Minimum corner of a pyramid's box, centered {@code max(2, base / 2 + 2)} blocks ahead at the player's level. */
+    public static BlockPos pyramidOrigin(ServerPlayerEntity player, int baseSize) {
+        int half = baseSize / 2;
+        Direction f = player.getHorizontalFacing();
+        return player.getBlockPos().offset(f, Math.max(2, half + 2)).add(-half, 0, -half);
+    }
+}
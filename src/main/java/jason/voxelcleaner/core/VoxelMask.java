@@ -0,0 +1,195 @@
+/**
+ * Set of block positions inside a bounding box, stored as packed 64-bit words per (y, z) row along x. Masks are
+ * combined word by word ({@link #union}, {@link #intersect}, {@link #subtract}, {@link #shell}, {@link #dilate}),
+ * so composite selections are computed in memory before the world is touched; {@link RegionKernel#masked} then
+ * walks the set positions section by section in a single pass. Masks are immutable once built.
+ */
+
+package jason.voxelcleaner.core;
+
+import net.minecraft.util.math.BlockPos;
+
+public final class VoxelMask {
+
+    private final int minX, minY, minZ;
+    private final int sizeX, sizeY, sizeZ;
+    private final int wordsPerRow;
+    /** Row {@code (y * sizeZ + z) * wordsPerRow}; bits past {@code sizeX} in the last word stay clear. */
+    private final long[] words;
+
+    private VoxelMask(int minX, int minY, int minZ, int sizeX, int sizeY, int sizeZ) {
+        this.minX = minX;
+        this.minY = minY;
+        this.minZ = minZ;
+        this.sizeX = Math.max(0, sizeX);
+        this.sizeY = Math.max(0, sizeY);
+        this.sizeZ = Math.max(0, sizeZ);
+        this.wordsPerRow = (this.sizeX + 63) >>> 6;
+        this.words = new long[this.sizeY * this.sizeZ * wordsPerRow];
+    }
+
+    // ---------------------------------------------------------------------
+    // Construction
+    // ---------------------------------------------------------------------
+
+    /** Every position between the two inclusive corners. */
+    public static VoxelMask box(int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+        VoxelMask m = new VoxelMask(minX, minY, minZ, maxX - minX + 1, maxY - minY + 1, maxZ - minZ + 1);
+        for (int y = minY; y <= maxY; y++) {
+            for (int z = minZ; z <= maxZ; z++) m.setRange(y, z, minX, maxX);
+        }
+        return m;
+    }
+
+    /** The positions of {@code raster} with its box's minimum corner at {@code origin}. */
+    public static VoxelMask of(BlockPos origin, ShapeRaster raster) {
+        VoxelMask m = new VoxelMask(origin.getX(), origin.getY(), origin.getZ(),
+                raster.width(), raster.height(), raster.depth());
+        raster.forEachSpan((y, z, x0, x1) ->
+                m.setRange(origin.getY() + y, origin.getZ() + z, origin.getX() + x0, origin.getX() + x1));
+        return m;
+    }
+
+    /** Sets {@code x0..x1} of row {@code (y, z)}, world coordinates inside the box; only used while building. */
+    private void setRange(int y, int z, int x0, int x1) {
+        int base = row(y, z);
+        int from = x0 - minX, to = x1 - minX;
+        for (int w = from >>> 6; w <= to >>> 6; w++) {
+            int lo = Math.max(from, w << 6) & 63;
+            int hi = Math.min(to, (w << 6) + 63) & 63;
+            words[base + w] |= (-1L >>> (63 - hi)) & (-1L << lo);
+        }
+    }
+
+    // ---------------------------------------------------------------------
+    // Algebra
+    // ---------------------------------------------------------------------
+
+    public VoxelMask union(VoxelMask other) {
+        VoxelMask out = new VoxelMask(Math.min(minX, other.minX), Math.min(minY, other.minY), Math.min(minZ, other.minZ),
+                Math.max(maxX(), other.maxX()) - Math.min(minX, other.minX) + 1,
+                Math.max(maxY(), other.maxY()) - Math.min(minY, other.minY) + 1,
+                Math.max(maxZ(), other.maxZ()) - Math.min(minZ, other.minZ) + 1);
+        return out.fill((y, z, x) -> window(y, z, x) | other.window(y, z, x));
+    }
+
+    public VoxelMask intersect(VoxelMask other) {
+        int lx = Math.max(minX, other.minX), ly = Math.max(minY, other.minY), lz = Math.max(minZ, other.minZ);
+        VoxelMask out = new VoxelMask(lx, ly, lz,
+                Math.min(maxX(), other.maxX()) - lx + 1,
+                Math.min(maxY(), other.maxY()) - ly + 1,
+                Math.min(maxZ(), other.maxZ()) - lz + 1);
+        return out.fill((y, z, x) -> window(y, z, x) & other.window(y, z, x));
+    }
+
+    public VoxelMask subtract(VoxelMask other) {
+        VoxelMask out = new VoxelMask(minX, minY, minZ, sizeX, sizeY, sizeZ);
+        return out.fill((y, z, x) -> window(y, z, x) & ~other.window(y, z, x));
+    }
+
+    /** Positions with at least one of their six neighbours outside the mask (the mask's surface). */
+    public VoxelMask shell() {
+        VoxelMask out = new VoxelMask(minX, minY, minZ, sizeX, sizeY, sizeZ);
+        return out.fill((y, z, x) -> {
+            long self = window(y, z, x);
+            long inner = self & window(y, z, x - 1) & window(y, z, x + 1)
+                    & window(y - 1, z, x) & window(y + 1, z, x)
+                    & window(y, z - 1, x) & window(y, z + 1, x);
+            return self & ~inner;
+        });
+    }
+
+    /** The mask grown by one block towards all six neighbours. */
+    public VoxelMask dilate() {
+        VoxelMask out = new VoxelMask(minX - 1, minY - 1, minZ - 1, sizeX + 2, sizeY + 2, sizeZ + 2);
+        return out.fill((y, z, x) -> window(y, z, x) | window(y, z, x - 1) | window(y, z, x + 1)
+                | window(y - 1, z, x) | window(y + 1, z, x)
+                | window(y, z - 1, x) | window(y, z + 1, x));
+    }
+
+    @FunctionalInterface
+    private interface WordFunction {
+        /** Bits for world x {@code x..x + 63} of row {@code (y, z)}. */
+        long apply(int y, int z, int x);
+    }
+
+    private VoxelMask fill(WordFunction f) {
+        for (int y = 0; y < sizeY; y++) {
+            for (int z = 0; z < sizeZ; z++) {
+                int base = (y * sizeZ + z) * wordsPerRow;
+                for (int w = 0; w < wordsPerRow; w++) {
+                    words[base + w] = f.apply(minY + y, minZ + z, minX + (w << 6)) & validBits(w);
+                }
+            }
+        }
+        return this;
+    }
+
+    private long validBits(int w) {
+        int left = sizeX - (w << 6);
+        return left >= 64 ? -1L : (1L << left) - 1;
+    }
+
+    // ---------------------------------------------------------------------
+    // Access
+    // ---------------------------------------------------------------------
+
+    /**
+     * 64 bits of row {@code (y, z)} starting at world x {@code x}; bit {@code i} stands for {@code x + i}.
+     * Everything outside the box reads as clear.
+     */
+    public long window(int y, int z, int x) {
+        int ry = y - minY, rz = z - minZ;
+        if (ry < 0 || ry >= sizeY || rz < 0 || rz >= sizeZ) return 0L;
+
+        int off = x - minX;
+        if (off >= sizeX || off <= -64) return 0L;
+
+        int base = (ry * sizeZ + rz) * wordsPerRow;
+        if (off < 0) return words[base] << -off;
+
+        int w = off >>> 6, b = off & 63;
+        long bits = words[base + w] >>> b;
+        if (b != 0 && w + 1 < wordsPerRow) bits |= words[base + w + 1] << (64 - b);
+        return bits;
+    }
+
+    public boolean contains(int x, int y, int z) {
+        return (window(y, z, x) & 1L) != 0;
+    }
+
+    /** Number of set positions. */
+    public long count() {
+        long n = 0;
+        for (long word : words) n += Long.bitCount(word);
+        return n;
+    }
+
+    public int minX() {
+        return minX;
+    }
+
+    public int minY() {
+        return minY;
+    }
+
+    public int minZ() {
+        return minZ;
+    }
+
+    public int maxX() {
+        return minX + sizeX - 1;
+    }
+
+    public int maxY() {
+        return minY + sizeY - 1;
+    }
+
+    public int maxZ() {
+        return minZ + sizeZ - 1;
+    }
+
+    private int row(int y, int z) {
+        return ((y - minY) * sizeZ + (z - minZ)) * wordsPerRow;
+    }
+}
@@ -1,137 +1,103 @@
 /**
  * Contains the core world-editing logic for hollowing areas and generating rooms.
+ * Operations are returned as resumable {@link EditJob}s that {@link EditJobService} spreads over several ticks;
+ * what to change is decided per position by an {@link EditPlan.Decision}, planned off the server thread and
+ * wrapped with {@link ProtectionRules#guard}.
  */
 
 package jason.voxelcleaner.core;
 
+import jason.voxelcleaner.config.VoxelConfig;
+import jason.voxelcleaner.model.SnapshotBuffer;
 import jason.voxelcleaner.model.VoxelModels.Action;
 import jason.voxelcleaner.model.VoxelModels.Result;
-import jason.voxelcleaner.model.VoxelModels.Snapshot;
 
 import net.minecraft.block.Block;
 import net.minecraft.block.BlockState;
 import net.minecraft.block.Blocks;
-import net.minecraft.item.ItemStack;
 import net.minecraft.registry.Registries;
 import net.minecraft.server.network.ServerPlayerEntity;
 import net.minecraft.server.world.ServerWorld;
 import net.minecraft.util.math.BlockPos;
 import net.minecraft.util.math.Direction;
 import net.minecraft.world.World;
+import net.minecraft.world.WorldEvents;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.function.IntFunction;
+import java.util.function.Predicate;
 
-import static jason.voxelcleaner.core.ProtectionRules.isProtected;
+import static jason.voxelcleaner.core.ProtectionRules.guard;
 
 public final class VoxelOperations {
 
-    private final LootService lootService = new LootService();
-
-    public Result room(ServerPlayerEntity player, int iw, int ih, int id,
-                       Block walls, Block floor, Block ceiling,
-                       boolean force, boolean loot) {
-
-        World w0 = player.getEntityWorld();
-        if (!(w0 instanceof ServerWorld world)) return emptyResult(iw, ih, id, "room", force, loot);
+    private static final Predicate<BlockState> NOT_AIR = st -> !st.isAir();
 
-        String dim = world.getRegistryKey().getValue().toString();
-        long now = System.currentTimeMillis();
+    /** What the jobs do with their planned changes. */
+    private enum Mode { APPLY, DRY_RUN, GHOST }
 
-        int ow = iw + 2;
-        int oh = ih + 2;
-        int od = id + 2;
+    private final LootService lootService = new LootService();
+    private final Mode mode;
 
-        Direction f = player.getHorizontalFacing();
-        Direction s = f.rotateYClockwise();
+    public VoxelOperations() {
+        this(Mode.APPLY);
+    }
 
-        BlockPos base = player.getBlockPos().down().offset(f, 1);
+    private VoxelOperations(Mode mode) {
+        this.mode = mode;
+    }
 
-        int minW = -(ow / 2);
-        int maxW = minW + ow - 1;
+    /**
+     * Operations with the same selection that only plan: their jobs write nothing and complete with a
+     * {@link Result#dryRun()} report instead of an action.
+     */
+    public VoxelOperations dryRun() {
+        return new VoxelOperations(Mode.DRY_RUN);
+    }
 
-        int changed = 0;
-        int lootItems = 0;
-        List<ItemStack> collected = loot && !player.isCreative() ? new ArrayList<>() : null;
+    /**
+     * Like {@link #dryRun()}, but the planned changes are also shown to the player as a {@link GhostPreview}.
+     */
+    public VoxelOperations ghost() {
+        return new VoxelOperations(Mode.GHOST);
+    }
 
-        List<Snapshot> snaps = new ArrayList<>();
+    public EditJob room(ServerPlayerEntity player, int iw, int ih, int id,
+                        Block walls, Block floor, Block ceiling,
+                        boolean force, boolean loot) {
 
         BlockState wallsState = walls.getDefaultState();
         BlockState floorState = floor.getDefaultState();
         BlockState ceilState = ceiling.getDefaultState();
-        BlockState airState = Blocks.AIR.getDefaultState();
-
-        for (int dz = 0; dz < od; dz++) {
-            for (int dx = minW; dx <= maxW; dx++) {
-                for (int dy = 0; dy < oh; dy++) {
-
-                    BlockPos p = base.offset(f, dz).offset(s, dx).up(dy);
-                    BlockState st = world.getBlockState(p);
-
-                    if (st.getBlock() == Blocks.BEDROCK) continue;
-
-                    boolean shellPos =
-                            dz == 0 || dz == od - 1 ||
-                                    dx == minW || dx == maxW ||
-                                    dy == 0 || dy == oh - 1;
-
-                    if (shellPos) {
-                        if (!force && isProtected(st)) continue;
-
-                        BlockState targetState = (dy == 0) ? floorState : (dy == oh - 1) ? ceilState : wallsState;
-
-                        if (!st.equals(targetState)) {
-                            snaps.add(new Snapshot(p, st, targetState));
-                            world.setBlockState(p, targetState, 3);
-                            changed++;
-                        }
-                        continue;
-                    }
-
-                    if (st.isAir()) continue;
-                    if (!force && isProtected(st)) continue;
-
-                    snaps.add(new Snapshot(p, st, airState));
-
-                    if (player.isCreative() || !loot) {
-                        if (player.isCreative()) world.setBlockState(p, airState, 3);
-                        else world.breakBlock(p, true, player);
-                    } else {
-                        lootItems += lootService.breakAndCollect(world, player, p, st, collected);
-                    }
-
-                    changed++;
-                }
-            }
-        }
-
-        if (loot && !player.isCreative() && collected != null && !collected.isEmpty()) {
-            int placed = lootService.placeLootChestsAndFill(
-                    world, base, f, s,
-                    ow, od, minW, maxW,
-                    collected,
-                    player.getHorizontalFacing().getOpposite()
-            );
-
-            if (placed == 0) {
-                BlockPos dropAt = lootService.roomCenterPos(base, f, s, ow, od, minW);
-                lootService.dropStacks(world, dropAt, collected);
-            }
-        }
 
         String shellId = "room:walls=" + Registries.BLOCK.getId(walls)
                 + ",floor=" + Registries.BLOCK.getId(floor)
                 + ",ceiling=" + Registries.BLOCK.getId(ceiling);
 
-        Action action = new Action(dim, now, iw, ih, id, shellId, force, loot, changed, lootItems, snaps);
-        return new Result(action);
+        return carve(player, "VoxelRoom", iw, ih, id, shellId, force, loot, true,
+                flags -> (flags & RegionKernel.FLOOR) != 0 ? floorState
+                        : (flags & RegionKernel.CEILING) != 0 ? ceilState
+                        : wallsState);
+    }
+
+    public EditJob hollow(ServerPlayerEntity player, int iw, int ih, int id,
+                          Block shell, boolean force, boolean loot) {
+
+        BlockState shellState = shell == null || shell == Blocks.AIR ? null : shell.getDefaultState();
+        String shellId = shell == null ? null : Registries.BLOCK.getId(shell).toString();
+
+        return carve(player, "VoxelCleaner", iw, ih, id, shellId, force, loot, shellState != null, flags -> shellState);
     }
 
-    public Result hollow(ServerPlayerEntity player, int iw, int ih, int id,
-                         Block shell, boolean force, boolean loot) {
+    /**
+     * Shared kernel of {@link #room} and {@link #hollow}: clears the interior of the padded box and sets the
+     * shell positions to {@code shellTarget.apply(flags)} (null leaves the shell untouched, which
+     * {@code editsShell == false} promises for every shell position).
+     */
+    private EditJob carve(ServerPlayerEntity player, String label, int iw, int ih, int id, String shellId,
+                          boolean force, boolean loot, boolean editsShell, IntFunction<BlockState> shellTarget) {
 
         World w0 = player.getEntityWorld();
-        if (!(w0 instanceof ServerWorld world)) return emptyResult(iw, ih, id, null, force, loot);
+        if (!(w0 instanceof ServerWorld world)) return EditJob.done(label, emptyResult(iw, ih, id, shellId, force, loot));
 
         String dim = world.getRegistryKey().getValue().toString();
         long now = System.currentTimeMillis();
@@ -148,75 +114,77 @@ public final class VoxelOperations {
         int minW = -(ow / 2);
         int maxW = minW + ow - 1;
 
-        int changed = 0;
-        int lootItems = 0;
-        List<ItemStack> collected = loot && !player.isCreative() ? new ArrayList<>() : null;
-
-        List<Snapshot> snaps = new ArrayList<>();
-
-        BlockState shellState = shell == null ? null : shell.getDefaultState();
         BlockState airState = Blocks.AIR.getDefaultState();
+        RegionKernel cursor = RegionKernel.oriented(world, base, f, s, ow, oh, od, minW);
+
+        // away from the shell only non-air blocks matter, and only the state does
+        EditPlan.Decision wanted = EditPlan.decision((st, c) -> {
+            int flags = c.flags();
+            if ((flags & RegionKernel.SHELL) != 0) return shellTarget.apply(flags);
+            return st.isAir() ? null : airState;
+        }, section -> editsShell && section.touchesShell() ? null : NOT_AIR, section -> !section.touchesShell());
+
+        ProtectedRegions.SectionAccess access = ProtectedRegions.accessFor(player, world);
+        if (mode != Mode.APPLY) return planOnly(player, label, world, cursor, wanted, force, true, access);
+
+        return new PlannedEditJob(label, world, cursor, guard(wanted, force, true, null), access) {
+            int changed = 0;
+            int lootItems = 0;
+            final LootPile collected = loot && !player.isCreative() ? new LootPile() : null;
+            // loot settings are read once, a reload does not change a running job
+            final boolean breakEffects = VoxelConfig.get().breakEffects();
+            final LootPile drops = !loot && !player.isCreative() && VoxelConfig.get().coalesceDrops() ? new LootPile() : null;
+            final SnapshotBuffer snaps = new SnapshotBuffer();
+
+            @Override
+            protected void apply(BlockPos.Mutable p, BlockState st, BlockState target) {
+                snaps.add(p, st, target);
+                changed++;
+
+                if ((flagsAt(p) & RegionKernel.SHELL) != 0) {
+                    writer.set(p, target);
+                    return;
+                }
 
-        for (int dz = 0; dz < od; dz++) {
-            for (int dx = minW; dx <= maxW; dx++) {
-                for (int dy = 0; dy < oh; dy++) {
-
-                    BlockPos p = base.offset(f, dz).offset(s, dx).up(dy);
-                    BlockState st = world.getBlockState(p);
-
-                    if (st.getBlock() == Blocks.BEDROCK) continue;
-
-                    boolean shellPos =
-                            dz == 0 || dz == od - 1 ||
-                                    dx == minW || dx == maxW ||
-                                    dy == 0 || dy == oh - 1;
-
-                    if (shellPos) {
-                        if (shellState != null && shell != Blocks.AIR) {
-                            if (!force && isProtected(st)) continue;
-                            if (!st.equals(shellState)) {
-                                snaps.add(new Snapshot(p, st, shellState));
-                                world.setBlockState(p, shellState, 3);
-                                changed++;
-                            }
-                        }
-                        continue;
-                    }
-
-                    if (st.isAir()) continue;
-                    if (!force && isProtected(st)) continue;
-
-                    snaps.add(new Snapshot(p, st, airState));
+                if (player.isCreative()) {
+                    writer.set(p, target);
+                } else if (collected != null) {
+                    lootItems += lootService.breakAndCollect(writer, player, p, st, collected);
+                } else if (drops != null) {
+                    // one ItemEntity per block would swamp the entity tick; drops are spawned merged at the end
+                    lootService.breakAndDrop(writer, player, p, st, drops);
+                    if (breakEffects) world.syncWorldEvent(WorldEvents.BLOCK_BROKEN, p, Block.getRawIdFromState(st));
+                } else {
+                    world.breakBlock(p.toImmutable(), true, player);
+                }
+            }
 
-                    if (player.isCreative() || !loot) {
-                        if (player.isCreative()) world.setBlockState(p, airState, 3);
-                        else world.breakBlock(p, true, player);
-                    } else {
-                        lootItems += lootService.breakAndCollect(world, player, p, st, collected);
+            @Override
+            protected Result complete() {
+                if (collected != null && !collected.isEmpty()) {
+                    lootService.placeLootChestsAndFill(
+                            world, base, f, s,
+                            ow, od, minW, maxW,
+                            collected,
+                            f.getOpposite()
+                    );
+
+                    // no room for (enough) chests: the rest is dropped instead of lost
+                    if (!collected.isEmpty()) {
+                        BlockPos dropAt = lootService.roomCenterPos(base, f, s, ow, od, minW);
+                        lootService.dropStacks(world, dropAt, collected);
                     }
+                }
 
-                    changed++;
+                if (drops != null && !drops.isEmpty()) {
+                    lootService.scatterInRoom(world, base, f, s, ow, od, minW, drops);
                 }
-            }
-        }
 
-        if (loot && !player.isCreative() && collected != null && !collected.isEmpty()) {
-            int placed = lootService.placeLootChestsAndFill(
-                    world, base, f, s,
-                    ow, od, minW, maxW,
-                    collected,
-                    player.getHorizontalFacing().getOpposite()
-            );
-
-            if (placed == 0) {
-                BlockPos dropAt = lootService.roomCenterPos(base, f, s, ow, od, minW);
-                lootService.dropStacks(world, dropAt, collected);
+                snaps.groupSections(VoxelConfig.get().sectionSnapshotMinChanges());
+                Action action = new Action(dim, now, iw, ih, id, shellId, force, loot, changed, lootItems, snaps.trim());
+                return new Result(action);
             }
-        }
-
-        String shellId = shell == null ? null : Registries.BLOCK.getId(shell).toString();
-        Action action = new Action(dim, now, iw, ih, id, shellId, force, loot, changed, lootItems, snaps);
-        return new Result(action);
+        };
     }
 
 
@@ -225,13 +193,13 @@ public final class VoxelOperations {
     // Replace
     // ---------------------------------------------------------------------
 
-    public Result replace(ServerPlayerEntity player,
-                          int w, int h, int d,
-                          Block from, Block to,
-                          boolean force,
-                          boolean shellOnly,
-                          boolean insideOnly,
-                          int chancePercent) {
+    public EditJob replace(ServerPlayerEntity player,
+                           int w, int h, int d,
+                           Block from, Block to,
+                           boolean force,
+                           boolean shellOnly,
+                           boolean insideOnly,
+                           int chancePercent) {
 
         World w0 = player.getEntityWorld();
         if (!(w0 instanceof ServerWorld world)) {
@@ -239,7 +207,7 @@ public final class VoxelOperations {
                     ",to=" + (to == null ? "null" : Registries.BLOCK.getId(to)) +
                     ",mode=" + (shellOnly ? "shell" : insideOnly ? "inside" : "all") +
                     ",chance=" + chancePercent;
-            return emptyResult(w, h, d, meta, force, false);
+            return EditJob.done("VoxelReplace", emptyResult(w, h, d, meta, force, false));
         }
 
         String dim = world.getRegistryKey().getValue().toString();
@@ -251,196 +219,143 @@ public final class VoxelOperations {
         BlockPos base = player.getBlockPos().down().offset(f, 1);
 
         int minW = -(w / 2);
-        int maxW = minW + w - 1;
 
         BlockState fromState = from.getDefaultState();
         BlockState toState = to.getDefaultState();
 
-        List<Snapshot> snaps = new ArrayList<>();
-        int changed = 0;
-
         int safeChance = Math.max(0, Math.min(100, chancePercent));
 
-        for (int dz = 0; dz < d; dz++) {
-            for (int dx = minW; dx <= maxW; dx++) {
-                for (int dy = 0; dy < h; dy++) {
+        RegionKernel cursor = RegionKernel.oriented(world, base, f, s, w, h, d, minW);
+        if (shellOnly || insideOnly) {
+            // same box, so the chance below still sees the same relative coordinates
+            VoxelMask box = cursor.boxMask();
+            VoxelMask shell = box.shell();
+            cursor = RegionKernel.masked(world, shellOnly ? shell : box.subtract(shell));
+        }
 
-                    boolean onShell = dx == minW || dx == maxW || dz == 0 || dz == d - 1 || dy == 0 || dy == h - 1;
-                    if (shellOnly && !onShell) continue;
-                    if (insideOnly && onShell) continue;
+        // sections without fromState are skipped; without chance only the state matters
+        Predicate<BlockState> fromMatch = st -> st.equals(fromState);
+        EditPlan.Decision wanted = EditPlan.decision((st, c) -> {
+            if (safeChance < 100) {
+                // deterministic-ish per-position chance (no Random instance needed)
+                int hash = (c.relX() * 73471) ^ (c.relY() * 91283) ^ (c.relZ() * 39017);
+                int roll = Math.floorMod(hash, 100);
+                if (roll >= safeChance) return null;
+            }
 
-                    if (safeChance < 100) {
-                        // deterministic-ish per-position chance (no Random instance needed)
-                        int hash = (dx * 73471) ^ (dy * 91283) ^ (dz * 39017);
-                        int roll = Math.floorMod(hash, 100);
-                        if (roll >= safeChance) continue;
-                    }
+            return st.equals(fromState) ? toState : null;
+        }, section -> fromMatch, section -> safeChance == 100);
 
-                    BlockPos p = base.offset(f, dz).offset(s, dx).up(dy);
-                    BlockState st = world.getBlockState(p);
+        ProtectedRegions.SectionAccess access = ProtectedRegions.accessFor(player, world);
+        if (mode != Mode.APPLY) return planOnly(player, "VoxelReplace", world, cursor, wanted, force, false, access);
 
-                    if (!st.equals(fromState)) continue;
-                    if (!force && isProtected(st)) continue;
-                    if (st.equals(toState)) continue;
+        return new PlannedEditJob("VoxelReplace", world, cursor, guard(wanted, force, false, null), access) {
+            int changed = 0;
+            final SnapshotBuffer snaps = new SnapshotBuffer();
 
-                    snaps.add(new Snapshot(p, st, toState));
-                    world.setBlockState(p, toState, 3);
-                    changed++;
-                }
+            @Override
+            protected void apply(BlockPos.Mutable p, BlockState st, BlockState target) {
+                snaps.add(p, st, target);
+                writer.set(p, target);
+                changed++;
             }
-        }
 
-        String meta = "replace:from=" + Registries.BLOCK.getId(from) +
-                ",to=" + Registries.BLOCK.getId(to) +
-                ",mode=" + (shellOnly ? "shell" : insideOnly ? "inside" : "all") +
-                ",chance=" + safeChance;
+            @Override
+            protected Result complete() {
+                String meta = "replace:from=" + Registries.BLOCK.getId(from) +
+                        ",to=" + Registries.BLOCK.getId(to) +
+                        ",mode=" + (shellOnly ? "shell" : insideOnly ? "inside" : "all") +
+                        ",chance=" + safeChance;
 
-        Action action = new Action(dim, now, w, h, d, meta, force, false, changed, 0, snaps);
-        return new Result(action);
+                snaps.groupSections(VoxelConfig.get().sectionSnapshotMinChanges());
+                Action action = new Action(dim, now, w, h, d, meta, force, false, changed, 0, snaps.trim());
+                return new Result(action);
+            }
+        };
     }
 
     // ---------------------------------------------------------------------
     // Shapes
     // ---------------------------------------------------------------------
 
-    public Result shapeSphere(ServerPlayerEntity player, int radius, Block material, boolean hollow, boolean force) {
+    public EditJob shapeSphere(ServerPlayerEntity player, int radius, Block material, boolean hollow, boolean force) {
         World w0 = player.getEntityWorld();
         String meta = "shape:sphere r=" + radius + " block=" + Registries.BLOCK.getId(material) + " hollow=" + hollow;
 
-        if (!(w0 instanceof ServerWorld world)) return emptyResult(radius, radius, radius, meta, force, false);
+        if (!(w0 instanceof ServerWorld world)) return EditJob.done("VoxelShape Sphere", emptyResult(radius, radius, radius, meta, force, false));
 
-        String dim = world.getRegistryKey().getValue().toString();
-        long now = System.currentTimeMillis();
-
-        Direction f = player.getHorizontalFacing();
-        BlockPos center = player.getBlockPos().offset(f, Math.max(2, radius + 2)).up(radius);
+        VoxelMask mask = VoxelMask.of(ShapeRaster.roundOrigin(player, radius), ShapeRaster.sphere(radius, hollow));
 
-        int r2 = radius * radius;
-        int inner2 = (radius - 1) * (radius - 1);
-
-        BlockState target = material.getDefaultState();
-
-        List<Snapshot> snaps = new ArrayList<>();
-        int changed = 0;
-
-        for (int x = -radius; x <= radius; x++) {
-            for (int y = -radius; y <= radius; y++) {
-                for (int z = -radius; z <= radius; z++) {
-
-                    int d2 = x * x + y * y + z * z;
-                    if (d2 > r2) continue;
-                    if (hollow && d2 <= inner2) continue;
-
-                    BlockPos p = center.add(x, y, z);
-                    BlockState st = world.getBlockState(p);
-
-                    if (!force && isProtected(st)) continue;
-                    if (st.equals(target)) continue;
-
-                    snaps.add(new Snapshot(p, st, target));
-                    world.setBlockState(p, target, 3);
-                    changed++;
-                }
-            }
-        }
-
-        Action action = new Action(dim, now, radius, radius, radius, meta, force, false, changed, 0, snaps);
-        return new Result(action);
+        return shapeJob(player, world, "VoxelShape Sphere", mask, material, force, meta, radius, radius, radius);
     }
 
-    public Result shapeCylinder(ServerPlayerEntity player, int radius, int height, Block material, boolean hollow, boolean force) {
+    public EditJob shapeCylinder(ServerPlayerEntity player, int radius, int height, Block material, boolean hollow, boolean force) {
         World w0 = player.getEntityWorld();
         String meta = "shape:cylinder r=" + radius + " h=" + height + " block=" + Registries.BLOCK.getId(material) + " hollow=" + hollow;
 
-        if (!(w0 instanceof ServerWorld world)) return emptyResult(radius, height, radius, meta, force, false);
+        if (!(w0 instanceof ServerWorld world)) return EditJob.done("VoxelShape Cylinder", emptyResult(radius, height, radius, meta, force, false));
 
-        String dim = world.getRegistryKey().getValue().toString();
-        long now = System.currentTimeMillis();
-
-        Direction f = player.getHorizontalFacing();
-        BlockPos base = player.getBlockPos().offset(f, Math.max(2, radius + 2));
-
-        int r2 = radius * radius;
-        int inner2 = (radius - 1) * (radius - 1);
-
-        BlockState target = material.getDefaultState();
-
-        List<Snapshot> snaps = new ArrayList<>();
-        int changed = 0;
+        VoxelMask mask = VoxelMask.of(ShapeRaster.roundOrigin(player, radius), ShapeRaster.cylinder(radius, height, hollow));
 
-        for (int y = 0; y < height; y++) {
-            for (int x = -radius; x <= radius; x++) {
-                for (int z = -radius; z <= radius; z++) {
-
-                    int d2 = x * x + z * z;
-                    if (d2 > r2) continue;
-                    if (hollow && d2 <= inner2 && y != 0 && y != height - 1) continue;
+        return shapeJob(player, world, "VoxelShape Cylinder", mask, material, force, meta, radius, height, radius);
+    }
 
-                    BlockPos p = base.add(x, y, z);
-                    BlockState st = world.getBlockState(p);
+    public EditJob shapePyramid(ServerPlayerEntity player, int baseSize, int height, Block material, boolean hollow, boolean force) {
+        World w0 = player.getEntityWorld();
+        String meta = "shape:pyramid base=" + baseSize + " h=" + height + " block=" + Registries.BLOCK.getId(material) + " hollow=" + hollow;
 
-                    if (!force && isProtected(st)) continue;
-                    if (st.equals(target)) continue;
+        if (!(w0 instanceof ServerWorld world)) return EditJob.done("VoxelShape Pyramid", emptyResult(baseSize, height, baseSize, meta, force, false));
 
-                    snaps.add(new Snapshot(p, st, target));
-                    world.setBlockState(p, target, 3);
-                    changed++;
-                }
-            }
-        }
+        VoxelMask mask = VoxelMask.of(ShapeRaster.pyramidOrigin(player, baseSize), ShapeRaster.pyramid(baseSize, height, hollow));
 
-        Action action = new Action(dim, now, radius, height, radius, meta, force, false, changed, 0, snaps);
-        return new Result(action);
+        return shapeJob(player, world, "VoxelShape Pyramid", mask, material, force, meta, baseSize, height, baseSize);
     }
 
-    public Result shapePyramid(ServerPlayerEntity player, int baseSize, int height, Block material, boolean hollow, boolean force) {
-        World w0 = player.getEntityWorld();
-        String meta = "shape:pyramid base=" + baseSize + " h=" + height + " block=" + Registries.BLOCK.getId(material) + " hollow=" + hollow;
-
-        if (!(w0 instanceof ServerWorld world)) return emptyResult(baseSize, height, baseSize, meta, force, false);
+    /** Fills every position of {@code mask} with {@code material}. */
+    private EditJob shapeJob(ServerPlayerEntity player, ServerWorld world, String label, VoxelMask mask,
+                             Block material, boolean force, String meta, int iw, int ih, int id) {
 
         String dim = world.getRegistryKey().getValue().toString();
         long now = System.currentTimeMillis();
-
-        Direction f = player.getHorizontalFacing();
-        BlockPos base = player.getBlockPos().offset(f, Math.max(2, (baseSize / 2) + 2));
-
-        int half = baseSize / 2;
         BlockState target = material.getDefaultState();
+        RegionKernel cursor = RegionKernel.masked(world, mask);
 
-        List<Snapshot> snaps = new ArrayList<>();
-        int changed = 0;
+        // the mask already limits the cursor to the shape, so only the current state matters
+        EditPlan.Decision wanted = EditPlan.decision((st, c) -> target, section -> null, section -> true);
 
-        for (int y = 0; y < height; y++) {
-            int layerHalf = Math.max(0, half - (int) Math.floor((double) y * (double) half / (double) Math.max(1, height - 1)));
-            int min = -layerHalf;
-            int max = layerHalf;
+        ProtectedRegions.SectionAccess access = ProtectedRegions.accessFor(player, world);
+        if (mode != Mode.APPLY) return planOnly(player, label, world, cursor, wanted, force, false, access);
 
-            for (int x = min; x <= max; x++) {
-                for (int z = min; z <= max; z++) {
+        return new PlannedEditJob(label, world, cursor, guard(wanted, force, false, null), access) {
+            int changed = 0;
+            final SnapshotBuffer snaps = new SnapshotBuffer();
 
-                    boolean boundary = x == min || x == max || z == min || z == max || y == 0 || y == height - 1;
-                    if (hollow && !boundary) continue;
-
-                    BlockPos p = base.add(x, y, z);
-                    BlockState st = world.getBlockState(p);
-
-                    if (!force && isProtected(st)) continue;
-                    if (st.equals(target)) continue;
+            @Override
+            protected void apply(BlockPos.Mutable p, BlockState st, BlockState planned) {
+                snaps.add(p, st, planned);
+                writer.set(p, planned);
+                changed++;
+            }
 
-                    snaps.add(new Snapshot(p, st, target));
-                    world.setBlockState(p, target, 3);
-                    changed++;
-                }
+            @Override
+            protected Result complete() {
+                snaps.groupSections(VoxelConfig.get().sectionSnapshotMinChanges());
+                Action action = new Action(dim, now, iw, ih, id, meta, force, false, changed, 0, snaps.trim());
+                return new Result(action);
             }
-        }
+        };
+    }
 
-        Action action = new Action(dim, now, baseSize, height, baseSize, meta, force, false, changed, 0, snaps);
-        return new Result(action);
+    /** Job for {@link Mode#DRY_RUN} and {@link Mode#GHOST}: plans like the real one, writes nothing. */
+    private EditJob planOnly(ServerPlayerEntity player, String label, ServerWorld world, RegionKernel cursor,
+                             EditPlan.Decision wanted, boolean force, boolean keepBedrock,
+                             ProtectedRegions.SectionAccess access) {
+        if (mode == Mode.GHOST) return new GhostJob(label, player, world, cursor, wanted, force, keepBedrock, access);
+        return new DryRunJob(label, world, cursor, wanted, force, keepBedrock, access);
     }
 
     private Result emptyResult(int iw, int ih, int id, String shellId, boolean force, boolean loot) {
-        Action action = new Action("?", System.currentTimeMillis(), iw, ih, id, shellId, force, loot, 0, 0, List.of());
+        Action action = new Action("?", System.currentTimeMillis(), iw, ih, id, shellId, force, loot, 0, 0, new SnapshotBuffer());
         return new Result(action);
     }
 }
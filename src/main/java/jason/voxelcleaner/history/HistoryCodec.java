@@ -0,0 +1,374 @@
+/**
+ * Binary codec for persisted history: action headers, and snapshot payloads made of one block-state palette,
+ * run/delta encoded positions sorted by chunk and raw palette-index columns behind a Deflater stream.
+ * Also reads the older whole-file format (version 1) so it can be migrated to {@link HistoryJournal}.
+ */
+
+package jason.voxelcleaner.history;
+
+import jason.voxelcleaner.model.SectionSnapshot;
+import jason.voxelcleaner.model.SnapshotBuffer;
+import jason.voxelcleaner.model.VoxelModels.Action;
+
+import it.unimi.dsi.fastutil.ints.IntArrays;
+
+import net.minecraft.block.Block;
+import net.minecraft.block.BlockState;
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.nbt.NbtHelper;
+import net.minecraft.nbt.NbtIo;
+import net.minecraft.nbt.NbtList;
+import net.minecraft.nbt.NbtSizeTracker;
+import net.minecraft.registry.RegistryEntryLookup;
+import net.minecraft.util.math.BlockPos;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+public final class HistoryCodec {
+
+    /** "VCH" followed by the format version byte. */
+    static final int MAGIC = 0x56434800;
+    static final int VERSION = 1;
+
+    private HistoryCodec() {}
+
+    /** Both stacks of one player, newest action first. */
+    public record Stacks(List<Action> undo, List<Action> redo) {}
+
+    /** Everything of an {@link Action} except its snapshots. */
+    public record Header(String dimensionId, long epochMs, int iw, int ih, int id, String shellId,
+                         boolean force, boolean loot, int changed, int lootItems) {
+
+        public static Header of(Action a) {
+            return new Header(a.dimensionId(), a.epochMs(), a.iw(), a.ih(), a.id(), a.shellId(),
+                    a.force(), a.loot(), a.changed(), a.lootItems());
+        }
+
+        public Action withSnapshots(SnapshotBuffer snapshots) {
+            return new Action(dimensionId, epochMs, iw, ih, id, shellId, force, loot, changed, lootItems, snapshots);
+        }
+    }
+
+    // ---------------------------------------------------------------------
+    // Whole-file format (version 1, migration only)
+    // ---------------------------------------------------------------------
+
+    public static Stacks readFile(Path file, RegistryEntryLookup<Block> blocks) throws IOException {
+        try (InputStream raw = new BufferedInputStream(Files.newInputStream(file))) {
+            DataInputStream header = new DataInputStream(raw);
+            int magic = header.readInt();
+            if ((magic & 0xFFFFFF00) != MAGIC) throw new IOException("not a history file: " + file);
+            if ((magic & 0xFF) > VERSION) throw new IOException("unsupported history version " + (magic & 0xFF));
+
+            DataInputStream in = new DataInputStream(new InflaterInputStream(raw));
+            List<Action> undo = readActions(in, blocks);
+            List<Action> redo = readActions(in, blocks);
+            return new Stacks(undo, redo);
+        }
+    }
+
+    private static List<Action> readActions(DataInput in, RegistryEntryLookup<Block> blocks) throws IOException {
+        int n = readVarInt(in);
+        List<Action> out = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) out.add(readHeader(in).withSnapshots(readSnapshots(in, blocks, false)));
+        return out;
+    }
+
+    // ---------------------------------------------------------------------
+    // Actions
+    // ---------------------------------------------------------------------
+
+    public static void writeHeader(DataOutput out, Action a) throws IOException {
+        out.writeUTF(a.dimensionId());
+        out.writeLong(a.epochMs());
+        writeVarInt(out, a.iw());
+        writeVarInt(out, a.ih());
+        writeVarInt(out, a.id());
+        out.writeBoolean(a.shellId() != null);
+        if (a.shellId() != null) out.writeUTF(a.shellId());
+        out.writeBoolean(a.force());
+        out.writeBoolean(a.loot());
+        writeVarInt(out, a.changed());
+        writeVarInt(out, a.lootItems());
+    }
+
+    public static Header readHeader(DataInput in) throws IOException {
+        String dim = in.readUTF();
+        long ts = in.readLong();
+        int iw = readVarInt(in);
+        int ih = readVarInt(in);
+        int id = readVarInt(in);
+        String shell = in.readBoolean() ? in.readUTF() : null;
+        boolean force = in.readBoolean();
+        boolean loot = in.readBoolean();
+        int changed = readVarInt(in);
+        int lootItems = readVarInt(in);
+        return new Header(dim, ts, iw, ih, id, shell, force, loot, changed, lootItems);
+    }
+
+    /** Snapshots as a self-contained deflated blob, so each one can be decoded on its own. */
+    public static byte[] encodeSnapshots(SnapshotBuffer buf) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(Math.max(64, buf.size() * 2));
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try (DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(bytes, deflater, 1 << 16))) {
+            writeSnapshots(out, buf);
+        } finally {
+            deflater.end();
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @param withSections false for payloads written before section snapshots existed (journal version 1)
+     */
+    public static SnapshotBuffer decodeSnapshots(InputStream deflated, RegistryEntryLookup<Block> blocks,
+                                                 boolean withSections) throws IOException {
+        Inflater inflater = new Inflater();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new InflaterInputStream(deflated, inflater)))) {
+            return readSnapshots(in, blocks, withSections);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Layout: palette (NBT list of block states), entry count, position runs, before indices,
+     * then either a uniform after index or the after indices; followed by the section snapshots.
+     */
+    private static void writeSnapshots(DataOutput out, SnapshotBuffer buf) throws IOException {
+        int n = buf.size();
+
+        NbtList palette = new NbtList();
+        for (int i = 0; i < buf.paletteSize(); i++) palette.add(NbtHelper.fromBlockState(buf.paletteEntry(i)));
+        NbtCompound paletteTag = new NbtCompound();
+        paletteTag.put("p", palette);
+        NbtIo.writeCompound(paletteTag, out);
+
+        boolean wide = buf.paletteSize() > 256;
+        writeVarInt(out, n);
+        if (n > 0) {
+            int[] order = chunkOrder(buf);
+            writePositions(out, buf, order);
+
+            for (int i : order) writeIndex(out, buf.beforeIndex(i), wide);
+
+            boolean uniform = buf.uniformAfter() != null;
+            out.writeBoolean(uniform);
+            if (uniform) {
+                writeVarInt(out, buf.afterIndex(0));
+            } else {
+                for (int i : order) writeIndex(out, buf.afterIndex(i), wide);
+            }
+        }
+
+        writeVarInt(out, buf.sectionCount());
+        for (int s = 0; s < buf.sectionCount(); s++) writeSection(out, buf.section(s), wide);
+    }
+
+    /** Section key, the raw change mask, then the indices in mask order like the per-block columns. */
+    private static void writeSection(DataOutput out, SectionSnapshot section, boolean wide) throws IOException {
+        out.writeLong(section.key());
+        for (long word : section.mask()) out.writeLong(word);
+
+        int count = section.count();
+        for (int k = 0; k < count; k++) writeIndex(out, section.beforeIndex(k), wide);
+
+        out.writeBoolean(section.isUniformAfter());
+        if (section.isUniformAfter()) {
+            writeVarInt(out, section.afterIndex(0));
+        } else {
+            for (int k = 0; k < count; k++) writeIndex(out, section.afterIndex(k), wide);
+        }
+    }
+
+    private static SnapshotBuffer readSnapshots(DataInput in, RegistryEntryLookup<Block> blocks, boolean withSections)
+            throws IOException {
+        NbtCompound paletteTag = NbtIo.readCompound(in, NbtSizeTracker.ofUnlimitedBytes());
+        NbtList paletteList = paletteTag.getList("p").orElse(new NbtList());
+        BlockState[] palette = new BlockState[paletteList.size()];
+        for (int i = 0; i < palette.length; i++) {
+            palette[i] = NbtHelper.toBlockState(blocks, paletteList.getCompound(i).orElse(new NbtCompound()));
+        }
+
+        int n = readVarInt(in);
+        SnapshotBuffer buf = new SnapshotBuffer(n);
+        boolean wide = palette.length > 256;
+
+        if (n > 0) {
+            long[] positions = readPositions(in, n);
+
+            int[] before = new int[n];
+            for (int i = 0; i < n; i++) before[i] = readIndex(in, wide);
+
+            if (in.readBoolean()) {
+                BlockState after = palette[readVarInt(in)];
+                for (int i = 0; i < n; i++) buf.add(positions[i], palette[before[i]], after);
+            } else {
+                for (int i = 0; i < n; i++) buf.add(positions[i], palette[before[i]], palette[readIndex(in, wide)]);
+            }
+        }
+
+        int sections = withSections ? readVarInt(in) : 0;
+        if (sections > 0) {
+            // file indices may not match the rebuilt palette (e.g. unknown blocks all resolve to air)
+            int[] remap = new int[palette.length];
+            for (int i = 0; i < palette.length; i++) remap[i] = buf.intern(palette[i]);
+            for (int s = 0; s < sections; s++) buf.addSection(readSection(in, buf, remap, wide));
+        }
+        return buf.trim();
+    }
+
+    private static SectionSnapshot readSection(DataInput in, SnapshotBuffer buf, int[] remap, boolean wide) throws IOException {
+        long key = in.readLong();
+        long[] mask = new long[SectionSnapshot.MASK_WORDS];
+        int count = 0;
+        for (int w = 0; w < mask.length; w++) {
+            mask[w] = in.readLong();
+            count += Long.bitCount(mask[w]);
+        }
+
+        int[] before = new int[count];
+        for (int k = 0; k < count; k++) before[k] = remap[readIndex(in, wide)];
+
+        if (in.readBoolean()) {
+            int after = remap[readVarInt(in)];
+            return SectionSnapshot.of(key, mask, count, before, null, after, buf.paletteSize());
+        }
+        int[] after = new int[count];
+        for (int k = 0; k < count; k++) after[k] = remap[readIndex(in, wide)];
+        return SectionSnapshot.of(key, mask, count, before, after, after.length > 0 ? after[0] : 0, buf.paletteSize());
+    }
+
+    // ---------------------------------------------------------------------
+    // Positions
+    // ---------------------------------------------------------------------
+
+    /** Entry order sorted by chunk column, then y, z and x, so rows along x become runs. */
+    private static int[] chunkOrder(SnapshotBuffer buf) {
+        int n = buf.size();
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++) order[i] = i;
+
+        IntArrays.quickSort(order, (a, b) -> {
+            long pa = buf.pos(a);
+            long pb = buf.pos(b);
+            int ax = BlockPos.unpackLongX(pa), bx = BlockPos.unpackLongX(pb);
+            int az = BlockPos.unpackLongZ(pa), bz = BlockPos.unpackLongZ(pb);
+
+            int c = Integer.compare(ax >> 4, bx >> 4);
+            if (c == 0) c = Integer.compare(az >> 4, bz >> 4);
+            if (c == 0) c = Integer.compare(BlockPos.unpackLongY(pa), BlockPos.unpackLongY(pb));
+            if (c == 0) c = Integer.compare(az, bz);
+            if (c == 0) c = Integer.compare(ax, bx);
+            return c;
+        });
+        return order;
+    }
+
+    /**
+     * Each run is the zigzag delta of its first position to the previous position, followed by the number of
+     * further entries that continue at x + 1.
+     */
+    private static void writePositions(DataOutput out, SnapshotBuffer buf, int[] order) throws IOException {
+        int px = 0, py = 0, pz = 0;
+        int i = 0;
+        while (i < order.length) {
+            long p = buf.pos(order[i]);
+            int x = BlockPos.unpackLongX(p);
+            int y = BlockPos.unpackLongY(p);
+            int z = BlockPos.unpackLongZ(p);
+
+            int run = 0;
+            while (i + run + 1 < order.length) {
+                long q = buf.pos(order[i + run + 1]);
+                if (BlockPos.unpackLongY(q) != y || BlockPos.unpackLongZ(q) != z || BlockPos.unpackLongX(q) != x + run + 1) break;
+                run++;
+            }
+
+            writeVarInt(out, zigzag(x - px));
+            writeVarInt(out, zigzag(y - py));
+            writeVarInt(out, zigzag(z - pz));
+            writeVarInt(out, run);
+
+            px = x + run;
+            py = y;
+            pz = z;
+            i += run + 1;
+        }
+    }
+
+    private static long[] readPositions(DataInput in, int n) throws IOException {
+        long[] out = new long[n];
+        int px = 0, py = 0, pz = 0;
+        int i = 0;
+        while (i < n) {
+            int x = px + unzigzag(readVarInt(in));
+            int y = py + unzigzag(readVarInt(in));
+            int z = pz + unzigzag(readVarInt(in));
+            int run = readVarInt(in);
+            if (i + run >= n) throw new IOException("corrupt position run");
+
+            for (int k = 0; k <= run; k++) out[i + k] = BlockPos.asLong(x + k, y, z);
+
+            px = x + run;
+            py = y;
+            pz = z;
+            i += run + 1;
+        }
+        return out;
+    }
+
+    // ---------------------------------------------------------------------
+    // Primitives
+    // ---------------------------------------------------------------------
+
+    private static void writeIndex(DataOutput out, int idx, boolean wide) throws IOException {
+        if (wide) out.writeShort(idx);
+        else out.writeByte(idx);
+    }
+
+    private static int readIndex(DataInput in, boolean wide) throws IOException {
+        return wide ? in.readUnsignedShort() : in.readUnsignedByte();
+    }
+
+    static void writeVarInt(DataOutput out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    static int readVarInt(DataInput in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+        throw new IOException("varint too long");
+    }
+
+    private static int zigzag(int v) {
+        return (v << 1) ^ (v >> 31);
+    }
+
+    private static int unzigzag(int v) {
+        return (v >>> 1) ^ -(v & 1);
+    }
+}
@@ -0,0 +1,39 @@
+/**
+ * One undo/redo step as kept in memory: the action header always stays on the heap, while the snapshot
+ * payload may be spilled to disk by {@link HistoryMemory} and read back when it is needed again.
+ */
+
+package jason.voxelcleaner.history;
+
+import jason.voxelcleaner.model.SnapshotBuffer;
+import jason.voxelcleaner.model.VoxelModels.Action;
+
+import java.nio.file.Path;
+
+final class HistoryEntry {
+
+    private final HistoryCodec.Header header;
+    private final long bytes;
+
+    /** Null while the payload only exists in {@link #spill}. */
+    volatile SnapshotBuffer snapshots;
+    /** Spill file of the payload; set when the first eviction is queued. */
+    volatile Path spill;
+    /** True once {@link #spill} is completely written, so later evictions can just drop the payload. */
+    volatile boolean spilled;
+
+    HistoryEntry(Action action) {
+        this.header = HistoryCodec.Header.of(action);
+        this.snapshots = action.snapshots();
+        this.bytes = action.snapshots().estimatedBytes();
+    }
+
+    HistoryCodec.Header header() {
+        return header;
+    }
+
+    /** Estimated heap size of the payload while it is resident. */
+    long bytes() {
+        return bytes;
+    }
+}
@@ -0,0 +1,430 @@
+/**
+ * Append-only history journal of one player. Every pushed action becomes a segment (a small index header,
+ * the action header and its deflated snapshot payload); undo, redo and redo clears are tiny pointer records.
+ * Replaying the records rebuilds both stacks, and {@link #compact()} rewrites the file with only the live
+ * segments once dead ones dominate.
+ *
+ * Layout: int magic|version, then records of [byte type][int body length][body][int crc32 of body].
+ * A torn record at the end (crash during an append) is ignored and overwritten by the next append.
+ */
+
+package jason.voxelcleaner.history;
+
+import jason.voxelcleaner.config.VoxelConfig;
+import jason.voxelcleaner.model.SnapshotBuffer;
+import jason.voxelcleaner.model.VoxelModels.Action;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+
+import net.minecraft.block.Block;
+import net.minecraft.registry.RegistryEntryLookup;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.zip.CRC32;
+
+final class HistoryJournal {
+
+    /** "VCJ" followed by the format version byte. */
+    static final int MAGIC = 0x56434A00;
+    /** 2: snapshot payloads carry section snapshots. */
+    static final int VERSION = 2;
+
+    private static final byte SEGMENT = 1;
+    private static final byte UNDO = 2;
+    private static final byte REDO = 3;
+    private static final byte CLEAR_REDO = 4;
+    /** Explicit undo/redo segment ids, newest first; written by compaction. */
+    private static final byte STATE = 5;
+
+    private static final int FILE_HEADER = 4;
+    private static final int RECORD_HEAD = 1 + 4;
+    private static final int RECORD_OVERHEAD = RECORD_HEAD + 4;
+    /** id, header length, payload length */
+    private static final int SEGMENT_HEAD = 8 + 4 + 4;
+
+    /** Journals below this size are never compacted. */
+    private static final long COMPACT_MIN_BYTES = 1L << 20;
+
+    /** Body offset of a segment record and the lengths needed to decode or copy it. */
+    private record Segment(long bodyOffset, int headerLength, int payloadLength) {
+        long recordOffset() {
+            return bodyOffset - RECORD_HEAD;
+        }
+
+        long recordLength() {
+            return RECORD_OVERHEAD + SEGMENT_HEAD + (long) headerLength + payloadLength;
+        }
+    }
+
+    private final Path file;
+    private final Long2ObjectOpenHashMap<Segment> segments = new Long2ObjectOpenHashMap<>();
+    private final Deque<Long> undo = new ArrayDeque<>();
+    private final Deque<Long> redo = new ArrayDeque<>();
+
+    /** Bytes of the file that hold complete records; anything behind it is a torn append. */
+    private long length;
+    private long nextId = 1;
+    /** Format version of the scanned file; appends always use {@link #VERSION}. */
+    private int version = VERSION;
+
+    private HistoryJournal(Path file) {
+        this.file = file;
+    }
+
+    // ---------------------------------------------------------------------
+    // Opening and loading
+    // ---------------------------------------------------------------------
+
+    /** Scans the record index of {@code file} (if it exists) so new records can be appended. */
+    static HistoryJournal open(Path file) throws IOException {
+        HistoryJournal journal = new HistoryJournal(file);
+        if (Files.exists(file)) {
+            try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+                journal.scan(ch);
+            }
+        }
+        return journal;
+    }
+
+    /**
+     * Replays the journal and decodes the persisted part of both stacks; only the segments of live actions are
+     * decoded. Journals of an older version are rewritten in the current one, since appends must not mix payload
+     * formats.
+     */
+    static HistoryCodec.Stacks load(Path file, RegistryEntryLookup<Block> blocks) throws IOException {
+        HistoryJournal journal = new HistoryJournal(file);
+        HistoryCodec.Stacks stacks;
+        // plain positional reads: nothing keeps the file open or mapped once the channel is closed, so it can
+        // be replaced, truncated or renamed right away on every platform
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            journal.scan(ch);
+            stacks = new HistoryCodec.Stacks(
+                    journal.decode(ch, journal.undo, blocks), journal.decode(ch, journal.redo, blocks));
+        }
+
+        if (journal.version < VERSION) create(file, stacks.undo(), stacks.redo());
+        return stacks;
+    }
+
+    /** Writes a fresh journal holding exactly the given stacks (newest first), e.g. when migrating old files. */
+    static void create(Path file, List<Action> undo, List<Action> redo) throws IOException {
+        HistoryWriter.writeAtomically(file, tmp -> {
+            HistoryJournal journal = new HistoryJournal(tmp);
+            long[] undoIds = new long[undo.size()];
+            long[] redoIds = new long[redo.size()];
+            for (int i = 0; i < undoIds.length; i++) undoIds[i] = journal.appendSegment(undo.get(i));
+            for (int i = 0; i < redoIds.length; i++) redoIds[i] = journal.appendSegment(redo.get(i));
+            journal.append(STATE, stateBody(undoIds, redoIds));
+        });
+    }
+
+    private void scan(FileChannel ch) throws IOException {
+        long size = ch.size();
+        if (size < FILE_HEADER) return;
+
+        int magic = read(ch, 0, FILE_HEADER).getInt(0);
+        if ((magic & 0xFFFFFF00) != MAGIC) throw new IOException("not a history journal: " + file);
+        if ((magic & 0xFF) > VERSION) throw new IOException("unsupported journal version " + (magic & 0xFF));
+        version = magic & 0xFF;
+
+        CRC32 crc = new CRC32();
+        long pos = FILE_HEADER;
+        while (pos + RECORD_OVERHEAD <= size) {
+            ByteBuffer head = read(ch, pos, RECORD_HEAD);
+            byte type = head.get(0);
+            int bodyLength = head.getInt(1);
+            if (bodyLength < 0 || pos + RECORD_OVERHEAD + bodyLength > size) break;
+
+            // body and checksum in one read
+            ByteBuffer rest = read(ch, pos + RECORD_HEAD, bodyLength + 4);
+            ByteBuffer body = rest.slice(0, bodyLength);
+            crc.reset();
+            crc.update(body.duplicate());
+            if ((int) crc.getValue() != rest.getInt(bodyLength)) break;
+
+            replay(type, body, pos + RECORD_HEAD);
+            pos += RECORD_OVERHEAD + bodyLength;
+        }
+        length = pos;
+    }
+
+    private void replay(byte type, ByteBuffer body, long bodyOffset) throws IOException {
+        switch (type) {
+            case SEGMENT -> {
+                long id = body.getLong(0);
+                segments.put(id, new Segment(bodyOffset, body.getInt(8), body.getInt(12)));
+                push(undo, id);
+                nextId = Math.max(nextId, id + 1);
+            }
+            case UNDO -> move(undo, redo, steps(body));
+            case REDO -> move(redo, undo, steps(body));
+            case CLEAR_REDO -> redo.clear();
+            case STATE -> {
+                undo.clear();
+                redo.clear();
+                int pos = 0;
+                int n = body.getInt(pos);
+                pos += 4;
+                for (int i = 0; i < n; i++, pos += 8) undo.addLast(body.getLong(pos));
+                int m = body.getInt(pos);
+                pos += 4;
+                for (int i = 0; i < m; i++, pos += 8) redo.addLast(body.getLong(pos));
+            }
+            default -> throw new IOException("unknown journal record " + type);
+        }
+    }
+
+    private List<Action> decode(FileChannel ch, Deque<Long> stack, RegistryEntryLookup<Block> blocks) throws IOException {
+        List<Long> ids = persisted(stack);
+        List<Action> out = new ArrayList<>(ids.size());
+        for (long id : ids) {
+            Segment s = segments.get(id);
+            if (s == null) throw new IOException("missing segment " + id);
+
+            ByteBuffer data = read(ch, s.bodyOffset() + SEGMENT_HEAD, s.headerLength() + s.payloadLength());
+            HistoryCodec.Header header = HistoryCodec.readHeader(
+                    new DataInputStream(new BufferInput(data.slice(0, s.headerLength()))));
+            SnapshotBuffer snaps = HistoryCodec.decodeSnapshots(
+                    new BufferInput(data.slice(s.headerLength(), s.payloadLength())), blocks, version >= 2);
+            out.add(header.withSnapshots(snaps));
+        }
+        return out;
+    }
+
+    // ---------------------------------------------------------------------
+    // Appending (history writer thread only)
+    // ---------------------------------------------------------------------
+
+    /** A new action was pushed onto the undo stack. */
+    void appendPush(Action action) throws IOException {
+        push(undo, appendSegment(action));
+    }
+
+    /** {@code steps} actions moved from the undo to the redo stack in one batch. */
+    void appendUndo(int steps) throws IOException {
+        append(UNDO, stepsBody(steps));
+        move(undo, redo, steps);
+    }
+
+    void appendRedo(int steps) throws IOException {
+        append(REDO, stepsBody(steps));
+        move(redo, undo, steps);
+    }
+
+    void appendClearRedo() throws IOException {
+        append(CLEAR_REDO, ByteBuffer.allocate(0));
+        redo.clear();
+    }
+
+    private long appendSegment(Action action) throws IOException {
+        ByteArrayOutputStream headerBytes = new ByteArrayOutputStream(64);
+        HistoryCodec.writeHeader(new DataOutputStream(headerBytes), action);
+        byte[] header = headerBytes.toByteArray();
+        byte[] payload = HistoryCodec.encodeSnapshots(action.snapshots());
+
+        long id = nextId++;
+        ByteBuffer body = ByteBuffer.allocate(SEGMENT_HEAD + header.length + payload.length);
+        body.putLong(id).putInt(header.length).putInt(payload.length).put(header).put(payload).flip();
+
+        long bodyOffset = append(SEGMENT, body);
+        segments.put(id, new Segment(bodyOffset, header.length, payload.length));
+        return id;
+    }
+
+    /** Appends one record behind the last complete one and returns the offset of its body. */
+    private long append(byte type, ByteBuffer body) throws IOException {
+        int bodyLength = body.remaining();
+        CRC32 crc = new CRC32();
+        crc.update(body.duplicate());
+
+        ByteBuffer record = ByteBuffer.allocate(RECORD_OVERHEAD + bodyLength);
+        record.put(type).putInt(bodyLength).put(body).putInt((int) crc.getValue()).flip();
+
+        Files.createDirectories(file.getParent());
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            if (length < FILE_HEADER) {
+                ch.truncate(0);
+                writeFully(ch, ByteBuffer.allocate(FILE_HEADER).putInt(0, MAGIC | VERSION), 0);
+                length = FILE_HEADER;
+            } else if (ch.size() > length) {
+                ch.truncate(length);
+            }
+            writeFully(ch, record, length);
+        }
+
+        long bodyOffset = length + RECORD_HEAD;
+        length += record.limit();
+        return bodyOffset;
+    }
+
+    // ---------------------------------------------------------------------
+    // Compaction (history writer thread only)
+    // ---------------------------------------------------------------------
+
+    /** True once the journal is large and most of it belongs to actions that are no longer persisted. */
+    boolean needsCompaction() {
+        if (length < COMPACT_MIN_BYTES) return false;
+        return length - liveBytes() > liveBytes();
+    }
+
+    /**
+     * Rewrites the journal with the persisted segments (copied byte for byte, without decoding) followed by a
+     * single state record. Segments beyond {@code PERSIST_MAX_ACTIONS_PER_PLAYER} are dropped here.
+     */
+    void compact() throws IOException {
+        List<Long> keepUndo = persisted(undo);
+        List<Long> keepRedo = persisted(redo);
+        Long2ObjectOpenHashMap<Segment> moved = new Long2ObjectOpenHashMap<>();
+        long[] newLength = new long[1];
+
+        HistoryWriter.writeAtomically(file, tmp -> {
+            try (FileChannel src = FileChannel.open(file, StandardOpenOption.READ);
+                 FileChannel dst = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                         StandardOpenOption.TRUNCATE_EXISTING)) {
+                writeFully(dst, ByteBuffer.allocate(FILE_HEADER).putInt(0, MAGIC | VERSION), 0);
+                long pos = FILE_HEADER;
+
+                List<Long> keep = new ArrayList<>(keepUndo);
+                keep.addAll(keepRedo);
+                for (long id : keep) {
+                    Segment s = segments.get(id);
+                    long count = s.recordLength();
+                    for (long done = 0; done < count; ) {
+                        dst.position(pos + done);
+                        done += src.transferTo(s.recordOffset() + done, count - done, dst);
+                    }
+                    moved.put(id, new Segment(pos + RECORD_HEAD, s.headerLength(), s.payloadLength()));
+                    pos += count;
+                }
+
+                ByteBuffer state = stateBody(toArray(keepUndo), toArray(keepRedo));
+                CRC32 crc = new CRC32();
+                crc.update(state.duplicate());
+                ByteBuffer record = ByteBuffer.allocate(RECORD_OVERHEAD + state.remaining());
+                record.put(STATE).putInt(state.remaining()).put(state).putInt((int) crc.getValue()).flip();
+                writeFully(dst, record, pos);
+                newLength[0] = pos + record.limit();
+            }
+        });
+
+        segments.clear();
+        segments.putAll(moved);
+        undo.clear();
+        undo.addAll(keepUndo);
+        redo.clear();
+        redo.addAll(keepRedo);
+        length = newLength[0];
+    }
+
+    private long liveBytes() {
+        long bytes = FILE_HEADER;
+        for (long id : persisted(undo)) bytes += segments.get(id).recordLength();
+        for (long id : persisted(redo)) bytes += segments.get(id).recordLength();
+        return bytes;
+    }
+
+    // ---------------------------------------------------------------------
+    // Helpers
+    // ---------------------------------------------------------------------
+
+    /** Mirrors the stack cap of {@link HistoryService}, so a replay ends in the same state as the live stacks. */
+    private static void push(Deque<Long> stack, long id) {
+        stack.push(id);
+        while (stack.size() > VoxelConfig.get().maxActionsPerPlayer()) stack.removeLast();
+    }
+
+    private static void move(Deque<Long> from, Deque<Long> to, int steps) {
+        for (int i = 0; i < steps; i++) {
+            Long id = from.poll();
+            if (id == null) return;
+            push(to, id);
+        }
+    }
+
+    /** Undo/redo bodies hold the step count; an empty body means a single step. */
+    private static int steps(ByteBuffer body) {
+        return body.remaining() >= 4 ? body.getInt(0) : 1;
+    }
+
+    private static ByteBuffer stepsBody(int steps) {
+        return ByteBuffer.allocate(4).putInt(0, steps);
+    }
+
+    private static List<Long> persisted(Deque<Long> stack) {
+        int max = VoxelConfig.get().persistMaxActionsPerPlayer();
+        List<Long> list = new ArrayList<>(Math.min(stack.size(), max));
+        for (Long id : stack) {
+            if (list.size() >= max) break;
+            list.add(id);
+        }
+        return list;
+    }
+
+    private static long[] toArray(List<Long> ids) {
+        long[] out = new long[ids.size()];
+        for (int i = 0; i < out.length; i++) out[i] = ids.get(i);
+        return out;
+    }
+
+    private static ByteBuffer stateBody(long[] undoIds, long[] redoIds) {
+        ByteBuffer body = ByteBuffer.allocate(8 + 8 * (undoIds.length + redoIds.length));
+        body.putInt(undoIds.length);
+        for (long id : undoIds) body.putLong(id);
+        body.putInt(redoIds.length);
+        for (long id : redoIds) body.putLong(id);
+        return body.flip();
+    }
+
+    /** Reads {@code length} bytes at {@code position}; the caller has checked they lie inside the file. */
+    private static ByteBuffer read(FileChannel ch, long position, int length) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(length);
+        long pos = position;
+        while (buf.hasRemaining()) {
+            int n = ch.read(buf, pos);
+            if (n < 0) throw new EOFException("journal ends at " + pos);
+            pos += n;
+        }
+        return buf.flip();
+    }
+
+    private static void writeFully(FileChannel ch, ByteBuffer buf, long position) throws IOException {
+        long pos = position;
+        while (buf.hasRemaining()) pos += ch.write(buf, pos);
+    }
+
+    /** Stream view of a buffer slice, so decoding reads straight from the bytes read for a segment. */
+    private static final class BufferInput extends InputStream {
+        private final ByteBuffer buf;
+
+        BufferInput(ByteBuffer buf) {
+            this.buf = buf;
+        }
+
+        @Override
+        public int read() {
+            return buf.hasRemaining() ? buf.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (!buf.hasRemaining()) return -1;
+            int n = Math.min(len, buf.remaining());
+            buf.get(b, off, n);
+            return n;
+        }
+    }
+}
@@ -0,0 +1,140 @@
+/**
+ * Server-wide memory budget for history payloads. Resident entries are kept in LRU order; once their estimated
+ * size exceeds the configured history memory budget, the least recently used payloads are spilled to disk by
+ * the history writer thread and only their headers stay on the heap. All methods run on the server thread.
+ */
+
+package jason.voxelcleaner.history;
+
+import jason.voxelcleaner.config.VoxelConfig;
+import jason.voxelcleaner.model.SnapshotBuffer;
+
+import net.fabricmc.loader.api.FabricLoader;
+import net.minecraft.block.Block;
+import net.minecraft.registry.RegistryEntryLookup;
+
+import java.io.BufferedInputStream;
+import java.io.InputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+final class HistoryMemory {
+
+    /** Access-ordered, so iteration starts at the least recently used entry. */
+    private static final LinkedHashMap<HistoryEntry, Boolean> RESIDENT = new LinkedHashMap<>(64, 0.75f, true);
+    private static long used;
+    private static long nextSpillId;
+
+    private HistoryMemory() {}
+
+    private static long budget() {
+        return VoxelConfig.get().historyMemoryBytes();
+    }
+
+    /** Starts tracking a resident entry and evicts older payloads if the budget is exceeded. */
+    static void admit(HistoryEntry entry) {
+        if (RESIDENT.putIfAbsent(entry, Boolean.TRUE) == null) used += entry.bytes();
+        evictOverBudget(entry);
+    }
+
+    /**
+     * Payload of {@code entry}, read back from its spill file if it was evicted.
+     *
+     * @return null if the spill file could not be read
+     */
+    static SnapshotBuffer snapshots(HistoryEntry entry, RegistryEntryLookup<Block> blocks) {
+        SnapshotBuffer snaps = entry.snapshots;
+        if (snaps != null) {
+            RESIDENT.get(entry); // touch
+            return snaps;
+        }
+
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(entry.spill))) {
+            snaps = HistoryCodec.decodeSnapshots(in, blocks, true);
+        } catch (Exception e) {
+            return null;
+        }
+        entry.snapshots = snaps;
+        admit(entry);
+        return snaps;
+    }
+
+    /** Forgets the entry (dropped from a stack or its player left) and deletes its spill file. */
+    static void release(HistoryEntry entry) {
+        if (RESIDENT.remove(entry) != null) used -= entry.bytes();
+
+        Path spill = entry.spill;
+        if (spill != null) {
+            HistoryWriter.execute(() -> {
+                try {
+                    Files.deleteIfExists(spill);
+                } catch (Exception ignored) {
+                }
+            });
+        }
+    }
+
+    /** Removes spill files left over from a previous run; they are not referenced by anything anymore. */
+    static void clearSpill() {
+        Path dir = spillDir();
+        if (!Files.isDirectory(dir)) return;
+
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+            for (Path file : files) Files.deleteIfExists(file);
+        } catch (Exception ignored) {
+        }
+    }
+
+    // ---------------------------------------------------------------------
+    // Eviction
+    // ---------------------------------------------------------------------
+
+    private static void evictOverBudget(HistoryEntry keep) {
+        Iterator<HistoryEntry> it = RESIDENT.keySet().iterator();
+        while (used > budget() && it.hasNext()) {
+            HistoryEntry entry = it.next();
+            if (entry == keep) continue;
+
+            it.remove();
+            used -= entry.bytes();
+            spill(entry);
+        }
+    }
+
+    /**
+     * Drops the payload right away if it is already on disk; otherwise the writer thread stores it first and
+     * drops it afterwards, so a concurrent undo still finds either the heap copy or the complete file.
+     */
+    private static void spill(HistoryEntry entry) {
+        if (entry.spilled) {
+            entry.snapshots = null;
+            return;
+        }
+
+        SnapshotBuffer payload = entry.snapshots;
+        Path file = spillDir().resolve((nextSpillId++) + ".bin");
+        entry.spill = file;
+
+        HistoryWriter.execute(() -> {
+            try {
+                byte[] bytes = HistoryCodec.encodeSnapshots(payload);
+                HistoryWriter.writeAtomically(file, tmp -> Files.write(tmp, bytes));
+                entry.spilled = true;
+                entry.snapshots = null;
+            } catch (Exception ignored) {
+                // payload simply stays on the heap
+            }
+        });
+    }
+
+    private static Path spillDir() {
+        // config/voxelcleaner/history/spill/
+        return FabricLoader.getInstance().getConfigDir()
+                .resolve("voxelcleaner")
+                .resolve("history")
+                .resolve("spill");
+    }
+}
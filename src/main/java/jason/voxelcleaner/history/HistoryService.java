@@ -4,8 +4,9 @@
 package jason.voxelcleaner.history;
 
 import jason.voxelcleaner.config.VoxelConfig;
+import jason.voxelcleaner.core.SectionWriter;
+import jason.voxelcleaner.model.SnapshotBuffer;
 import jason.voxelcleaner.model.VoxelModels.Action;
-import jason.voxelcleaner.model.VoxelModels.Snapshot;
 
 import net.fabricmc.loader.api.FabricLoader;
 import net.minecraft.nbt.NbtCompound;
@@ -16,122 +17,182 @@ import net.minecraft.nbt.NbtSizeTracker;
 import net.minecraft.server.network.ServerPlayerEntity;
 import net.minecraft.server.world.ServerWorld;
 import net.minecraft.text.Text;
+import net.minecraft.util.math.BlockPos;
 import net.minecraft.world.World;
 import net.minecraft.block.Block;
 import net.minecraft.registry.RegistryEntryLookup;
-import net.minecraft.registry.RegistryKeys;
+import net.minecraft.registry.Registries;
 import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 public final class HistoryService {
 
-    private static final Map<UUID, Deque<Action>> UNDO = new HashMap<>();
-    private static final Map<UUID, Deque<Action>> REDO = new HashMap<>();
+    private static final Map<UUID, Deque<HistoryEntry>> UNDO = new ConcurrentHashMap<>();
+    private static final Map<UUID, Deque<HistoryEntry>> REDO = new ConcurrentHashMap<>();
+
+    // block states are not dynamic registry content, so the static registry is enough for decoding
+    private static final RegistryEntryLookup<Block> BLOCKS = Registries.BLOCK;
 
     /**
      * Avoid repeated disk reads; stacks are loaded lazily when a player uses history/undo/redo.
      */
-    private static final Set<UUID> LOADED_FROM_DISK = new HashSet<>();
+    private static final Set<UUID> LOADED_FROM_DISK = ConcurrentHashMap.newKeySet();
+
+    /** Open journals by player; only touched from the history writer thread. */
+    private static final Map<UUID, HistoryJournal> JOURNALS = new HashMap<>();
+
+    /** What undo/redo does with positions that were changed since the action touched them. */
+    public enum ConflictMode {
+        /** Change nothing if there is any conflict. */
+        ABORT,
+        /** Leave conflicting positions as they are and apply the rest. */
+        SKIP,
+        /** Overwrite everything without checking. */
+        FORCE
+    }
 
-    public void pushUndo(UUID playerId, Action action) {
-        Deque<Action> stack = UNDO.computeIfAbsent(playerId, k -> new ArrayDeque<>());
-        stack.push(action);
-        while (stack.size() > VoxelConfig.MAX_ACTIONS_PER_PLAYER) stack.removeLast();
+    /**
+     * @param changed   positions written
+     * @param conflicts positions changed since the action; skipped, or the reason for aborting
+     * @param aborted   true if nothing was applied because of conflicts
+     */
+    public record StepResult(int changed, int conflicts, boolean aborted) {
+        static final StepResult NOTHING = new StepResult(0, 0, false);
+    }
+
+    /** Blocks until all queued history writes are on disk; called when the server stops. */
+    public static void flushPending() {
+        HistoryWriter.flush();
+    }
 
-        if (VoxelConfig.PERSIST_HISTORY) savePlayer(playerId);
+    /** Removes spill files of a previous run; called when the server starts. */
+    public static void clearSpill() {
+        HistoryMemory.clearSpill();
     }
 
-    public void pushRedo(UUID playerId, Action action) {
-        Deque<Action> stack = REDO.computeIfAbsent(playerId, k -> new ArrayDeque<>());
-        stack.push(action);
-        while (stack.size() > VoxelConfig.MAX_ACTIONS_PER_PLAYER) stack.removeLast();
+    /**
+     * Drops the player's stacks from memory once they left. Persisted history is read again from the
+     * journal on their next undo/redo; without persistence it is gone.
+     */
+    public static void release(UUID playerId) {
+        releaseAll(UNDO.remove(playerId));
+        releaseAll(REDO.remove(playerId));
+        LOADED_FROM_DISK.remove(playerId);
 
-        if (VoxelConfig.PERSIST_HISTORY) savePlayer(playerId);
+        if (VoxelConfig.get().persistHistory()) HistoryWriter.execute(() -> JOURNALS.remove(playerId));
     }
 
-    public void clearRedo(UUID playerId) {
-        Deque<Action> stack = REDO.get(playerId);
-        if (stack != null) stack.clear();
+    public void pushUndo(UUID playerId, Action action) {
+        ensureLoaded(playerId);
 
-        if (VoxelConfig.PERSIST_HISTORY) savePlayer(playerId);
+        HistoryEntry entry = new HistoryEntry(action);
+        push(UNDO, playerId, entry);
+        HistoryMemory.admit(entry);
+        journal(playerId, j -> j.appendPush(action));
     }
 
-    public int undoOne(ServerPlayerEntity player) {
-        World w0 = player.getEntityWorld();
-        if (!(w0 instanceof ServerWorld world)) return 0;
+    public void clearRedo(UUID playerId) {
+        ensureLoaded(playerId);
 
-        ensureLoaded(player.getUuid(), world);
+        Deque<HistoryEntry> stack = REDO.get(playerId);
+        if (stack == null || stack.isEmpty()) return;
+        releaseAll(stack);
+        stack.clear();
 
-        Deque<Action> stack = UNDO.get(player.getUuid());
-        if (stack == null || stack.isEmpty()) return 0;
+        journal(playerId, HistoryJournal::appendClearRedo);
+    }
 
-        String currentDim = world.getRegistryKey().getValue().toString();
-        Action action = stack.pop();
+    private static void push(Map<UUID, Deque<HistoryEntry>> stacks, UUID playerId, HistoryEntry entry) {
+        Deque<HistoryEntry> stack = stacks.computeIfAbsent(playerId, k -> new ArrayDeque<>());
+        stack.push(entry);
+        while (stack.size() > VoxelConfig.get().maxActionsPerPlayer()) HistoryMemory.release(stack.removeLast());
+    }
 
-        if (!action.dimensionId().equals(currentDim)) {
-            stack.push(action);
-            return 0;
-        }
+    private static void releaseAll(Collection<HistoryEntry> entries) {
+        if (entries == null) return;
+        for (HistoryEntry e : entries) HistoryMemory.release(e);
+    }
 
-        int restored = 0;
-        List<Snapshot> snaps = action.snapshots();
-        for (int i = snaps.size() - 1; i >= 0; i--) {
-            Snapshot s = snaps.get(i);
-            world.setBlockState(s.pos(), s.before(), 3);
-            restored++;
-        }
+    /** Undoes up to {@code count} actions; see {@link #step}. */
+    public StepResult undo(ServerPlayerEntity player, int count, ConflictMode mode) {
+        return step(player, count, true, mode);
+    }
 
-        pushRedo(player.getUuid(), action);
-        if (VoxelConfig.PERSIST_HISTORY) savePlayer(player.getUuid());
-        return restored;
+    /** Redoes up to {@code count} actions; see {@link #step}. */
+    public StepResult redo(ServerPlayerEntity player, int count, ConflictMode mode) {
+        return step(player, count, false, mode);
     }
 
-    public int redoOne(ServerPlayerEntity player) {
+    /**
+     * Moves up to {@code count} actions between the stacks in one batch. Their changes are merged into one
+     * final state per position first (for undo the earliest before-state wins, for redo the latest after-state),
+     * then written once in chunk order; positions already in that state are skipped by the writer. The batch
+     * stops early at an action from another dimension or whose payload cannot be read.
+     * <p>
+     * Unless {@code mode} is {@link ConflictMode#FORCE}, positions are checked first by one comparison against
+     * the expected states per touched section, which catches later actions as well as players and machines. A
+     * position holding its expected state is never a conflict.
+     */
+    private static StepResult step(ServerPlayerEntity player, int count, boolean undo, ConflictMode mode) {
         World w0 = player.getEntityWorld();
-        if (!(w0 instanceof ServerWorld world)) return 0;
+        if (!(w0 instanceof ServerWorld world)) return StepResult.NOTHING;
 
-        ensureLoaded(player.getUuid(), world);
+        UUID playerId = player.getUuid();
+        ensureLoaded(playerId);
 
-        Deque<Action> stack = REDO.get(player.getUuid());
-        if (stack == null || stack.isEmpty()) return 0;
+        Deque<HistoryEntry> from = (undo ? UNDO : REDO).get(playerId);
+        if (from == null || from.isEmpty()) return StepResult.NOTHING;
 
         String currentDim = world.getRegistryKey().getValue().toString();
-        Action action = stack.pop();
+        List<HistoryEntry> batch = new ArrayList<>(Math.min(count, from.size()));
+        MergedStates merged = new MergedStates();
+
+        // undo pops newest first, so later puts are older actions and the earliest before-state wins;
+        // redo pops in reapply order, so the latest after-state wins
+        while (batch.size() < count && !from.isEmpty()) {
+            HistoryEntry entry = from.peek();
+            if (!entry.header().dimensionId().equals(currentDim)) break;
 
-        if (!action.dimensionId().equals(currentDim)) {
-            stack.push(action);
-            return 0;
+            SnapshotBuffer snaps = HistoryMemory.snapshots(entry, BLOCKS);
+            if (snaps == null) break;
+
+            from.pop();
+            batch.add(entry);
+            merged.putAll(snaps, undo);
         }
+        if (batch.isEmpty()) return StepResult.NOTHING;
+
+        if (mode != ConflictMode.FORCE) {
+            merged.markChanged(world);
 
-        int applied = 0;
-        List<Snapshot> snaps = action.snapshots();
-        for (int i = snaps.size() - 1; i >= 0; i--) {
-            Snapshot s = snaps.get(i);
-            world.setBlockState(s.pos(), s.after(), 3);
-            applied++;
+            if (mode == ConflictMode.ABORT && merged.conflicts() > 0) {
+                for (int i = batch.size() - 1; i >= 0; i--) from.push(batch.get(i));
+                return new StepResult(0, merged.conflicts(), true);
+            }
         }
 
-        pushUndo(player.getUuid(), action);
-        if (VoxelConfig.PERSIST_HISTORY) savePlayer(player.getUuid());
-        return applied;
+        SectionWriter writer = SectionWriter.create(world);
+        int written = merged.writeTo(writer);
+        writer.flush();
+
+        for (HistoryEntry entry : batch) push(undo ? REDO : UNDO, playerId, entry);
+
+        int moved = batch.size();
+        journal(playerId, undo ? j -> j.appendUndo(moved) : j -> j.appendRedo(moved));
+        return new StepResult(written, merged.conflicts(), false);
     }
 
     public boolean hasUndo(ServerPlayerEntity player) {
-        World w0 = player.getEntityWorld();
-        if (VoxelConfig.PERSIST_HISTORY && w0 instanceof ServerWorld world) {
-            ensureLoaded(player.getUuid(), world);
-        }
-        Deque<Action> stack = UNDO.get(player.getUuid());
+        ensureLoaded(player.getUuid());
+        Deque<HistoryEntry> stack = UNDO.get(player.getUuid());
         return stack != null && !stack.isEmpty();
     }
 
     public void sendHistory(ServerPlayerEntity player, int count) {
-        World w0 = player.getEntityWorld();
-        if (VoxelConfig.PERSIST_HISTORY && w0 instanceof ServerWorld world) {
-            ensureLoaded(player.getUuid(), world);
-        }
+        ensureLoaded(player.getUuid());
 
-        Deque<Action> stack = UNDO.get(player.getUuid());
+        Deque<HistoryEntry> stack = UNDO.get(player.getUuid());
         if (stack == null || stack.isEmpty()) {
             player.sendMessage(Text.literal("VoxelCleaner: keine History"), false);
             return;
@@ -141,9 +202,10 @@ public final class HistoryService {
         player.sendMessage(Text.literal("VoxelCleaner History (neueste zuerst) [" + n + "/" + stack.size() + "]"), false);
 
         int i = 1;
-        for (Action a : stack) {
+        for (HistoryEntry e : stack) {
             if (i > n) break;
 
+            HistoryCodec.Header a = e.header();
             String ts = VoxelConfig.TS_FMT.format(Instant.ofEpochMilli(a.epochMs()));
             String shell = a.shellId() == null ? "-" : a.shellId();
 
@@ -162,76 +224,152 @@ public final class HistoryService {
     }
 
     // ---------------------------------------------------------------------
-    // Persistence (NBT)
+    // Persistence (append-only journal, see HistoryJournal)
     // ---------------------------------------------------------------------
 
-    private static void ensureLoaded(UUID playerId, ServerWorld world) {
-        if (!VoxelConfig.PERSIST_HISTORY) return;
-        if (LOADED_FROM_DISK.contains(playerId)) return;
+    /**
+     * Loads the player's persisted stacks before the first read or write, so a fresh push never
+     * overwrites history that is still only on disk.
+     */
+    private static void ensureLoaded(UUID playerId) {
+        if (!VoxelConfig.get().persistHistory()) return;
+        if (!LOADED_FROM_DISK.add(playerId)) return;
 
-        LOADED_FROM_DISK.add(playerId);
-        loadPlayer(playerId, world);
+        // a player who re-joins may still have journal records queued from before they left
+        HistoryWriter.flush();
+        loadPlayer(playerId);
     }
 
-    private static java.nio.file.Path playerFile(UUID playerId) {
-        // config/voxelcleaner/history/<uuid>.nbt
-        java.nio.file.Path dir = FabricLoader.getInstance().getConfigDir()
+    private static java.nio.file.Path historyDir() {
+        // config/voxelcleaner/history/
+        return FabricLoader.getInstance().getConfigDir()
                 .resolve("voxelcleaner")
                 .resolve("history");
-        return dir.resolve(playerId.toString() + ".nbt");
     }
 
-    private static void savePlayer(UUID playerId) {
-        try {
-            java.nio.file.Path file = playerFile(playerId);
-            java.nio.file.Files.createDirectories(file.getParent());
+    private static java.nio.file.Path playerFile(UUID playerId) {
+        return historyDir().resolve(playerId.toString() + ".vcj");
+    }
 
-            NbtCompound root = new NbtCompound();
-            root.put("undo", writeStack(UNDO.get(playerId)));
-            root.put("redo", writeStack(REDO.get(playerId)));
+    /** Whole-file binary history written before the journal; migrated on first load. */
+    private static java.nio.file.Path snapshotFile(UUID playerId) {
+        return historyDir().resolve(playerId.toString() + ".vch");
+    }
 
-            NbtIo.writeCompressed(root, file);
-        } catch (Exception ignored) {
-        }
+    /** Old per-snapshot NBT history; read once and migrated to {@link #playerFile(UUID)}. */
+    private static java.nio.file.Path legacyPlayerFile(UUID playerId) {
+        return historyDir().resolve(playerId.toString() + ".nbt");
+    }
+
+    @FunctionalInterface
+    private interface JournalOp {
+        void apply(HistoryJournal journal) throws java.io.IOException;
+    }
+
+    /**
+     * Records one stack change on the writer thread. Pushes append a segment, everything else only a pointer
+     * record; compaction runs in the same task once the journal has grown mostly dead.
+     */
+    private static void journal(UUID playerId, JournalOp op) {
+        if (!VoxelConfig.get().persistHistory()) return;
+
+        java.nio.file.Path file = playerFile(playerId);
+        HistoryWriter.execute(() -> {
+            try {
+                HistoryJournal journal = JOURNALS.get(playerId);
+                if (journal == null) {
+                    journal = HistoryJournal.open(file);
+                    JOURNALS.put(playerId, journal);
+                }
+
+                op.apply(journal);
+                if (journal.needsCompaction()) journal.compact();
+            } catch (Exception ignored) {
+                // re-scan the file on the next change instead of trusting a half-applied index
+                JOURNALS.remove(playerId);
+            }
+        });
     }
 
-    private static void loadPlayer(UUID playerId, ServerWorld world) {
+    private static void loadPlayer(UUID playerId) {
         try {
+            RegistryEntryLookup<Block> blockLookup = BLOCKS;
+
             java.nio.file.Path file = playerFile(playerId);
-            if (!java.nio.file.Files.exists(file)) return;
+            if (java.nio.file.Files.exists(file)) {
+                putStacks(playerId, HistoryJournal.load(file, blockLookup));
+                return;
+            }
+
+            java.nio.file.Path snapshot = snapshotFile(playerId);
+            if (java.nio.file.Files.exists(snapshot)) {
+                HistoryCodec.Stacks stacks = HistoryCodec.readFile(snapshot, blockLookup);
+                putStacks(playerId, stacks);
+                HistoryJournal.create(file, persistedStack(stacks.undo()), persistedStack(stacks.redo()));
+                java.nio.file.Files.delete(snapshot);
+                return;
+            }
+
+            java.nio.file.Path legacy = legacyPlayerFile(playerId);
+            if (java.nio.file.Files.exists(legacy)) migrateLegacy(playerId, legacy, blockLookup);
+        } catch (Exception ignored) {
+            // Optional feature; ignore failures.
+        }
+    }
 
-            // Newer API requires NbtSizeTracker
-            NbtCompound root = NbtIo.readCompressed(file, NbtSizeTracker.ofUnlimitedBytes());
-            if (root == null) return;
+    private static void migrateLegacy(UUID playerId, java.nio.file.Path legacy, RegistryEntryLookup<Block> blockLookup)
+            throws java.io.IOException {
+        // Newer API requires NbtSizeTracker
+        NbtCompound root = NbtIo.readCompressed(legacy, NbtSizeTracker.ofUnlimitedBytes());
+        if (root == null) return;
 
-            // Newer API: Optional-based getters
-            NbtList undoList = root.getList("undo").orElse(new NbtList());
-            NbtList redoList = root.getList("redo").orElse(new NbtList());
+        // Newer API: Optional-based getters
+        NbtList undoList = root.getList("undo").orElse(new NbtList());
+        NbtList redoList = root.getList("redo").orElse(new NbtList());
 
-            Deque<Action> undo = readStack(undoList, world);
-            Deque<Action> redo = readStack(redoList, world);
+        Deque<Action> undo = readStack(undoList, blockLookup);
+        Deque<Action> redo = readStack(redoList, blockLookup);
 
-            if (!undo.isEmpty()) UNDO.put(playerId, undo);
-            if (!redo.isEmpty()) REDO.put(playerId, redo);
-        } catch (Exception ignored) {
-            // Optional feature; ignore failures.
+        putStacks(playerId, new HistoryCodec.Stacks(new ArrayList<>(undo), new ArrayList<>(redo)));
+
+        // written synchronously: the legacy file may only go once its replacement exists
+        HistoryJournal.create(playerFile(playerId), persistedStack(undo), persistedStack(redo));
+        java.nio.file.Files.delete(legacy);
+    }
+
+    private static void putStacks(UUID playerId, HistoryCodec.Stacks stacks) {
+        if (!stacks.undo().isEmpty()) UNDO.put(playerId, toEntries(stacks.undo()));
+        if (!stacks.redo().isEmpty()) REDO.put(playerId, toEntries(stacks.redo()));
+    }
+
+    /** Wraps loaded actions (newest first) and admits them oldest first, so the newest end up most recently used. */
+    private static Deque<HistoryEntry> toEntries(List<Action> actions) {
+        Deque<HistoryEntry> stack = new ArrayDeque<>(actions.size());
+        for (int i = actions.size() - 1; i >= 0; i--) {
+            HistoryEntry entry = new HistoryEntry(actions.get(i));
+            stack.push(entry);
+            HistoryMemory.admit(entry);
         }
+        return stack;
     }
 
-    private static NbtList writeStack(Deque<Action> stack) {
-        NbtList list = new NbtList();
-        if (stack == null || stack.isEmpty()) return list;
+    private static List<Action> persistedStack(Collection<Action> stack) {
+        if (stack == null || stack.isEmpty()) return List.of();
 
-        int i = 0;
+        int max = VoxelConfig.get().persistMaxActionsPerPlayer();
+        List<Action> list = new ArrayList<>(Math.min(stack.size(), max));
         for (Action a : stack) {
-            if (i >= VoxelConfig.PERSIST_MAX_ACTIONS_PER_PLAYER) break;
-            list.add(writeAction(a));
-            i++;
+            if (list.size() >= max) break;
+            list.add(a);
         }
         return list;
     }
 
-    private static Deque<Action> readStack(NbtList list, ServerWorld world) {
+    // ---------------------------------------------------------------------
+    // Legacy NBT reader (migration only)
+    // ---------------------------------------------------------------------
+
+    private static Deque<Action> readStack(NbtList list, RegistryEntryLookup<Block> blockLookup) {
         Deque<Action> persistedOrder = new ArrayDeque<>();
         if (list == null || list.isEmpty()) return persistedOrder;
 
@@ -239,7 +377,7 @@ public final class HistoryService {
             var aTagOpt = list.getCompound(i); // Optional<NbtCompound>
             if (aTagOpt.isEmpty()) continue;
 
-            Action a = readAction(aTagOpt.get(), world);
+            Action a = readAction(aTagOpt.get(), blockLookup);
             if (a != null) persistedOrder.addLast(a);
         }
 
@@ -250,28 +388,7 @@ public final class HistoryService {
         return asStack;
     }
 
-    private static NbtCompound writeAction(Action a) {
-        NbtCompound tag = new NbtCompound();
-        tag.putString("dim", a.dimensionId());
-        tag.putLong("ts", a.epochMs());
-        tag.putInt("iw", a.iw());
-        tag.putInt("ih", a.ih());
-        tag.putInt("id", a.id());
-        if (a.shellId() != null) tag.putString("shell", a.shellId());
-        tag.putBoolean("force", a.force());
-        tag.putBoolean("loot", a.loot());
-        tag.putInt("changed", a.changed());
-        tag.putInt("lootItems", a.lootItems());
-
-        NbtList snaps = new NbtList();
-        for (Snapshot s : a.snapshots()) {
-            snaps.add(writeSnapshot(s));
-        }
-        tag.put("snaps", snaps);
-        return tag;
-    }
-
-    private static Action readAction(NbtCompound tag, ServerWorld world) {
+    private static Action readAction(NbtCompound tag, RegistryEntryLookup<Block> blockLookup) {
         if (tag == null) return null;
 
         // Optional-based getters
@@ -289,31 +406,20 @@ public final class HistoryService {
         int lootItems = tag.getInt("lootItems").orElse(0);
 
         NbtList snapsTag = tag.getList("snaps").orElse(new NbtList());
-        List<Snapshot> snaps = new ArrayList<>(snapsTag.size());
+        SnapshotBuffer snaps = new SnapshotBuffer(snapsTag.size());
 
         for (int i = 0; i < snapsTag.size(); i++) {
             var snapOpt = snapsTag.getCompound(i);
             if (snapOpt.isEmpty()) continue;
 
-            Snapshot s = readSnapshot(snapOpt.get(), world);
-            if (s != null) snaps.add(s);
+            readSnapshot(snapOpt.get(), blockLookup, snaps);
         }
 
-        return new Action(dim, ts, iw, ih, id, shell, force, loot, changed, lootItems, snaps);
+        return new Action(dim, ts, iw, ih, id, shell, force, loot, changed, lootItems, snaps.trim());
     }
 
-    private static NbtCompound writeSnapshot(Snapshot s) {
-        NbtCompound tag = new NbtCompound();
-        tag.putInt("x", s.pos().getX());
-        tag.putInt("y", s.pos().getY());
-        tag.putInt("z", s.pos().getZ());
-        tag.put("before", NbtHelper.fromBlockState(s.before()));
-        tag.put("after", NbtHelper.fromBlockState(s.after()));
-        return tag;
-    }
-
-    private static Snapshot readSnapshot(NbtCompound tag, ServerWorld world) {
-        if (tag == null) return null;
+    private static void readSnapshot(NbtCompound tag, RegistryEntryLookup<Block> blockLookup, SnapshotBuffer out) {
+        if (tag == null) return;
 
         int x = tag.getInt("x").orElse(0);
         int y = tag.getInt("y").orElse(0);
@@ -321,17 +427,12 @@ public final class HistoryService {
 
         var beforeOpt = tag.getCompound("before");
         var afterOpt  = tag.getCompound("after");
-        if (beforeOpt.isEmpty() || afterOpt.isEmpty()) return null;
-
-        var pos = new net.minecraft.util.math.BlockPos(x, y, z);
-
-        RegistryEntryLookup<Block> blockLookup =
-                world.getRegistryManager().getOrThrow(RegistryKeys.BLOCK);
+        if (beforeOpt.isEmpty() || afterOpt.isEmpty()) return;
 
         var before = NbtHelper.toBlockState(blockLookup, beforeOpt.get());
         var after  = NbtHelper.toBlockState(blockLookup, afterOpt.get());
 
-        return new Snapshot(pos, before, after);
+        out.add(BlockPos.asLong(x, y, z), before, after);
     }
 
 }
@@ -0,0 +1,62 @@
+/**
+ * Background writer for history files: one daemon thread that runs journal appends in submission order,
+ * plus atomic temp-file replacement for whole-file rewrites.
+ */
+
+package jason.voxelcleaner.history;
+
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public final class HistoryWriter {
+
+    private static final ExecutorService EXECUTOR = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "VoxelCleaner History Writer");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private HistoryWriter() {}
+
+    @FunctionalInterface
+    public interface FileWrite {
+        void writeTo(Path file) throws IOException;
+    }
+
+    /** Queues {@code write} behind all earlier writes. The task must only touch immutable data. */
+    public static void execute(Runnable write) {
+        EXECUTOR.execute(write);
+    }
+
+    /** Blocks until every write queued so far has completed. */
+    public static void flush() {
+        try {
+            EXECUTOR.submit(() -> {}).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException ignored) {
+        }
+    }
+
+    /** Writes into a sibling temp file and moves it over {@code file}, so readers never see a partial file. */
+    public static void writeAtomically(Path file, FileWrite write) throws IOException {
+        Files.createDirectories(file.getParent());
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            write.writeTo(tmp);
+            try {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+}
@@ -0,0 +1,183 @@
+/**
+ * Final block state per position across several actions, grouped by chunk section. A later put for the same
+ * position replaces the target state, while the expected current state (the other side of the first put) is
+ * kept; callers feed actions in the order whose last target should win. Positions can be marked as conflicts,
+ * which {@link #writeTo} then leaves alone.
+ */
+
+package jason.voxelcleaner.history;
+
+import jason.voxelcleaner.core.SectionWriter;
+import jason.voxelcleaner.model.SectionSnapshot;
+import jason.voxelcleaner.model.SnapshotBuffer;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrays;
+
+import net.minecraft.block.BlockState;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkSectionPos;
+import net.minecraft.world.chunk.ChunkSection;
+import net.minecraft.world.chunk.WorldChunk;
+
+final class MergedStates {
+
+    private final Long2ObjectOpenHashMap<Section> sections = new Long2ObjectOpenHashMap<>();
+    private long lastKey;
+    private Section last;
+    private int size;
+    private int conflicts;
+
+    /**
+     * Adds the before-states (undo) or after-states (redo) of every change in {@code snaps}. Within one action
+     * the first recorded before-state and the last recorded after-state of a position win.
+     */
+    void putAll(SnapshotBuffer snaps, boolean before) {
+        if (before) {
+            for (int i = snaps.size() - 1; i >= 0; i--) put(snaps.pos(i), snaps.before(i), snaps.after(i));
+        } else {
+            for (int i = 0; i < snaps.size(); i++) put(snaps.pos(i), snaps.after(i), snaps.before(i));
+        }
+        for (int s = 0; s < snaps.sectionCount(); s++) {
+            SectionSnapshot snapshot = snaps.section(s);
+            Section section = section(snapshot.key());
+            snapshot.forEach((local, beforeIndex, afterIndex) -> section.put(local,
+                    snaps.paletteEntry(before ? beforeIndex : afterIndex),
+                    snaps.paletteEntry(before ? afterIndex : beforeIndex)));
+        }
+    }
+
+    void put(long pos, BlockState target, BlockState expected) {
+        int x = BlockPos.unpackLongX(pos), y = BlockPos.unpackLongY(pos), z = BlockPos.unpackLongZ(pos);
+        section(ChunkSectionPos.asLong(x >> 4, y >> 4, z >> 4))
+                .put(((y & 15) << 8) | ((z & 15) << 4) | (x & 15), target, expected);
+    }
+
+    /** Number of distinct positions. */
+    int size() {
+        return size;
+    }
+
+    /** Number of positions marked as conflicts. */
+    int conflicts() {
+        return conflicts;
+    }
+
+    /**
+     * Marks every position whose current block differs from its expected state. Each section is fetched once;
+     * when all expected states of a section are equal and its palette holds nothing else (e.g. an emptied
+     * section that should still be air), the section is accepted without looking at single blocks.
+     */
+    void markChanged(ServerWorld world) {
+        for (var e : sections.long2ObjectEntrySet()) {
+            long key = e.getLongKey();
+            Section s = e.getValue();
+
+            int sy = ChunkSectionPos.unpackY(key);
+            if (world.isOutOfHeightLimit(ChunkSectionPos.getBlockCoord(sy))) continue;
+
+            WorldChunk chunk = world.getChunk(ChunkSectionPos.unpackX(key), ChunkSectionPos.unpackZ(key));
+            ChunkSection section = chunk.getSection(chunk.getSectionIndex(ChunkSectionPos.getBlockCoord(sy)));
+
+            BlockState uniform = s.uniformExpected;
+            if (uniform != null) {
+                if (uniform.isAir() ? section.isEmpty() : !section.hasAny(st -> st != uniform)) continue;
+            }
+
+            long[] changed = new long[SectionSnapshot.MASK_WORDS];
+            for (int w = 0; w < SectionSnapshot.MASK_WORDS; w++) {
+                long word = s.mask[w] & ~s.conflict[w];
+                while (word != 0) {
+                    int local = (w << 6) | Long.numberOfTrailingZeros(word);
+                    word &= word - 1;
+                    if (section.getBlockState(local & 15, (local >> 8) & 15, (local >> 4) & 15) != s.expected[local]) {
+                        changed[w] |= 1L << (local & 63);
+                    }
+                }
+            }
+            s.markConflicts(changed);
+        }
+    }
+
+    /**
+     * Queues every non-conflicting position on {@code writer}, chunk by chunk and bottom to top inside a chunk.
+     *
+     * @return number of queued positions
+     */
+    int writeTo(SectionWriter writer) {
+        long[] keys = sections.keySet().toLongArray();
+        LongArrays.quickSort(keys, (a, b) -> {
+            int c = Integer.compare(ChunkSectionPos.unpackX(a), ChunkSectionPos.unpackX(b));
+            if (c == 0) c = Integer.compare(ChunkSectionPos.unpackZ(a), ChunkSectionPos.unpackZ(b));
+            if (c == 0) c = Integer.compare(ChunkSectionPos.unpackY(a), ChunkSectionPos.unpackY(b));
+            return c;
+        });
+
+        int queued = 0;
+        for (long key : keys) {
+            Section section = sections.get(key);
+            for (int w = 0; w < SectionSnapshot.MASK_WORDS; w++) {
+                long word = section.mask[w] & ~section.conflict[w];
+                while (word != 0) {
+                    int local = (w << 6) | Long.numberOfTrailingZeros(word);
+                    word &= word - 1;
+                    writer.set(key, local, section.states[local]);
+                    queued++;
+                }
+            }
+        }
+        return queued;
+    }
+
+    private Section section(long key) {
+        if (last != null && lastKey == key) return last;
+
+        Section s = sections.get(key);
+        if (s == null) {
+            s = new Section();
+            sections.put(key, s);
+        }
+        lastKey = key;
+        last = s;
+        return s;
+    }
+
+    private final class Section {
+        final long[] mask = new long[SectionSnapshot.MASK_WORDS];
+        final long[] conflict = new long[SectionSnapshot.MASK_WORDS];
+        final BlockState[] states = new BlockState[SectionSnapshot.VOLUME];
+        final BlockState[] expected = new BlockState[SectionSnapshot.VOLUME];
+
+        /** Expected state shared by every position so far, or null once they differ. */
+        BlockState uniformExpected;
+        boolean mixedExpected;
+
+        void put(int local, BlockState target, BlockState expectedState) {
+            long bit = 1L << (local & 63);
+            if ((mask[local >>> 6] & bit) == 0) {
+                mask[local >>> 6] |= bit;
+                expected[local] = expectedState;
+                size++;
+
+                if (!mixedExpected) {
+                    if (uniformExpected == null) {
+                        uniformExpected = expectedState;
+                    } else if (uniformExpected != expectedState) {
+                        uniformExpected = null;
+                        mixedExpected = true;
+                    }
+                }
+            }
+            states[local] = target;
+        }
+
+        void markConflicts(long[] bits) {
+            for (int w = 0; w < SectionSnapshot.MASK_WORDS; w++) {
+                long added = bits[w] & mask[w] & ~conflict[w];
+                conflict[w] |= added;
+                conflicts += Long.bitCount(added);
+            }
+        }
+    }
+}
@@ -0,0 +1,19 @@
+/**
+ * Exposes the random sequence a loot table rolls with, so drops evaluated outside {@code Block.getDroppedStacks}
+ * draw from the same random as the vanilla path.
+ */
+
+package jason.voxelcleaner.mixin;
+
+import net.minecraft.loot.LootTable;
+import net.minecraft.util.Identifier;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.gen.Accessor;
+
+import java.util.Optional;
+
+@Mixin(LootTable.class)
+public interface LootTableAccessor {
+	@Accessor("randomSequenceId")
+	Optional<Identifier> voxelcleaner$getRandomSequenceId();
+}
@@ -0,0 +1,115 @@
+/**
+ * Changes inside one 16³ chunk section: a 4096-bit mask of the changed positions plus their before (and, unless
+ * they all share one, after) palette indices, bit-packed in mask order. Indices refer to the palette of the
+ * owning {@link SnapshotBuffer}; positions use the local index {@code y << 8 | z << 4 | x}.
+ */
+
+package jason.voxelcleaner.model;
+
+public final class SectionSnapshot {
+
+    public static final int VOLUME = 16 * 16 * 16;
+    public static final int MASK_WORDS = VOLUME / 64;
+
+    private final long key;
+    private final long[] mask;
+    private final int count;
+    private final int bits;
+    private final long[] before;
+    /** Null when every after-state is {@link #uniformAfter}. */
+    private final long[] after;
+    private final int uniformAfter;
+
+    private SectionSnapshot(long key, long[] mask, int count, int bits, long[] before, long[] after, int uniformAfter) {
+        this.key = key;
+        this.mask = mask;
+        this.count = count;
+        this.bits = bits;
+        this.before = before;
+        this.after = after;
+        this.uniformAfter = uniformAfter;
+    }
+
+    /**
+     * @param mask         {@link #MASK_WORDS} words, one bit per changed position; kept, not copied
+     * @param before       before indices of the set bits in ascending local order
+     * @param after        after indices in the same order, or null if all equal {@code uniformAfter}
+     * @param paletteSize  size of the owning palette, determines the packed index width
+     */
+    public static SectionSnapshot of(long key, long[] mask, int count, int[] before, int[] after, int uniformAfter,
+                                     int paletteSize) {
+        int bits = Math.max(1, 32 - Integer.numberOfLeadingZeros(Math.max(1, paletteSize - 1)));
+        return new SectionSnapshot(key, mask, count, bits, pack(before, count, bits),
+                after == null ? null : pack(after, count, bits), uniformAfter);
+    }
+
+    @FunctionalInterface
+    public interface Visitor {
+        void accept(int local, int beforeIndex, int afterIndex);
+    }
+
+    /** Packed {@link net.minecraft.util.math.ChunkSectionPos} of the section. */
+    public long key() {
+        return key;
+    }
+
+    /** Number of changed positions. */
+    public int count() {
+        return count;
+    }
+
+    /** Change mask; must not be modified. */
+    public long[] mask() {
+        return mask;
+    }
+
+    public int beforeIndex(int n) {
+        return get(before, n);
+    }
+
+    public int afterIndex(int n) {
+        return after == null ? uniformAfter : get(after, n);
+    }
+
+    public boolean isUniformAfter() {
+        return after == null;
+    }
+
+    /** Visits the changed positions in ascending local order. */
+    public void forEach(Visitor visitor) {
+        int n = 0;
+        for (int w = 0; w < MASK_WORDS; w++) {
+            long word = mask[w];
+            while (word != 0) {
+                int local = (w << 6) | Long.numberOfTrailingZeros(word);
+                word &= word - 1;
+                visitor.accept(local, get(before, n), after == null ? uniformAfter : get(after, n));
+                n++;
+            }
+        }
+    }
+
+    public long estimatedBytes() {
+        return 48L + (long) MASK_WORDS * Long.BYTES + (long) before.length * Long.BYTES
+                + (after == null ? 0 : (long) after.length * Long.BYTES);
+    }
+
+    // ---------------------------------------------------------------------
+    // Packing (indices never straddle two words)
+    // ---------------------------------------------------------------------
+
+    private int get(long[] data, int n) {
+        int perWord = 64 / bits;
+        int shift = (n % perWord) * bits;
+        return (int) ((data[n / perWord] >>> shift) & ((1L << bits) - 1));
+    }
+
+    private static long[] pack(int[] values, int count, int bits) {
+        int perWord = 64 / bits;
+        long[] out = new long[(count + perWord - 1) / perWord];
+        for (int n = 0; n < count; n++) {
+            out[n / perWord] |= ((long) values[n]) << ((n % perWord) * bits);
+        }
+        return out;
+    }
+}
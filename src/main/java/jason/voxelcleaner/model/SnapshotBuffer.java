@@ -0,0 +1,339 @@
+/**
+ * Compact, columnar storage for the before/after block states of an action.
+ * Positions are packed with {@link BlockPos#asLong}, states are stored as byte (or short, once the palette
+ * outgrows 256 entries) indices into a per-buffer palette, and a single shared after-state needs no column at all.
+ * Sections where most blocks changed can be folded into {@link SectionSnapshot}s by {@link #groupSections(int)}.
+ */
+
+package jason.voxelcleaner.model;
+
+import it.unimi.dsi.fastutil.ints.IntArrays;
+import it.unimi.dsi.fastutil.objects.Reference2IntOpenHashMap;
+
+import net.minecraft.block.BlockState;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkSectionPos;
+
+import java.util.Arrays;
+
+public final class SnapshotBuffer {
+
+    private static final int BYTE_PALETTE_LIMIT = 256;
+    private static final SectionSnapshot[] NO_SECTIONS = new SectionSnapshot[0];
+
+    private long[] positions;
+    private int size;
+
+    private BlockState[] palette = new BlockState[8];
+    private int paletteSize;
+    private Reference2IntOpenHashMap<BlockState> paletteLookup = new Reference2IntOpenHashMap<>();
+
+    // exactly one of the byte/short columns is in use; the short column takes over past BYTE_PALETTE_LIMIT
+    private byte[] before8;
+    private short[] before16;
+    private byte[] after8;
+    private short[] after16;
+
+    /** Palette index shared by every after-state while {@link #after8}/{@link #after16} are null. */
+    private int uniformAfter = -1;
+
+    private SectionSnapshot[] sections = NO_SECTIONS;
+    private int sectionCount;
+
+    public SnapshotBuffer() {
+        this(16);
+    }
+
+    public SnapshotBuffer(int expectedSize) {
+        int cap = Math.max(1, expectedSize);
+        positions = new long[cap];
+        before8 = new byte[cap];
+        paletteLookup.defaultReturnValue(-1);
+    }
+
+    @FunctionalInterface
+    public interface Visitor {
+        void accept(long pos, BlockState before, BlockState after);
+    }
+
+    public void add(BlockPos pos, BlockState before, BlockState after) {
+        add(pos.asLong(), before, after);
+    }
+
+    public void add(long pos, BlockState before, BlockState after) {
+        int b = paletteIndex(before);
+        int a = paletteIndex(after);
+
+        ensureCapacity(size + 1);
+        positions[size] = pos;
+        setIndex(true, size, b);
+
+        if (size == 0) {
+            uniformAfter = a;
+        } else if (after8 == null && after16 == null && a != uniformAfter) {
+            materializeAfter();
+        }
+        if (after8 != null || after16 != null) setIndex(false, size, a);
+
+        size++;
+    }
+
+    /** Registers a section snapshot whose indices refer to this buffer's palette. */
+    public void addSection(SectionSnapshot section) {
+        if (sectionCount == sections.length) sections = Arrays.copyOf(sections, Math.max(4, sectionCount * 2));
+        sections[sectionCount++] = section;
+    }
+
+    /** Number of per-block entries; changes folded into sections are not included. */
+    public int size() {
+        return size;
+    }
+
+    public int sectionCount() {
+        return sectionCount;
+    }
+
+    public SectionSnapshot section(int i) {
+        return sections[i];
+    }
+
+    /** All recorded changes: per-block entries plus the positions covered by sections. */
+    public int changeCount() {
+        int n = size;
+        for (int i = 0; i < sectionCount; i++) n += sections[i].count();
+        return n;
+    }
+
+    public boolean isEmpty() {
+        return size == 0 && sectionCount == 0;
+    }
+
+    public long pos(int i) {
+        return positions[i];
+    }
+
+    public BlockState before(int i) {
+        return palette[before8 != null ? before8[i] & 0xFF : before16[i] & 0xFFFF];
+    }
+
+    public BlockState after(int i) {
+        if (after8 != null) return palette[after8[i] & 0xFF];
+        if (after16 != null) return palette[after16[i] & 0xFFFF];
+        return palette[uniformAfter];
+    }
+
+    /** The after-state shared by all per-block entries, or null if they differ (or there are none). */
+    public BlockState uniformAfter() {
+        return size > 0 && after8 == null && after16 == null ? palette[uniformAfter] : null;
+    }
+
+    public int paletteSize() {
+        return paletteSize;
+    }
+
+    public BlockState paletteEntry(int index) {
+        return palette[index];
+    }
+
+    /** Palette index of {@code state}, adding it to the palette if needed. */
+    public int intern(BlockState state) {
+        return paletteIndex(state);
+    }
+
+    /** Palette index of the before-state at {@code i}. */
+    public int beforeIndex(int i) {
+        return before8 != null ? before8[i] & 0xFF : before16[i] & 0xFFFF;
+    }
+
+    /** Palette index of the after-state at {@code i}. */
+    public int afterIndex(int i) {
+        if (after8 != null) return after8[i] & 0xFF;
+        if (after16 != null) return after16[i] & 0xFFFF;
+        return uniformAfter;
+    }
+
+    public void forEach(Visitor visitor) {
+        for (int i = 0; i < size; i++) visitor.accept(positions[i], before(i), after(i));
+    }
+
+    /** Iterates newest entry first, the order undo restores in. */
+    public void forEachReversed(Visitor visitor) {
+        for (int i = size - 1; i >= 0; i--) visitor.accept(positions[i], before(i), after(i));
+    }
+
+    /**
+     * Moves the entries of every section with at least {@code minChanges} changes into a {@link SectionSnapshot},
+     * so dense edits cost a few bits per block instead of a position and two indices. If a position was recorded
+     * more than once, the section keeps its first before-state and last after-state.
+     */
+    public SnapshotBuffer groupSections(int minChanges) {
+        if (size < minChanges) return this;
+
+        long[] keys = new long[size];
+        int[] locals = new int[size];
+        for (int i = 0; i < size; i++) {
+            long p = positions[i];
+            int x = BlockPos.unpackLongX(p), y = BlockPos.unpackLongY(p), z = BlockPos.unpackLongZ(p);
+            keys[i] = ChunkSectionPos.asLong(x >> 4, y >> 4, z >> 4);
+            locals[i] = ((y & 15) << 8) | ((z & 15) << 4) | (x & 15);
+        }
+
+        int[] order = new int[size];
+        for (int i = 0; i < size; i++) order[i] = i;
+        IntArrays.quickSort(order, (a, b) -> {
+            int c = Long.compare(keys[a], keys[b]);
+            if (c == 0) c = Integer.compare(locals[a], locals[b]);
+            if (c == 0) c = Integer.compare(a, b);
+            return c;
+        });
+
+        boolean[] grouped = null;
+        for (int start = 0, end; start < size; start = end) {
+            end = start + 1;
+            while (end < size && keys[order[end]] == keys[order[start]]) end++;
+            if (end - start < minChanges) continue;
+
+            if (grouped == null) grouped = new boolean[size];
+            addSection(buildSection(keys[order[start]], order, locals, start, end));
+            for (int k = start; k < end; k++) grouped[order[k]] = true;
+        }
+        if (grouped == null) return this;
+
+        // keep the remaining per-block entries in their original order
+        int kept = 0;
+        for (int i = 0; i < size; i++) {
+            if (grouped[i]) continue;
+            positions[kept] = positions[i];
+            setIndex(true, kept, beforeIndex(i));
+            if (after8 != null || after16 != null) setIndex(false, kept, afterIndex(i));
+            kept++;
+        }
+        size = kept;
+        return this;
+    }
+
+    private SectionSnapshot buildSection(long key, int[] order, int[] locals, int start, int end) {
+        long[] mask = new long[SectionSnapshot.MASK_WORDS];
+        int[] before = new int[end - start];
+        int[] after = new int[end - start];
+        int n = 0;
+        int lastLocal = -1;
+
+        for (int k = start; k < end; k++) {
+            int i = order[k];
+            int local = locals[i];
+            if (local == lastLocal) {
+                after[n - 1] = afterIndex(i);
+                continue;
+            }
+            mask[local >>> 6] |= 1L << (local & 63);
+            before[n] = beforeIndex(i);
+            after[n] = afterIndex(i);
+            lastLocal = local;
+            n++;
+        }
+
+        boolean uniform = true;
+        for (int k = 1; k < n && uniform; k++) uniform = after[k] == after[0];
+        return SectionSnapshot.of(key, mask, n, before, uniform ? null : after, after[0], paletteSize);
+    }
+
+    /** Shrinks all columns to their final size and drops the build-time lookup; the buffer stays appendable. */
+    public SnapshotBuffer trim() {
+        positions = Arrays.copyOf(positions, size);
+        if (before8 != null) before8 = Arrays.copyOf(before8, size);
+        if (before16 != null) before16 = Arrays.copyOf(before16, size);
+        if (after8 != null) after8 = Arrays.copyOf(after8, size);
+        if (after16 != null) after16 = Arrays.copyOf(after16, size);
+        palette = Arrays.copyOf(palette, Math.max(1, paletteSize));
+        sections = sectionCount == 0 ? NO_SECTIONS : Arrays.copyOf(sections, sectionCount);
+        paletteLookup = null;
+        return this;
+    }
+
+    /** Rough heap footprint in bytes, used for memory budgets and size estimates. */
+    public long estimatedBytes() {
+        long bytes = 64L + (long) positions.length * Long.BYTES + (long) palette.length * 8;
+        if (before8 != null) bytes += before8.length;
+        if (before16 != null) bytes += (long) before16.length * Short.BYTES;
+        if (after8 != null) bytes += after8.length;
+        if (after16 != null) bytes += (long) after16.length * Short.BYTES;
+        if (paletteLookup != null) bytes += (long) paletteLookup.size() * 24;
+        for (int i = 0; i < sectionCount; i++) bytes += sections[i].estimatedBytes();
+        return bytes;
+    }
+
+    /** Estimated footprint of a buffer with {@code entries} snapshots, a small palette and a uniform after-state. */
+    public static long estimateBytes(long entries) {
+        return 64L + entries * (Long.BYTES + 1);
+    }
+
+    // ---------------------------------------------------------------------
+    // Internals
+    // ---------------------------------------------------------------------
+
+    private int paletteIndex(BlockState state) {
+        if (paletteLookup == null) rebuildLookup();
+
+        int idx = paletteLookup.getInt(state);
+        if (idx >= 0) return idx;
+
+        idx = paletteSize++;
+        if (idx == palette.length) palette = Arrays.copyOf(palette, idx * 2);
+        palette[idx] = state;
+        paletteLookup.put(state, idx);
+
+        if (idx == BYTE_PALETTE_LIMIT) widen();
+        return idx;
+    }
+
+    private void rebuildLookup() {
+        paletteLookup = new Reference2IntOpenHashMap<>(paletteSize);
+        paletteLookup.defaultReturnValue(-1);
+        for (int i = 0; i < paletteSize; i++) paletteLookup.put(palette[i], i);
+    }
+
+    private void setIndex(boolean before, int i, int idx) {
+        if (before) {
+            if (before8 != null) before8[i] = (byte) idx;
+            else before16[i] = (short) idx;
+        } else {
+            if (after8 != null) after8[i] = (byte) idx;
+            else after16[i] = (short) idx;
+        }
+    }
+
+    private void materializeAfter() {
+        int cap = positions.length;
+        if (paletteSize > BYTE_PALETTE_LIMIT) {
+            after16 = new short[cap];
+            Arrays.fill(after16, 0, size, (short) uniformAfter);
+        } else {
+            after8 = new byte[cap];
+            Arrays.fill(after8, 0, size, (byte) uniformAfter);
+        }
+    }
+
+    private void widen() {
+        if (before8 != null) {
+            before16 = new short[before8.length];
+            for (int i = 0; i < size; i++) before16[i] = (short) (before8[i] & 0xFF);
+            before8 = null;
+        }
+        if (after8 != null) {
+            after16 = new short[after8.length];
+            for (int i = 0; i < size; i++) after16[i] = (short) (after8[i] & 0xFF);
+            after8 = null;
+        }
+    }
+
+    private void ensureCapacity(int needed) {
+        if (needed <= positions.length) return;
+        int cap = Math.max(needed, positions.length * 2);
+        positions = Arrays.copyOf(positions, cap);
+        if (before8 != null) before8 = Arrays.copyOf(before8, cap);
+        if (before16 != null) before16 = Arrays.copyOf(before16, cap);
+        if (after8 != null) after8 = Arrays.copyOf(after8, cap);
+        if (after16 != null) after16 = Arrays.copyOf(after16, cap);
+    }
+}
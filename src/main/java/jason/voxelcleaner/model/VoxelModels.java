@@ -1,19 +1,13 @@
 /**
- * Defines immutable data records for actions, snapshots, and execution results.
+ * Defines immutable data records for actions, execution results and dry-run reports; snapshots live in
+ * {@link SnapshotBuffer}.
  */
 
 package jason.voxelcleaner.model;
 
-import net.minecraft.block.BlockState;
-import net.minecraft.util.math.BlockPos;
-
-import java.util.List;
-
 public final class VoxelModels {
     private VoxelModels() {}
 
-    public record Snapshot(BlockPos pos, BlockState before, BlockState after) {}
-
     public record Action(
             String dimensionId,
             long epochMs,
@@ -23,8 +17,23 @@ public final class VoxelModels {
             boolean loot,
             int changed,
             int lootItems,
-            List<Snapshot> snapshots
+            SnapshotBuffer snapshots
+    ) {}
+
+    /** Outcome of a dry run: what the operation would do, nothing was written. */
+    public record DryRun(
+            long changed,
+            long skippedProtected,
+            long skippedBedrock,
+            int chunks,
+            long snapshotBytes,
+            long applyTicks
     ) {}
 
-    public record Result(Action action) {}
+    /** Either the recorded action of an edit or, for a dry run, its report (then {@code action} is null). */
+    public record Result(Action action, DryRun dryRun) {
+        public Result(Action action) {
+            this(action, null);
+        }
+    }
 }
@@ -0,0 +1,46 @@
+/**
+ * Server-to-client preview of an edit's selection: only the shape's kind, placement and size, so the packet is
+ * the same few bytes for a 3³ box and a 64³ sphere. Clients with the mod draw the outline themselves; vanilla
+ * clients never receive it and get the particle preview instead.
+ */
+
+package jason.voxelcleaner.network;
+
+import net.minecraft.network.PacketByteBuf;
+import net.minecraft.network.codec.PacketCodec;
+import net.minecraft.network.packet.CustomPayload;
+import net.minecraft.util.Identifier;
+import net.minecraft.util.math.BlockPos;
+
+/**
+ * @param origin minimum corner of the shape's box
+ * @param width  box size along x; for spheres and cylinders {@code 2r + 1}, for pyramids the base
+ * @param ticks  how long the outline stays visible
+ */
+public record PreviewPayload(Kind kind, BlockPos origin, int width, int height, int depth, int ticks)
+        implements CustomPayload {
+
+    public static final Id<PreviewPayload> ID = new Id<>(Identifier.of("voxelcleaner", "preview"));
+    public static final PacketCodec<PacketByteBuf, PreviewPayload> CODEC = PacketCodec.of(PreviewPayload::write, PreviewPayload::read);
+
+    public enum Kind { BOX, SPHERE, CYLINDER, PYRAMID }
+
+    private void write(PacketByteBuf buf) {
+        buf.writeByte(kind.ordinal());
+        buf.writeBlockPos(origin);
+        buf.writeVarInt(width);
+        buf.writeVarInt(height);
+        buf.writeVarInt(depth);
+        buf.writeVarInt(ticks);
+    }
+
+    private static PreviewPayload read(PacketByteBuf buf) {
+        Kind kind = Kind.values()[buf.readByte()];
+        return new PreviewPayload(kind, buf.readBlockPos(), buf.readVarInt(), buf.readVarInt(), buf.readVarInt(), buf.readVarInt());
+    }
+
+    @Override
+    public Id<? extends CustomPayload> getId() {
+        return ID;
+    }
+}
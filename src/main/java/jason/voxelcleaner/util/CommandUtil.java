@@ -9,6 +9,7 @@ import com.mojang.brigadier.exceptions.CommandSyntaxException;
 import net.minecraft.block.Block;
 import net.minecraft.command.argument.BlockStateArgument;
 import net.minecraft.command.argument.BlockStateArgumentType;
+import net.minecraft.server.command.CommandManager;
 import net.minecraft.server.command.ServerCommandSource;
 import net.minecraft.server.network.ServerPlayerEntity;
 import net.minecraft.text.Text;
@@ -29,4 +30,18 @@ public final class CommandUtil {
         BlockStateArgument arg = BlockStateArgumentType.getBlockState(ctx, argName);
         return arg.getBlockState().getBlock();
     }
+
+    /** Highest vanilla permission level (0 to 4) {@code src} has. */
+    public static int permissionLevel(ServerCommandSource src) {
+        if (CommandManager.requirePermissionLevel(CommandManager.OWNERS_CHECK).test(src)) return 4;
+        if (CommandManager.requirePermissionLevel(CommandManager.ADMINS_CHECK).test(src)) return 3;
+        if (CommandManager.requirePermissionLevel(CommandManager.GAMEMASTERS_CHECK).test(src)) return 2;
+        if (CommandManager.requirePermissionLevel(CommandManager.MODERATORS_CHECK).test(src)) return 1;
+        return 0;
+    }
+
+    /** Whether {@code src} has gamemaster rights (permission level 2, like {@code /fill}). */
+    public static boolean isAdmin(ServerCommandSource src) {
+        return CommandManager.requirePermissionLevel(CommandManager.GAMEMASTERS_CHECK).test(src);
+    }
 }
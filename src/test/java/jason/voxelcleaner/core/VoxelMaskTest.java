@@ -0,0 +1,80 @@
+/**
+ * Word access and shell of masks whose boxes are not aligned to 64, checked against the plain geometry.
+ */
+
+package jason.voxelcleaner.core;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class VoxelMaskTest {
+
+    @FunctionalInterface
+    private interface Solid {
+        boolean contains(int x, int y, int z);
+    }
+
+    /** The 64 bits {@link VoxelMask#window} should return, built one position at a time. */
+    private static long expectedWindow(Solid solid, int y, int z, int x) {
+        long bits = 0;
+        for (int i = 0; i < 64; i++) {
+            if (solid.contains(x + i, y, z)) bits |= 1L << i;
+        }
+        return bits;
+    }
+
+    private static Solid box(int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+        return (x, y, z) -> x >= minX && x <= maxX && y >= minY && y <= maxY && z >= minZ && z <= maxZ;
+    }
+
+    private static void assertWindows(Solid solid, VoxelMask mask, int fromX, int toX) {
+        for (int y = mask.minY() - 1; y <= mask.maxY() + 1; y++) {
+            for (int z = mask.minZ() - 1; z <= mask.maxZ() + 1; z++) {
+                for (int x = fromX; x <= toX; x++) {
+                    assertEquals(expectedWindow(solid, y, z, x), mask.window(y, z, x), "window at " + x + "," + y + "," + z);
+                }
+            }
+        }
+    }
+
+    @Test
+    void windowOfUnalignedBox() {
+        // 131 wide, starting at a negative x that is no multiple of 64: three words per row, the last one partial
+        VoxelMask mask = VoxelMask.box(-70, 3, -2, 60, 5, 1);
+        assertWindows(box(-70, 3, -2, 60, 5, 1), mask, -140, 70);
+        assertEquals(131L * 3 * 4, mask.count());
+    }
+
+    @Test
+    void windowOfNarrowBox() {
+        VoxelMask mask = VoxelMask.box(5, 0, 0, 9, 0, 0);
+        assertWindows(box(5, 0, 0, 9, 0, 0), mask, -70, 20);
+    }
+
+    @Test
+    void shellOfUnalignedBox() {
+        int minX = 3, maxX = 3 + 69;
+        VoxelMask shell = VoxelMask.box(minX, 0, 0, maxX, 4, 4).shell();
+
+        Solid expected = (x, y, z) -> x >= minX && x <= maxX && y >= 0 && y <= 4 && z >= 0 && z <= 4
+                && (x == minX || x == maxX || y == 0 || y == 4 || z == 0 || z == 4);
+        assertWindows(expected, shell, minX - 65, maxX + 1);
+    }
+
+    @Test
+    void shellOfUnionAcrossWordBoundaries() {
+        // two overlapping boxes whose x edges fall on different bit offsets of the 64-bit words
+        Solid a = box(-33, 0, 0, 40, 3, 3);
+        Solid b = box(20, 1, 1, 97, 5, 2);
+        Solid solid = (x, y, z) -> a.contains(x, y, z) || b.contains(x, y, z);
+        VoxelMask union = VoxelMask.box(-33, 0, 0, 40, 3, 3).union(VoxelMask.box(20, 1, 1, 97, 5, 2));
+        assertWindows(solid, union, -100, 100);
+
+        Solid surface = (x, y, z) -> solid.contains(x, y, z)
+                && !(solid.contains(x - 1, y, z) && solid.contains(x + 1, y, z)
+                && solid.contains(x, y - 1, z) && solid.contains(x, y + 1, z)
+                && solid.contains(x, y, z - 1) && solid.contains(x, y, z + 1));
+        assertWindows(surface, union.shell(), -100, 100);
+    }
+}
@@ -0,0 +1,61 @@
+/**
+ * Round trips of the snapshot payload: palette, run/delta encoded positions and section snapshots.
+ */
+
+package jason.voxelcleaner.history;
+
+import jason.voxelcleaner.model.SnapshotBuffer;
+
+import net.minecraft.block.Blocks;
+import net.minecraft.registry.Registries;
+import net.minecraft.util.math.BlockPos;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HistoryCodecTest {
+
+    @BeforeAll
+    static void bootstrap() {
+        Snapshots.bootstrap();
+    }
+
+    private static SnapshotBuffer roundTrip(SnapshotBuffer buf) throws IOException {
+        byte[] bytes = HistoryCodec.encodeSnapshots(buf);
+        return HistoryCodec.decodeSnapshots(new ByteArrayInputStream(bytes), Registries.BLOCK, true);
+    }
+
+    @Test
+    void widePaletteScatteredPositionsAndSections() throws IOException {
+        SnapshotBuffer buf = Snapshots.sample(3);
+        assertTrue(buf.paletteSize() > 256, "sample must need wide indices");
+        assertEquals(1, buf.sectionCount(), "sample must hold a section snapshot");
+
+        Snapshots.assertSameChanges(buf, roundTrip(buf));
+    }
+
+    @Test
+    void uniformAfterStateAndRunsAcrossChunks() throws IOException {
+        SnapshotBuffer buf = new SnapshotBuffer();
+        // one row crossing the chunk border at x = 0, then a jump back in y and z
+        for (int x = -20; x < 20; x++) buf.add(BlockPos.asLong(x, 70, -1), Blocks.DIRT.getDefaultState(), Blocks.AIR.getDefaultState());
+        buf.add(BlockPos.asLong(5, -64, 300), Blocks.GRASS_BLOCK.getDefaultState(), Blocks.AIR.getDefaultState());
+        buf.trim();
+
+        SnapshotBuffer decoded = roundTrip(buf);
+        assertEquals(Blocks.AIR.getDefaultState(), decoded.uniformAfter());
+        Snapshots.assertSameChanges(buf, decoded);
+    }
+
+    @Test
+    void emptyBuffer() throws IOException {
+        SnapshotBuffer decoded = roundTrip(new SnapshotBuffer().trim());
+        assertTrue(decoded.isEmpty());
+    }
+}
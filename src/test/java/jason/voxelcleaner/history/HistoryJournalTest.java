@@ -0,0 +1,76 @@
+/**
+ * Journal replay: appends, a torn record at the end, the next append overwriting it, and compaction.
+ */
+
+package jason.voxelcleaner.history;
+
+import jason.voxelcleaner.model.VoxelModels.Action;
+
+import net.minecraft.registry.Registries;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+class HistoryJournalTest {
+
+    @BeforeAll
+    static void bootstrap() {
+        Snapshots.bootstrap();
+    }
+
+    private static HistoryCodec.Stacks load(Path file) throws IOException {
+        return HistoryJournal.load(file, Registries.BLOCK);
+    }
+
+    private static void assertStacks(List<Action> undo, List<Action> redo, HistoryCodec.Stacks stacks) {
+        Snapshots.assertSameActions(undo, stacks.undo());
+        Snapshots.assertSameActions(redo, stacks.redo());
+    }
+
+    @Test
+    void tornTailIsIgnoredAndOverwritten(@TempDir Path dir) throws IOException {
+        Path file = dir.resolve("player.vcj");
+        Action a1 = Snapshots.action("minecraft:overworld", 1, Snapshots.sample(1));
+        Action a2 = Snapshots.action("minecraft:the_nether", 2, Snapshots.sample(2));
+        Action a3 = Snapshots.action("minecraft:overworld", 3, Snapshots.sample(3));
+        Action a4 = Snapshots.action("minecraft:overworld", 4, Snapshots.sample(4));
+
+        HistoryJournal journal = HistoryJournal.open(file);
+        journal.appendPush(a1);
+        journal.appendPush(a2);
+        journal.appendUndo(1);
+        long complete = Files.size(file);
+
+        // a crash in the middle of the next segment leaves half a record behind
+        journal.appendPush(a3);
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            ch.truncate(complete + (Files.size(file) - complete) / 2);
+        }
+        assertStacks(List.of(a1), List.of(a2), load(file));
+
+        HistoryJournal reopened = HistoryJournal.open(file);
+        reopened.appendPush(a4);
+        assertStacks(List.of(a4, a1), List.of(a2), load(file));
+
+        reopened.appendRedo(1);
+        reopened.appendUndo(2);
+        List<Action> undo = List.of(a1);
+        List<Action> redo = List.of(a4, a2);
+        assertStacks(undo, redo, load(file));
+
+        reopened.compact();
+        assertStacks(undo, redo, load(file));
+
+        // appends continue behind the compacted records
+        reopened.appendClearRedo();
+        assertStacks(undo, List.of(), load(file));
+    }
+}
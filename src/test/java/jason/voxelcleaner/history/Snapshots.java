@@ -0,0 +1,91 @@
+/**
+ * Test helpers for history payloads: game bootstrap, sample buffers and a comparison that ignores the entry
+ * order and palette layout a codec is free to change.
+ */
+
+package jason.voxelcleaner.history;
+
+import jason.voxelcleaner.model.SectionSnapshot;
+import jason.voxelcleaner.model.SnapshotBuffer;
+import jason.voxelcleaner.model.VoxelModels.Action;
+
+import net.minecraft.SharedConstants;
+import net.minecraft.block.Block;
+import net.minecraft.block.BlockState;
+import net.minecraft.block.Blocks;
+import net.minecraft.registry.Registries;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkSectionPos;
+import net.minecraft.Bootstrap;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+final class Snapshots {
+
+    private Snapshots() {}
+
+    static void bootstrap() {
+        SharedConstants.createGameVersion();
+        Bootstrap.initialize();
+    }
+
+    /**
+     * Scattered entries around the origin (negative coordinates, runs along x, more than 256 distinct states so
+     * the indices are wide) plus one dense section that {@link SnapshotBuffer#groupSections} folds into a
+     * section snapshot.
+     */
+    static SnapshotBuffer sample(int seed) {
+        List<BlockState> states = Registries.BLOCK.stream().map(Block::getDefaultState).limit(300).toList();
+        SnapshotBuffer buf = new SnapshotBuffer();
+
+        for (int i = 0; i < 300; i++) {
+            int x = -40 + (i % 25), y = -8 + i / 25, z = (i * 7 + seed) % 19 - 9;
+            buf.add(BlockPos.asLong(x, y, z), states.get((i + seed) % states.size()), states.get(i % 3));
+        }
+        for (int i = 0; i < 600; i++) {
+            buf.add(BlockPos.asLong(32 + (i & 15), 64 + (i >> 8), 48 + ((i >> 4) & 15)), Blocks.STONE.getDefaultState(),
+                    Blocks.AIR.getDefaultState());
+        }
+        return buf.groupSections(512).trim();
+    }
+
+    static Action action(String dim, long time, SnapshotBuffer snaps) {
+        return new Action(dim, time, 5, 6, 7, time % 2 == 0 ? "minecraft:glass" : null, time % 3 == 0, true,
+                snaps.changeCount(), 12, snaps);
+    }
+
+    static void assertSameActions(List<Action> expected, List<Action> actual) {
+        assertEquals(expected.size(), actual.size(), "action count");
+        for (int i = 0; i < expected.size(); i++) {
+            Action e = expected.get(i), a = actual.get(i);
+            assertEquals(HistoryCodec.Header.of(e), HistoryCodec.Header.of(a), "header " + i);
+            assertSameChanges(e.snapshots(), a.snapshots());
+        }
+    }
+
+    static void assertSameChanges(SnapshotBuffer expected, SnapshotBuffer actual) {
+        assertEquals(expected.size(), actual.size(), "per-block entries");
+        assertEquals(expected.sectionCount(), actual.sectionCount(), "section snapshots");
+        assertEquals(changes(expected), changes(actual));
+    }
+
+    /** Every change as position -> {before, after}, per-block entries and section snapshots alike. */
+    private static Map<Long, List<BlockState>> changes(SnapshotBuffer buf) {
+        Map<Long, List<BlockState>> out = new HashMap<>();
+        buf.forEach((pos, before, after) -> out.put(pos, List.of(before, after)));
+        for (int s = 0; s < buf.sectionCount(); s++) {
+            SectionSnapshot section = buf.section(s);
+            long key = section.key();
+            section.forEach((local, beforeIndex, afterIndex) -> out.put(BlockPos.asLong(
+                            ChunkSectionPos.getBlockCoord(ChunkSectionPos.unpackX(key)) + (local & 15),
+                            ChunkSectionPos.getBlockCoord(ChunkSectionPos.unpackY(key)) + ((local >> 8) & 15),
+                            ChunkSectionPos.getBlockCoord(ChunkSectionPos.unpackZ(key)) + ((local >> 4) & 15)),
+                    List.of(buf.paletteEntry(beforeIndex), buf.paletteEntry(afterIndex))));
+        }
+        return out;
+    }
+}